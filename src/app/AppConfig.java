@@ -1,8 +1,20 @@
 package app;
 
-import servent.message.SKTokenMessage;
-import servent.message.SKTokenRequestMessage;
+import app.lock.FileLocks;
+import app.lock.GlobalTokenLocks;
+import app.lock.KeyedLocks;
+import app.mutex.DistributedMutex;
+import app.mutex.RaymondMutex;
+import app.mutex.SuzukiKasamiMutex;
+import app.storage.ConcurrentIntIntMap;
+import app.storage.DurableKeyValueStore;
+import app.storage.MappedKeyValueStore;
+import servent.message.MessageType;
+import servent.message.util.ConnectionManager;
 import servent.message.util.MessageUtil;
+import servent.message.util.NoDelay;
+import servent.message.util.PerTypeDelayPolicy;
+import servent.message.util.SendDelayPolicy;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -12,10 +24,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class contains all the global application configuration stuff.
@@ -26,34 +34,27 @@ public class AppConfig {
 	public static ServentInfo myServentInfo;
 	public static String workingDirectory = "storage/"; // Define a working directory for file storage
 
-	/** Suzuki–Kasami mutex - OLD LOCAL MUTEX, to be replaced for distributed operations */
-	// public static final Lock mutex = new ReentrantLock(); // Will be replaced by SK logic calls
-
 	public static boolean INITIALIZED = false;
 	public static int BOOTSTRAP_PORT;
 	public static int SERVENT_COUNT;
 
 	public static ChordState chordState;
 
+	/** Locks taken around upload, remove_file and list_files - per file by default, see {@link KeyedLocks} */
+	public static FileLocks fileLocks;
+	/** Arbitrates the locks on names whose key we own, whichever kind this servent takes for its own commands */
+	public static final KeyedLocks keyedLocks = new KeyedLocks();
+	/** Uploads moving file content, ours and those to be stored here */
+	public static final FileTransfers fileTransfers = new FileTransfers();
+
 	public static Thread listenerThread;
+	/** The command line, stopped once we have left the ring */
+	public static Cancellable cliParser;
 	public static ServerSocket serverSocket;
 	public static List<Thread> workerThreads = new ArrayList<>();
 
-	// Suzuki-Kasami State
-	public static Lock skMutex = new ReentrantLock(); // To protect SK algorithm's internal state
-	public static Condition skTokenArrivedCondition;  // For threads waiting for the token
-
-	public static int myServentId; // 0 to SERVENT_COUNT-1, corresponds to serventN index
-	public static ServentInfo[] allServents; // Array of all servents, index is serventId
-
-	public static volatile boolean hasToken;
-	public static int[] RN; // Request Number array for this servent
-	public static volatile boolean inCriticalSection;
-	public static volatile boolean waitingForToken;
-
-	// Token's data (only valid if hasToken is true)
-	public static int[] LN_token;         // Last Granted Number array
-	public static Queue<Integer> Q_token; // Queue of serventIds waiting for the token
+	/** The one critical section for the whole system, Suzuki-Kasami unless <code>mutex</code> says otherwise */
+	public static DistributedMutex mutex;
 
 
 	/**
@@ -78,144 +79,305 @@ public class AppConfig {
 		System.err.println(timeFormat.format(now) + " - " + message);
 	}
 
-	private static void initSuzukiKasami(int currentServentId, Properties properties) {
-		myServentId = currentServentId;
-		skTokenArrivedCondition = skMutex.newCondition();
+	/**
+	 * Reads <code>mutex</code> (suzuki_kasami or raymond) - the same for the whole system, every servent has to run
+	 * the same algorithm - and <code>mutex.lease_ms</code>. Suzuki-Kasami also reads how long we wait for the token
+	 * before checking it still exists, and how many of our sections can share one visit of it.
+	 */
+	private static void initMutex(int serventId, Properties properties) {
+		String kind = properties.getProperty("mutex", "suzuki_kasami").trim();
+		String key = "mutex.lease_ms";
+		try {
+			long lease = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(DistributedMutex.DEFAULT_LEASE_MILLIS)));
+			if (lease < 1) {
+				throw new NumberFormatException();
+			}
+			if (kind.equals("raymond")) {
+				mutex = new RaymondMutex(serventId, readAllServents(properties), MessageUtil::sendMessage, lease);
+			} else if (kind.equals("suzuki_kasami")) {
+				key = "sk.token_timeout_ms";
+				long tokenTimeout = Long.parseLong(getServentProperty(properties, serventId, key,
+						String.valueOf(SuzukiKasamiMutex.DEFAULT_TOKEN_TIMEOUT_MILLIS)));
+				key = "sk.batch_budget";
+				int batchBudget = Integer.parseInt(getServentProperty(properties, serventId, key,
+						String.valueOf(SuzukiKasamiMutex.DEFAULT_BATCH_BUDGET)));
+				if (tokenTimeout <= lease || batchBudget < 1) {
+					throw new NumberFormatException();
+				}
+				SuzukiKasamiMutex sk = new SuzukiKasamiMutex(myServentInfo.getListenerPort(), chordState::getAllNodeInfos,
+						MessageUtil::sendMessage, lease, tokenTimeout, batchBudget);
+				chordState.addLeaveListener(node -> sk.memberLeft(node.getListenerPort()));
+				mutex = sk;
+			} else {
+				timestampedErrorPrint("Unknown mutex " + kind + ". Must be suzuki_kasami or raymond. Exiting...");
+				System.exit(0);
+			}
+		} catch (NumberFormatException e) {
+			timestampedErrorPrint("Problem reading " + key + ". Exiting...");
+			System.exit(0);
+		}
+		timestampedStandardPrint("Mutex: " + kind);
+	}
 
-		RN = new int[SERVENT_COUNT]; // Initialized to 0 by default
-		allServents = new ServentInfo[SERVENT_COUNT];
+	/**
+	 * Raymond's tree is built once, over every servent in the list, whether it is up or not.
+	 */
+	private static ServentInfo[] readAllServents(Properties properties) {
+		ServentInfo[] allServents = new ServentInfo[SERVENT_COUNT];
 		for (int i = 0; i < SERVENT_COUNT; i++) {
 			String portProperty = "servent" + i + ".port";
 			try {
 				int serventPort = Integer.parseInt(properties.getProperty(portProperty));
 				allServents[i] = new ServentInfo("localhost", serventPort);
 			} catch (NumberFormatException e) {
-				timestampedErrorPrint("Problem reading " + portProperty + " for SK allServents. Exiting...");
+				timestampedErrorPrint("Problem reading " + portProperty + " for the mutex. Exiting...");
 				System.exit(0);
 			}
 		}
+		return allServents;
+	}
 
-		if (myServentId == 0) { // Servent 0 starts with the token
-			hasToken = true;
-			LN_token = new int[SERVENT_COUNT]; // Initialized to 0
-			Q_token = new LinkedBlockingQueue<>(); // Using LinkedBlockingQueue as it's a common Queue impl
-			timestampedStandardPrint("Servent " + myServentId + " initialized WITH Suzuki-Kasami token.");
-		} else {
-			hasToken = false;
-			LN_token = new int[SERVENT_COUNT];
-			Q_token = new LinkedBlockingQueue<>();
-			timestampedStandardPrint("Servent " + myServentId + " initialized WITHOUT Suzuki-Kasami token.");
+	/**
+	 * Reads an optional setting that can be given for the whole system or overridden for a single servent,
+	 * e.g. <code>message_codec=binary</code> and <code>servent3.message_codec=java</code>.
+	 */
+	public static String getServentProperty(Properties properties, int serventId, String key, String defaultValue) {
+		String value = properties.getProperty("servent" + serventId + "." + key);
+		if (value == null) {
+			value = properties.getProperty(key, defaultValue);
 		}
-		inCriticalSection = false;
-		waitingForToken = false;
+		return value == null ? null : value.trim();
 	}
 
-	public static void requestCSEntry() throws InterruptedException {
-		skMutex.lock();
+	/**
+	 * Reads <code>send_delay</code> and its per message type overrides, like <code>send_delay.SK_TOKEN</code>.
+	 * Both can be overridden per servent. With nothing configured, messages are sent without delay.
+	 */
+	private static void readSendDelay(Properties properties, int serventId) {
+		String key = "send_delay";
 		try {
-			if (hasToken) {
-				inCriticalSection = true;
-				timestampedStandardPrint("SK: Already have token. Entering CS for servent " + myServentId);
-				return;
+			SendDelayPolicy defaultPolicy = SendDelayPolicy.parse(getServentProperty(properties, serventId, key, "none"));
+
+			Map<MessageType, SendDelayPolicy> overrides = new EnumMap<>(MessageType.class);
+			for (MessageType type : MessageType.values()) {
+				key = "send_delay." + type.name();
+				String spec = getServentProperty(properties, serventId, key, null);
+				if (spec != null) {
+					overrides.put(type, SendDelayPolicy.parse(spec));
+				}
 			}
 
-			RN[myServentId]++;
-			waitingForToken = true;
-			timestampedStandardPrint("SK: Servent " + myServentId + " requesting token with RN[" + myServentId + "]=" + RN[myServentId]);
-			broadcastTokenRequest(RN[myServentId]);
-
-			while (!hasToken) {
-				timestampedStandardPrint("SK: Servent " + myServentId + " waiting for token...");
-				skTokenArrivedCondition.await();
+			SendDelayPolicy policy = overrides.isEmpty() ? defaultPolicy : new PerTypeDelayPolicy(defaultPolicy, overrides);
+			MessageUtil.setDelayPolicy(policy);
+			if (!(policy instanceof NoDelay)) {
+				timestampedStandardPrint("Send delay policy: " + policy);
 			}
-			// Token has arrived
-			waitingForToken = false;
-			inCriticalSection = true;
-			timestampedStandardPrint("SK: Servent " + myServentId + " received token. Entering CS.");
-
-		} finally {
-			skMutex.unlock();
+		} catch (IllegalArgumentException e) {
+			timestampedErrorPrint("Problem reading " + key + ": " + e.getMessage() + ". Exiting...");
+			System.exit(0);
 		}
 	}
 
-	public static void releaseCSEntry() {
-		skMutex.lock();
+	/**
+	 * Reads <code>execution_mode</code> (platform or virtual) and <code>platform_pool_size</code>,
+	 * and sets up the handler and sender executors accordingly.
+	 */
+	private static void readExecutionMode(Properties properties, int serventId) {
+		String modeName = getServentProperty(properties, serventId, "execution_mode", "platform");
+		ServentExecutors.Mode mode;
 		try {
-			if (!hasToken) {
-				timestampedErrorPrint("SK: ERROR! Servent " + myServentId + " tried to release CS without token.");
-				// This case should ideally not happen if logic is correct
-				inCriticalSection = false; // Still mark as not in CS
-				return;
-			}
-			if (!inCriticalSection) {
-				// This might happen if releaseCSEntry is called multiple times or erroneously
-				timestampedErrorPrint("SK: Servent " + myServentId + " tried to release CS but was not marked as in CS.");
-				// Proceed with token logic anyway, assuming it was a valid release intention
-			}
+			mode = ServentExecutors.Mode.valueOf(modeName.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			timestampedErrorPrint("Unknown execution_mode " + modeName + ". Must be platform or virtual. Exiting...");
+			System.exit(0);
+			return;
+		}
 
-			inCriticalSection = false;
-			LN_token[myServentId] = RN[myServentId];
-			timestampedStandardPrint("SK: Servent " + myServentId + " released CS. LN_token[" + myServentId + "]=" + LN_token[myServentId]);
+		int poolSize = ServentExecutors.DEFAULT_POOL_SIZE;
+		String poolSizeValue = getServentProperty(properties, serventId, "platform_pool_size", null);
+		if (poolSizeValue != null) {
+			try {
+				poolSize = Integer.parseInt(poolSizeValue);
+				if (poolSize < 2) {
+					throw new NumberFormatException();
+				}
+			} catch (NumberFormatException e) {
+				timestampedErrorPrint("Problem reading platform_pool_size. Must be at least 2, one thread is kept for control messages. Exiting...");
+				System.exit(0);
+			}
+		}
 
+		ServentExecutors.init(mode, poolSize);
+		timestampedStandardPrint("Execution mode: " + ServentExecutors.getMode());
+	}
 
-			for (int j = 0; j < SERVENT_COUNT; j++) {
-				if (j != myServentId && RN[j] == LN_token[j] + 1 && !Q_token.contains(j)) {
-					Q_token.add(j);
-					timestampedStandardPrint("SK: Added servent " + j + " to token queue. Q_token: " + Q_token);
+	/**
+	 * Reads <code>vnode_weight</code> for every servent in the config - how many ids it holds on the ring.
+	 * Every servent needs the weights of all the others to place them, not just its own.
+	 */
+	private static void readVirtualNodeWeights(Properties properties) {
+		Map<Integer, Integer> weightsByPort = new HashMap<>();
+		for (int i = 0; i < SERVENT_COUNT; i++) {
+			String port = properties.getProperty("servent" + i + ".port");
+			if (port == null) {
+				continue;
+			}
+			try {
+				int weight = Integer.parseInt(getServentProperty(properties, i, "vnode_weight", "1"));
+				if (weight < 1) {
+					throw new NumberFormatException();
 				}
+				weightsByPort.put(Integer.parseInt(port.trim()), weight);
+			} catch (NumberFormatException e) {
+				timestampedErrorPrint("Problem reading vnode_weight for servent " + i + ". Must be a positive int. Exiting...");
+				System.exit(0);
 			}
+		}
+		ChordState.setVirtualNodeWeights(weightsByPort);
+	}
 
-			if (!Q_token.isEmpty()) {
-				int targetServentId = Q_token.poll();
-				timestampedStandardPrint("SK: Servent " + myServentId + " sending token to servent " + targetServentId + ". Q_token after poll: " + Q_token);
-				sendToken(targetServentId); // sendToken will set hasToken = false
-			} else {
-				timestampedStandardPrint("SK: Servent " + myServentId + " keeps token, queue is empty.");
+	/**
+	 * Reads <code>storage.engine</code> and picks where this servent keeps its DHT values:
+	 * <ul>
+	 * <li><code>memory</code> - on the heap only, lost on restart. This is the default.</li>
+	 * <li><code>durable</code> - on the heap, plus a write-ahead log and snapshots in
+	 * <code>storage.dir/[port]</code>. Fsyncs are batched by waiting <code>storage.group_commit_ms</code>
+	 * for more writes, and a snapshot is taken every <code>storage.snapshot_every</code> writes.</li>
+	 * <li><code>mapped</code> - off the heap, in a memory mapped file in <code>storage.dir/[port]</code>, sized for
+	 * <code>storage.initial_capacity</code> keys at first. Survives restarts without any replay.</li>
+	 * </ul>
+	 */
+	private static void readStorage(Properties properties, int serventId) {
+		String engine = getServentProperty(properties, serventId, "storage.engine", "memory").toLowerCase();
+		if (engine.equals("memory")) {
+			return;
+		}
+
+		File directory = new File(getServentProperty(properties, serventId, "storage.dir", "data"),
+				String.valueOf(myServentInfo.getListenerPort()));
+		String key = "storage.engine";
+		try {
+			switch (engine) {
+			case "durable":
+				key = "storage.group_commit_ms";
+				long groupCommitMillis = Long.parseLong(getServentProperty(properties, serventId, key, "2"));
+				key = "storage.snapshot_every";
+				long snapshotEvery = Long.parseLong(getServentProperty(properties, serventId, key, "100000"));
+				if (groupCommitMillis < 0 || snapshotEvery < 1) {
+					throw new NumberFormatException();
+				}
+				chordState.setValueStore(new DurableKeyValueStore(new ConcurrentIntIntMap(), directory,
+						groupCommitMillis, snapshotEvery));
+				break;
+			case "mapped":
+				key = "storage.initial_capacity";
+				int initialCapacity = Integer.parseInt(getServentProperty(properties, serventId, key, "65536"));
+				if (initialCapacity < 1) {
+					throw new NumberFormatException();
+				}
+				chordState.setValueStore(new MappedKeyValueStore(new File(directory, "values.map"), initialCapacity));
+				break;
+			default:
+				timestampedErrorPrint("Unknown storage.engine " + engine + ". Must be memory, durable or mapped. Exiting...");
+				System.exit(0);
 			}
-		} finally {
-			skMutex.unlock();
+		} catch (NumberFormatException e) {
+			timestampedErrorPrint("Problem reading " + key + ". Exiting...");
+			System.exit(0);
+		} catch (IOException e) {
+			timestampedErrorPrint("Couldn't open storage in " + directory.getPath() + ": " + e.getMessage() + ". Exiting...");
+			System.exit(0);
 		}
+		timestampedStandardPrint("Storage engine: " + engine + " in " + directory.getPath());
 	}
 
-	private static void broadcastTokenRequest(int sequenceNumber) {
-		// Assumes skMutex is held by the caller (requestCSEntry)
-		timestampedStandardPrint("SK: Servent " + myServentId + " broadcasting TOKEN_REQUEST with seq_num " + sequenceNumber);
-		for (int i = 0; i < SERVENT_COUNT; i++) {
-			if (i != myServentId) {
-				ServentInfo targetServent = allServents[i];
-				SKTokenRequestMessage specificRequestMessage = new SKTokenRequestMessage(
-						myServentInfo.getListenerPort(),
-						targetServent.getListenerPort(),
-						myServentId, // The ID of the servent making the request
-						sequenceNumber
-				);
-				MessageUtil.sendMessage(specificRequestMessage);
+	/**
+	 * Reads <code>successor_list_size</code>, how many nodes after us we keep to fall back on when
+	 * our successor crashes, and the <code>stabilize.*</code> timings: stabilization rounds come every
+	 * <code>stabilize.min_interval_ms</code> while the ring is changing, and up to
+	 * <code>stabilize.max_interval_ms</code> apart while it isn't. A node that doesn't answer within
+	 * <code>stabilize.timeout_ms</code> is taken out of the ring.
+	 * Joins, leaves and failures are gossiped to <code>gossip.fanout</code> servents every <code>gossip.interval_ms</code>.
+	 */
+	private static void readRingMaintenance(Properties properties, int serventId) {
+		String key = "successor_list_size";
+		try {
+			int successorListSize = Integer.parseInt(getServentProperty(properties, serventId, key,
+					String.valueOf(RingStabilizer.DEFAULT_SUCCESSOR_LIST_SIZE)));
+			key = "stabilize.min_interval_ms";
+			long minInterval = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(RingStabilizer.DEFAULT_MIN_INTERVAL_MILLIS)));
+			key = "stabilize.max_interval_ms";
+			long maxInterval = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(RingStabilizer.DEFAULT_MAX_INTERVAL_MILLIS)));
+			key = "stabilize.timeout_ms";
+			long timeout = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(RingStabilizer.DEFAULT_TIMEOUT_MILLIS)));
+			if (successorListSize < 1 || minInterval < 1 || maxInterval < minInterval || timeout < 1) {
+				throw new NumberFormatException();
+			}
+			chordState.configureStabilization(successorListSize, minInterval, maxInterval, timeout);
+
+			key = "gossip.interval_ms";
+			long gossipInterval = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(Membership.DEFAULT_INTERVAL_MILLIS)));
+			key = "gossip.fanout";
+			int fanout = Integer.parseInt(getServentProperty(properties, serventId, key,
+					String.valueOf(Membership.DEFAULT_FANOUT)));
+			if (gossipInterval < 1 || fanout < 1) {
+				throw new NumberFormatException();
 			}
+			chordState.configureGossip(gossipInterval, fanout);
+
+			key = "heartbeat.interval_ms";
+			long heartbeatInterval = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(FailureDetector.DEFAULT_INTERVAL_MILLIS)));
+			key = "failure.phi_threshold";
+			double phiThreshold = Double.parseDouble(getServentProperty(properties, serventId, key,
+					String.valueOf(FailureDetector.DEFAULT_THRESHOLD)));
+			if (heartbeatInterval < 1 || !(phiThreshold > 0)) {
+				throw new NumberFormatException();
+			}
+			chordState.configureFailureDetector(heartbeatInterval, phiThreshold);
+		} catch (NumberFormatException e) {
+			timestampedErrorPrint("Problem reading " + key + ". Exiting...");
+			System.exit(0);
 		}
 	}
 
-	public static void sendToken(int targetServentId) {
-		// Assumes skMutex is held by the caller (releaseCSEntry, SKTokenRequestHandler, passTokenOnShutdown)
-		if (!hasToken) {
-			timestampedErrorPrint("SK: ERROR! Servent " + myServentId + " tried to send token but doesn't have it.");
-			return;
+	/**
+	 * Reads <code>file_locks</code> (keyed or global), and for keyed locks how long one can be held
+	 * and how long we wait for one.
+	 */
+	private static void readFileLocks(Properties properties, int serventId) {
+		String kind = getServentProperty(properties, serventId, "file_locks", "keyed");
+		if (kind.equals("global")) {
+			fileLocks = new GlobalTokenLocks();
+		} else if (kind.equals("keyed")) {
+			fileLocks = keyedLocks;
+		} else {
+			timestampedErrorPrint("Unknown file_locks " + kind + ". Must be keyed or global. Exiting...");
+			System.exit(0);
 		}
-		ServentInfo targetInfo = allServents[targetServentId];
-		// Create a new queue instance for the message to avoid concurrent modification issues if Q_token is used directly
-		SKTokenMessage tokenMessage = new SKTokenMessage(
-				myServentInfo.getListenerPort(),
-				targetInfo.getListenerPort(),
-				Arrays.copyOf(LN_token, LN_token.length), // Send a copy of LN
-				new LinkedBlockingQueue<>(Q_token)        // Send a copy of Q
-		);
-		MessageUtil.sendMessage(tokenMessage);
-		timestampedStandardPrint("SK: Sent TOKEN from servent " + myServentId + " to servent " + targetServentId +
-				". LN: " + Arrays.toString(LN_token) + ", Q: " + Q_token);
-		hasToken = false;
-		// LN_token and Q_token are now conceptually part of the sent token,
-		// local copies will be overwritten when this node receives a token again.
-	}
 
+		String key = "lock.lease_ms";
+		try {
+			long lease = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(KeyedLocks.DEFAULT_LEASE_MILLIS)));
+			key = "lock.timeout_ms";
+			long timeout = Long.parseLong(getServentProperty(properties, serventId, key,
+					String.valueOf(KeyedLocks.DEFAULT_TIMEOUT_MILLIS)));
+			if (lease < 1 || timeout < 1) {
+				throw new NumberFormatException();
+			}
+			keyedLocks.configure(lease, timeout);
+		} catch (NumberFormatException e) {
+			timestampedErrorPrint("Problem reading " + key + ". Exiting...");
+			System.exit(0);
+		}
+		timestampedStandardPrint("File locks: " + kind);
+	}
 
 	public static void readConfig(String configName, int serventId) {
 		Properties properties = new Properties();
@@ -242,13 +404,35 @@ public class AppConfig {
 
 		try {
 			int chordSize = Integer.parseInt(properties.getProperty("chord_size"));
+			if (chordSize > ChordState.MAX_CHORD_SIZE) {
+				throw new NumberFormatException();
+			}
 			ChordState.CHORD_SIZE = chordSize;
 			chordState = new ChordState();
 		} catch (NumberFormatException e) {
-			timestampedErrorPrint("Problem reading chord_size. Must be a power of 2. Exiting...");
+			timestampedErrorPrint("Problem reading chord_size. Must be a power of 2, at most 2^30. Exiting...");
+			System.exit(0);
+		}
+
+		String hasherName = properties.getProperty("key_hasher", "legacy");
+		try {
+			ChordState.setKeyHasher(KeyHasher.forName(hasherName));
+		} catch (IllegalArgumentException e) {
+			timestampedErrorPrint("Unknown key_hasher " + hasherName + ". Must be legacy, sha1 or xxhash. Exiting...");
+			System.exit(0);
+		}
+
+		readVirtualNodeWeights(properties);
+
+		String codecName = getServentProperty(properties, serventId, "message_codec", "java");
+		if (!MessageUtil.setOutgoingCodec(codecName)) {
+			timestampedErrorPrint("Unknown message_codec " + codecName + ". Must be java or binary. Exiting...");
 			System.exit(0);
 		}
 
+		readSendDelay(properties, serventId);
+		readExecutionMode(properties, serventId);
+
 		String portProperty = "servent" + serventId + ".port";
 		int serventPort = -1;
 		try {
@@ -258,36 +442,23 @@ public class AppConfig {
 			System.exit(0);
 		}
 		myServentInfo = new ServentInfo("localhost", serventPort);
+		readStorage(properties, serventId);
+		readRingMaintenance(properties, serventId);
+		readFileLocks(properties, serventId);
 
-		// Initialize Suzuki-Kasami specific configurations
-		initSuzukiKasami(serventId, properties);
+		initMutex(serventId, properties);
 		INITIALIZED = true;
 	}
 
 
-	private static void passTokenOnShutdown() {
-		skMutex.lock();
-		try {
-			if (hasToken) {
-				if (Q_token != null && !Q_token.isEmpty()) {
-					int nextHolderId = Q_token.poll();
-					timestampedStandardPrint("SK: Passing SK token to servent " + nextHolderId + " on shutdown.");
-					sendToken(nextHolderId);
-				} else {
-					timestampedStandardPrint("SK: Holding SK token on shutdown, but queue is empty or null. Token remains with servent " + myServentId);
-				}
-			}
-		} finally {
-			skMutex.unlock();
-		}
-	}
-
 	/**
 	 * Graceful shutdown/cleanup before exit.
 	 */
 	public static void shutdown() {
-		timestampedStandardPrint("SK: Initiating Suzuki-Kasami token passing on shutdown...");
-		passTokenOnShutdown();
+		if (mutex != null) {
+			timestampedStandardPrint("Passing the " + mutex + " token on before shutdown...");
+			mutex.passTokenOnShutdown();
+		}
 
 		timestampedStandardPrint("Cleaning up before exit…");
 
@@ -309,6 +480,15 @@ public class AppConfig {
 			}
 		}
 
+		if (chordState != null) {
+			chordState.stopRingMaintenance();
+		}
+		ServentExecutors.shutdown(2000);
+		ConnectionManager.getInstance().closeAll();
+		if (chordState != null) {
+			chordState.getValueStore().close();
+		}
+
 		for (Thread t : workerThreads) {
 			try {
 				if (t.isAlive()) {
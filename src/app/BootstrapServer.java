@@ -98,6 +98,16 @@ public class BootstrapServer {
 					
 					activeServents.add(newServentPort);
 					newServentSocket.close();
+				} else if (message.equals("Left")) {
+					/**
+					 * A servent left the ring gracefully, we shouldn't send anyone to it anymore.
+					 */
+					int leftServentPort = socketScanner.nextInt();
+					
+					System.out.println("removing " + leftServentPort);
+					
+					activeServents.remove(Integer.valueOf(leftServentPort));
+					newServentSocket.close();
 				}
 				
 			} catch (SocketTimeoutException e) {
@@ -1,16 +1,22 @@
 package app;
 
+import app.storage.ConcurrentIntIntMap;
+import app.storage.KeyValueStore;
 import servent.message.AskGetMessage;
+import servent.message.NewNodeMessage;
 import servent.message.PutMessage;
 import servent.message.WelcomeMessage;
 import servent.message.util.MessageUtil;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Ova klasa implementira sav Chord state (successor table, predecessor, DHT vrednosti…)
@@ -19,20 +25,112 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class ChordState {
 
 	public static int CHORD_SIZE;
-	public static int chordHash(int value) {
-		return 61 * value % CHORD_SIZE;
+
+	/**
+	 * Ids are ints, so the biggest ring we support is 2^30.
+	 */
+	public static final int MAX_CHORD_SIZE = 1 << 30;
+
+	private static volatile KeyHasher keyHasher = new LegacyKeyHasher();
+
+	public static KeyHasher getKeyHasher() {
+		return keyHasher;
+	}
+
+	public static void setKeyHasher(KeyHasher hasher) {
+		keyHasher = hasher;
+	}
+
+	/**
+	 * Keeps the low m bits of a hash, where CHORD_SIZE = 2^m.
+	 */
+	public static int toChordId(long hash) {
+		return (int) (hash & (CHORD_SIZE - 1));
+	}
+
+	/**
+	 * @return the chord id of the node listening on ip:port
+	 */
+	public static int nodeId(String ipAddress, int port) {
+		return toChordId(keyHasher.hashNode(ipAddress, port));
+	}
+
+	/**
+	 * @return the chord id for a named key, like the relative path of a file
+	 */
+	public static int keyOf(String name) {
+		return toChordId(keyHasher.hashKey(name));
+	}
+
+	private static volatile Map<Integer, Integer> virtualNodeWeights = Collections.emptyMap();
+
+	/**
+	 * Sets how many ids each servent holds on the ring, by listener port. Servents that are not
+	 * in the map hold one. Every servent reads this from the same config, so they all agree on it.
+	 */
+	public static void setVirtualNodeWeights(Map<Integer, Integer> weightsByPort) {
+		virtualNodeWeights = new HashMap<>(weightsByPort);
+	}
+
+	public static int getVirtualNodeWeight(int port) {
+		return virtualNodeWeights.getOrDefault(port, 1);
+	}
+
+	/**
+	 * @return the ids of all virtual nodes for the servent on ip:port. The first one is its
+	 * regular node id, the others hash <code>ip:port#k</code>.
+	 */
+	public static int[] virtualIds(String ipAddress, int port) {
+		int[] ids = new int[getVirtualNodeWeight(port)];
+		ids[0] = nodeId(ipAddress, port);
+		for (int k = 1; k < ids.length; k++) {
+			ids[k] = toChordId(keyHasher.hashKey(ipAddress + ":" + port + "#" + k));
+		}
+		return ids;
 	}
 
 	private int chordLevel; // log_2(CHORD_SIZE)
 
-	private ServentInfo[] successorTable;
-	private ServentInfo predecessorInfo;
+	// Tabela preskoka za svaki naš virtuelni id (fingerTables[0] je za glavni id) -
+	// finger[i] je prvi čvor na ili posle (id + 2^i) mod CHORD_SIZE
+	private volatile FingerEntry[][] fingerTables;
+	private volatile ServentInfo successorInfo;
+	private volatile ServentInfo predecessorInfo;
 
-	// Spisak svih poznatih čvorova (za izgradnju tabele preskoka)
-	private List<ServentInfo> allNodeInfo;
+	// Svi poznati id-evi na prstenu (i virtuelni, i naši), sortirani, za O(log N) pretragu vlasnika ključa
+	private final TreeMap<Integer, ServentInfo> ringIndex;
+	// Samo glavni id-evi - po njima idu successor/predecessor i ulazak novih čvorova
+	private final TreeMap<Integer, ServentInfo> nodeIndex;
 
 	// DHT vrednosti koje ovaj čvor drži
-	private Map<Integer, Integer> valueMap;
+	private KeyValueStore valueStore;
+
+	/**
+	 * Every local write holds this for reading, and a {@link KeyRangeTransfer} takes it for writing
+	 * when it goes from one round to the next, so a write is never half in one round and half in the next.
+	 */
+	private final ReentrantReadWriteLock handoffLock = new ReentrantReadWriteLock();
+	// prenosi vrednosti čvoru koji ulazi, ili čvorovima koji preuzimaju naše opsege kada odlazimo
+	private final List<KeyRangeTransfer> outgoingTransfers = new CopyOnWriteArrayList<>();
+	// čvorovi koji čekaju da se završi prethodni prenos
+	private final Queue<ServentInfo> waitingJoins = new ArrayDeque<>();
+
+	/**
+	 * Nodes that left or stopped answering are not taken back from what others tell us for this long,
+	 * since their view of the ring can be a little behind ours. A node that contacts us itself is.
+	 */
+	private static final long GONE_MEMORY_MILLIS = 30_000;
+
+	private final RingStabilizer stabilizer = new RingStabilizer(this);
+	private final Membership membership = new Membership(this);
+	private final FailureDetector failureDetector = new FailureDetector(this);
+	// port -> kada je čvor otišao ili prestao da odgovara
+	private final Map<Integer, Long> goneSince = new HashMap<>();
+	private final List<Consumer<ServentInfo>> leaveListeners = new CopyOnWriteArrayList<>();
+
+	private enum LeaveState { NONE, REQUESTED, HANDING_OVER, HANDED_OVER }
+	private LeaveState leaveState = LeaveState.NONE;
+	private Runnable whenHandedOver;
 
 	// *** Nova polja za public/private vidljivost i listu pratilaca ***
 	/** Ako je true, profil je public i svako može tražiti listu fajlova. Ako je false, samo pratitelji. */
@@ -54,14 +152,27 @@ public class ChordState {
 			this.chordLevel++;
 		}
 
-		successorTable = new ServentInfo[chordLevel];
-		for (int i = 0; i < chordLevel; i++) {
-			successorTable[i] = null;
-		}
+		fingerTables = new FingerEntry[][] { new FingerEntry[chordLevel] };
 
 		predecessorInfo = null;
-		valueMap = new HashMap<>();
-		allNodeInfo = new ArrayList<>();
+		valueStore = new ConcurrentIntIntMap();
+		ringIndex = new TreeMap<>();
+		nodeIndex = new TreeMap<>();
+
+		failureDetector.addListener(new FailureDetector.Listener() {
+			@Override
+			public void suspected(ServentInfo node, double phi) {
+				AppConfig.timestampedErrorPrint("Suspecting " + node.getListenerPort() + " (phi "
+						+ String.format("%.1f", phi) + "), routing around it");
+				// stabilizacija ga proverava odmah, i izbacuje ako se ne javi
+				stabilizer.noteChurn();
+			}
+
+			@Override
+			public void recovered(ServentInfo node) {
+				AppConfig.timestampedStandardPrint(node.getListenerPort() + " is answering again");
+			}
+		});
 	}
 
 	/**
@@ -69,8 +180,7 @@ public class ChordState {
 	 */
 	public void init(WelcomeMessage welcomeMsg) {
 		// setujemo prvog successor-a
-		successorTable[0] = new ServentInfo("localhost", welcomeMsg.getSenderPort());
-		this.valueMap = welcomeMsg.getValues();
+		setSuccessor(new ServentInfo("localhost", welcomeMsg.getSenderPort()));
 
 		// javimo bootstrap-u da nije bilo kolizije
 		try {
@@ -84,6 +194,76 @@ public class ChordState {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+
+		startRingMaintenance();
+	}
+
+	/**
+	 * Sets up periodic stabilization - see {@link RingStabilizer}.
+	 */
+	public void configureStabilization(int successorListSize, long minIntervalMillis, long maxIntervalMillis, long timeoutMillis) {
+		stabilizer.configure(successorListSize, minIntervalMillis, maxIntervalMillis, timeoutMillis);
+	}
+
+	/**
+	 * Sets up membership gossip - see {@link Membership}.
+	 */
+	public void configureGossip(long intervalMillis, int fanout) {
+		membership.configure(intervalMillis, fanout);
+	}
+
+	/**
+	 * Sets up liveness tracking - see {@link FailureDetector}.
+	 */
+	public void configureFailureDetector(long heartbeatIntervalMillis, double phiThreshold) {
+		failureDetector.configure(heartbeatIntervalMillis, phiThreshold);
+	}
+
+	/**
+	 * The listener is told about every node taken out of the ring - one that left, or stopped answering.
+	 * It is called with our lock held, so it must not wait on anything.
+	 */
+	public void addLeaveListener(Consumer<ServentInfo> listener) {
+		leaveListeners.add(listener);
+	}
+
+	public FailureDetector getFailureDetector() {
+		return failureDetector;
+	}
+
+	/**
+	 * Called once we are in the ring, either as its first node or after our WELCOME.
+	 * Starts stabilization and heartbeats, and tells everyone we are here by gossip.
+	 */
+	public void startRingMaintenance() {
+		membership.start();
+		stabilizer.start();
+		failureDetector.start();
+	}
+
+	public void stopRingMaintenance() {
+		failureDetector.stop();
+		stabilizer.stop();
+		membership.stop();
+	}
+
+	public void onGossip(int[] ports, byte[] states, long[] incarnations) {
+		membership.merge(ports, states, incarnations);
+	}
+
+	/**
+	 * Tells the ring by gossip that we are leaving. Our neighbors also get a LEAVE.
+	 */
+	public void announceLeave() {
+		membership.leave();
+	}
+
+	/**
+	 * A node told us it left. We pass that on by gossip.
+	 */
+	public void nodeLeft(ServentInfo node) {
+		removeNode(node);
+		membership.markLeft(node);
 	}
 
 	/**
@@ -180,16 +360,111 @@ public class ChordState {
 		return chordLevel;
 	}
 
-	public List<ServentInfo> getAllNodeInfos() {
-		return Collections.unmodifiableList(allNodeInfo);
+	/**
+	 * @return all other known nodes, in ring order starting from our successor
+	 */
+	public synchronized List<ServentInfo> getAllNodeInfos() {
+		int myId = AppConfig.myServentInfo.getChordId();
+		List<ServentInfo> nodes = new ArrayList<>(nodeIndex.tailMap(myId, false).values());
+		nodes.addAll(nodeIndex.headMap(myId, false).values());
+		return Collections.unmodifiableList(nodes);
 	}
 
+	/**
+	 * @return the finger table of our main id
+	 */
+	public FingerEntry[] getFingerTable() {
+		return fingerTables[0].clone();
+	}
+
+	/**
+	 * @return the nodes from the finger table of our main id. Entries can be null.
+	 */
 	public ServentInfo[] getSuccessorTable() {
-		return successorTable;
+		FingerEntry[] fingers = fingerTables[0];
+		ServentInfo[] successors = new ServentInfo[fingers.length];
+		for (int i = 0; i < fingers.length; i++) {
+			successors[i] = fingers[i] == null ? null : fingers[i].getNode();
+		}
+		return successors;
+	}
+
+	/**
+	 * @return the servent with the next main id after ours. Walking successors visits every
+	 * servent once, which virtual ids would not guarantee.
+	 */
+	public ServentInfo getSuccessor() {
+		return successorInfo;
+	}
+
+	/**
+	 * Overrides the successor. Used when we learn it directly
+	 * (WELCOME, a neighbor leaving), before the full membership is known.
+	 */
+	public void setSuccessor(ServentInfo successor) {
+		successorInfo = successor;
+	}
+
+	/**
+	 * @return the next few servents after us, nearest first, that we fall back on if our successor crashes
+	 */
+	public List<ServentInfo> getSuccessorList() {
+		List<ServentInfo> list = stabilizer.getSuccessorList();
+		ServentInfo successor = successorInfo;
+		if (successor != null && (list.isEmpty() || !successor.isSameNode(list.get(0)))) {
+			return Collections.singletonList(successor);
+		}
+		return list;
+	}
+
+	/**
+	 * @return every other servent in our finger tables, once each
+	 */
+	public List<ServentInfo> getFingerNodes() {
+		List<ServentInfo> nodes = new ArrayList<>();
+		for (FingerEntry[] fingers : fingerTables) {
+			for (FingerEntry finger : fingers) {
+				if (finger == null || finger.getNode() == null) {
+					continue;
+				}
+				boolean known = false;
+				for (ServentInfo node : nodes) {
+					known |= node.isSameNode(finger.getNode());
+				}
+				if (!known) {
+					nodes.add(finger.getNode());
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return the servents the {@link FailureDetector} watches: the ones we route through
+	 */
+	List<ServentInfo> getMonitoredNodes() {
+		List<ServentInfo> nodes = new ArrayList<>(getSuccessorList());
+		ServentInfo predecessor = predecessorInfo;
+		if (predecessor != null) {
+			nodes.add(predecessor);
+		}
+		nodes.addAll(getFingerNodes());
+
+		List<ServentInfo> distinct = new ArrayList<>();
+		for (ServentInfo node : nodes) {
+			boolean known = isMe(node);
+			for (ServentInfo other : distinct) {
+				known |= other.isSameNode(node);
+			}
+			if (!known) {
+				distinct.add(node);
+			}
+		}
+		return distinct;
 	}
 
 	public int getNextNodePort() {
-		return successorTable[0].getListenerPort();
+		return getSuccessor().getListenerPort();
 	}
 
 	public ServentInfo getPredecessor() {
@@ -200,164 +475,702 @@ public class ChordState {
 		this.predecessorInfo = newNodeInfo;
 	}
 
-	public Map<Integer, Integer> getValueMap() {
-		return valueMap;
+	public KeyValueStore getValueStore() {
+		return valueStore;
 	}
 
-	public void setValueMap(Map<Integer, Integer> valueMap) {
-		this.valueMap = valueMap;
+	public void setValueStore(KeyValueStore valueStore) {
+		this.valueStore = valueStore;
 	}
 
-	public boolean isCollision(int chordId) {
+	/**
+	 * Only main ids can collide. If a virtual id lands on one that is taken, one of the two
+	 * servents simply does without it - see {@link #claim(TreeMap, int, ServentInfo)}.
+	 */
+	public synchronized boolean isCollision(int chordId) {
 		if (chordId == AppConfig.myServentInfo.getChordId()) {
 			return true;
 		}
-		for (ServentInfo serventInfo : allNodeInfo) {
-			if (serventInfo.getChordId() == chordId) {
-				return true;
-			}
+		return nodeIndex.containsKey(chordId);
+	}
+
+	/**
+	 * Is <code>id</code> in the ring interval (from, to]? Wraps around zero, and
+	 * (x, x] is taken to be the whole ring.
+	 */
+	public static boolean isInHalfOpenInterval(int id, int from, int to) {
+		if (from < to) {
+			return id > from && id <= to;
 		}
-		return false;
+		return id > from || id <= to;
 	}
 
-	public boolean isKeyMine(int key) {
-		if (predecessorInfo == null) {
-			return true;
+	/**
+	 * Is <code>id</code> in the open ring interval (from, to)? Wraps around zero, and
+	 * (x, x) is taken to be the whole ring except x.
+	 */
+	public static boolean isInOpenInterval(int id, int from, int to) {
+		if (from < to) {
+			return id > from && id < to;
+		}
+		return id > from || id < to;
+	}
+
+	/**
+	 * Does a servent joining with this main id come in right before us? That is decided on
+	 * main ids only, same as without virtual nodes, so the successor ring stays whole.
+	 */
+	public boolean isJoinPointMine(int chordId) {
+		ServentInfo predecessor = predecessorInfo;
+		return predecessor == null
+				|| isInHalfOpenInterval(chordId, predecessor.getChordId(), AppConfig.myServentInfo.getChordId());
+	}
+
+	/**
+	 * @return the servent a NEW_NODE for this main id should go to next
+	 */
+	public synchronized ServentInfo getNextNodeForJoin(int chordId) {
+		Map.Entry<Integer, ServentInfo> entry = nodeIndex.ceilingEntry(chordId);
+		if (entry == null) {
+			entry = nodeIndex.firstEntry();
+		}
+		if (entry == null || isMe(entry.getValue())) {
+			return successorInfo;
 		}
+		return entry.getValue();
+	}
 
-		int predecessorChordId = predecessorInfo.getChordId();
-		int myChordId = AppConfig.myServentInfo.getChordId();
+	private boolean isMe(ServentInfo node) {
+		return AppConfig.myServentInfo.isSameNode(node);
+	}
 
-		if (predecessorChordId < myChordId) { // bez overflow-a
-			return (key <= myChordId && key > predecessorChordId);
-		} else { // overflow
-			return (key <= myChordId || key > predecessorChordId);
+	/**
+	 * A key belongs to whoever holds the first id at or after it, and with virtual nodes
+	 * we hold several ids, so this goes through the ring index.
+	 */
+	public synchronized boolean isKeyMine(int key) {
+		if (predecessorInfo == null) {
+			return true;
 		}
+		return isMe(ownerEntry(key).getValue());
 	}
 
-	public ServentInfo getNextNodeForKey(int key) {
+	/**
+	 * Standard Chord routing, done from whichever of our ids is closest before the key:
+	 * if the key falls between it and the next id, that id's node owns it. Otherwise we forward
+	 * to the closest finger that precedes the key, which at least halves the remaining
+	 * distance on the ring, so a lookup takes O(log N) hops.
+	 *
+	 * Fingers the {@link FailureDetector} suspects are skipped, and a suspected successor is replaced by
+	 * the first live node in our successor list, so a hop never waits on a dead node. The owner of the key
+	 * is still asked even when suspected - nobody else has its values.
+	 */
+	public synchronized ServentInfo getNextNodeForKey(int key) {
 		if (isKeyMine(key)) {
 			return AppConfig.myServentInfo;
 		}
 
-		int startInd = 0;
-		if (key < AppConfig.myServentInfo.getChordId()) {
-			int skip = 1;
-			while (successorTable[skip].getChordId() > successorTable[startInd].getChordId()) {
-				startInd++;
-				skip++;
+		if (successorInfo == null) {
+			AppConfig.timestampedErrorPrint("Couldn't find successor for " + key);
+			return AppConfig.myServentInfo;
+		}
+
+		int[] myIds = AppConfig.myServentInfo.getVirtualIds();
+		FingerEntry[][] tables = fingerTables;
+		int closest = 0;
+		for (int i = 1; i < myIds.length && i < tables.length; i++) {
+			if (Math.floorMod(key - myIds[i], CHORD_SIZE) < Math.floorMod(key - myIds[closest], CHORD_SIZE)) {
+				closest = i;
 			}
 		}
+		int fromId = myIds[closest];
 
-		int previousId = successorTable[startInd].getChordId();
+		Map.Entry<Integer, ServentInfo> next = ringIndex.higherEntry(fromId);
+		if (next == null) {
+			next = ringIndex.firstEntry();
+		}
+		if (next != null && !isMe(next.getValue()) && isInHalfOpenInterval(key, fromId, next.getKey())) {
+			return next.getValue();
+		}
 
-		for (int i = startInd + 1; i < successorTable.length; i++) {
-			if (successorTable[i] == null) {
-				AppConfig.timestampedErrorPrint("Couldn't find successor for " + key);
-				break;
+		FingerEntry[] fingers = tables[closest];
+		for (int i = fingers.length - 1; i >= 0; i--) {
+			if (fingers[i] == null || fingers[i].getNode() == null || failureDetector.isSuspected(fingers[i].getNode())) {
+				continue;
+			}
+			if (isInOpenInterval(fingers[i].getNodeId(), fromId, key)) {
+				return fingers[i].getNode();
+			}
+		}
+		if (failureDetector.isSuspected(successorInfo)) {
+			for (ServentInfo node : getSuccessorList()) {
+				if (!isMe(node) && !failureDetector.isSuspected(node)) {
+					return node;
+				}
 			}
+		}
+		return successorInfo;
+	}
 
-			int successorId = successorTable[i].getChordId();
+	private int fingerStart(int id, int i) {
+		return (int) ((id + (1L << i)) % CHORD_SIZE);
+	}
+
+	/**
+	 * @return the entry for the first id at or after the given one on the ring, wrapping around
+	 */
+	private Map.Entry<Integer, ServentInfo> ownerEntry(int id) {
+		Map.Entry<Integer, ServentInfo> entry = ringIndex.ceilingEntry(id);
+		return entry == null ? ringIndex.firstEntry() : entry;
+	}
 
-			if (successorId >= key) {
-				return successorTable[i - 1];
+	/**
+	 * Puts the id into the ring index for the node. When two servents want the same id, a main
+	 * id beats a virtual one, and otherwise the lower port wins, so every servent ends up with
+	 * the same index no matter in which order it heard about them.
+	 */
+	private static void claim(TreeMap<Integer, ServentInfo> ring, int id, ServentInfo node) {
+		ServentInfo holder = ring.get(id);
+		if (holder != null && !holder.isSameNode(node)) {
+			boolean nodeIsMain = node.getChordId() == id;
+			boolean holderIsMain = holder.getChordId() == id;
+			if (holderIsMain && !nodeIsMain) {
+				return;
 			}
-			if (key > previousId && successorId < previousId) { // overflow
-				return successorTable[i - 1];
+			if (holderIsMain == nodeIsMain && holder.getListenerPort() < node.getListenerPort()) {
+				return;
 			}
-			previousId = successorId;
 		}
-		return successorTable[0];
+		ring.put(id, node);
 	}
 
+	static void claimAll(TreeMap<Integer, ServentInfo> ring, ServentInfo node) {
+		for (int id : node.getVirtualIds()) {
+			claim(ring, id, node);
+		}
+	}
+
+	private void addToIndex(ServentInfo node) {
+		nodeIndex.put(node.getChordId(), node);
+		claimAll(ringIndex, node);
+	}
+
+	/**
+	 * Rebuilds the finger tables of all our ids from the ring index - one O(log N) lookup per finger.
+	 * A finger that lands on us is left empty, since routing to ourselves gets us nowhere.
+	 */
 	private void updateSuccessorTable() {
-		int currentNodeIndex = 0;
-		ServentInfo currentNode = allNodeInfo.get(currentNodeIndex);
-		successorTable[0] = currentNode;
-
-		int currentIncrement = 2;
-		ServentInfo previousNode = AppConfig.myServentInfo;
-
-		for (int i = 1; i < chordLevel; i++, currentIncrement *= 2) {
-			int currentValue = (AppConfig.myServentInfo.getChordId() + currentIncrement) % CHORD_SIZE;
-
-			int currentId = currentNode.getChordId();
-			int previousId = previousNode.getChordId();
-
-			while (true) {
-				if (currentValue > currentId) {
-					if (currentId > previousId || currentValue < previousId) {
-						previousId = currentId;
-						currentNodeIndex = (currentNodeIndex + 1) % allNodeInfo.size();
-						currentNode = allNodeInfo.get(currentNodeIndex);
-						currentId = currentNode.getChordId();
-					} else {
-						successorTable[i] = currentNode;
-						break;
-					}
+		int[] myIds = AppConfig.myServentInfo.getVirtualIds();
+		FingerEntry[][] tables = new FingerEntry[myIds.length][chordLevel];
+		for (int v = 0; v < myIds.length; v++) {
+			for (int i = 0; i < chordLevel; i++) {
+				int start = fingerStart(myIds[v], i);
+				Map.Entry<Integer, ServentInfo> owner = ownerEntry(start);
+				if (owner == null || isMe(owner.getValue())) {
+					tables[v][i] = new FingerEntry(start, -1, null);
 				} else {
-					ServentInfo nextNode = allNodeInfo.get((currentNodeIndex + 1) % allNodeInfo.size());
-					int nextNodeId = nextNode.getChordId();
-					if (nextNodeId < currentId && currentValue <= nextNodeId) {
-						previousId = currentId;
-						currentNodeIndex = (currentNodeIndex + 1) % allNodeInfo.size();
-						currentNode = allNodeInfo.get(currentNodeIndex);
-						currentId = currentNode.getChordId();
-					} else {
-						successorTable[i] = currentNode;
-						break;
-					}
+					tables[v][i] = new FingerEntry(start, owner.getKey(), owner.getValue());
 				}
 			}
 		}
+
+		fingerTables = tables;
+	}
+
+	private void updateNeighbors() {
+		int myId = AppConfig.myServentInfo.getChordId();
+
+		Map.Entry<Integer, ServentInfo> next = nodeIndex.higherEntry(myId);
+		if (next == null) {
+			next = nodeIndex.firstEntry();
+		}
+		Map.Entry<Integer, ServentInfo> previous = nodeIndex.lowerEntry(myId);
+		if (previous == null) {
+			previous = nodeIndex.lastEntry();
+		}
+
+		ServentInfo oldSuccessor = successorInfo;
+		ServentInfo oldPredecessor = predecessorInfo;
+		successorInfo = (next == null || isMe(next.getValue())) ? null : next.getValue();
+		predecessorInfo = (previous == null || isMe(previous.getValue())) ? null : previous.getValue();
+
+		if (!sameNode(oldSuccessor, successorInfo) || !sameNode(oldPredecessor, predecessorInfo)) {
+			stabilizer.noteChurn();
+		}
+	}
+
+	private static boolean sameNode(ServentInfo a, ServentInfo b) {
+		return a == null ? b == null : a.isSameNode(b);
+	}
+
+	private void updateRouting() {
+		updateNeighbors();
+		updateSuccessorTable();
 	}
 
+	/**
+	 * Adds nodes to the ring index. Each insert is O(log N), nothing gets re-sorted.
+	 * Values for keys that one of the new nodes now owns are handed over to it.
+	 */
 	public void addNodes(List<ServentInfo> newNodes) {
-		allNodeInfo.addAll(newNodes);
+		synchronized (this) {
+			addToIndex(AppConfig.myServentInfo);
+			for (ServentInfo newNode : newNodes) {
+				goneSince.remove(newNode.getListenerPort());
+				addToIndex(newNode);
+			}
+			updateRouting();
+		}
+
+		handOffForeignValues();
+	}
 
-		allNodeInfo.sort(Comparator.comparingInt(ServentInfo::getChordId));
+	/**
+	 * Chord's notify: the node thinks it comes right before us. We take it into the ring
+	 * if we have no predecessor, or if it sits between our predecessor and us.
+	 */
+	public void notifyPredecessor(ServentInfo node) {
+		synchronized (this) {
+			goneSince.remove(node.getListenerPort());
+			ServentInfo predecessor = predecessorInfo;
+			if (isMe(node) || node.isSameNode(predecessor) || (predecessor != null
+					&& !isInOpenInterval(node.getChordId(), predecessor.getChordId(), AppConfig.myServentInfo.getChordId()))) {
+				return;
+			}
+		}
 
-		List<ServentInfo> newList = new ArrayList<>();
-		List<ServentInfo> newList2 = new ArrayList<>();
+		AppConfig.timestampedStandardPrint("Our new predecessor is " + node.getListenerPort());
+		addNodes(Collections.singletonList(node));
+	}
 
-		int myId = AppConfig.myServentInfo.getChordId();
-		for (ServentInfo serventInfo : allNodeInfo) {
-			if (serventInfo.getChordId() < myId) {
-				newList2.add(serventInfo);
+	public void onStabilizeReply(ServentInfo from, int predecessorPort, int[] successorPorts) {
+		stabilizer.onReply(from, predecessorPort, successorPorts);
+	}
+
+	/**
+	 * @return true if the node left or stopped answering not long ago
+	 */
+	public synchronized boolean isRecentlyGone(ServentInfo node) {
+		Long since = goneSince.get(node.getListenerPort());
+		if (since == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - since > GONE_MEMORY_MILLIS) {
+			goneSince.remove(node.getListenerPort());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Takes a node that stopped answering out of the ring. The nodes after it in our successor list
+	 * answered not long ago, so they go into the index if they are not there - the first of them
+	 * becomes our successor if the failed node was it. The values the failed node held are lost.
+	 */
+	synchronized void removeFailedNode(ServentInfo failed, List<ServentInfo> nodesAfter) {
+		removeNode(failed);
+		membership.markFailed(failed);
+		boolean added = false;
+		for (ServentInfo node : nodesAfter) {
+			if (!isMe(node) && !nodeIndex.containsKey(node.getChordId()) && !isRecentlyGone(node)) {
+				addToIndex(node);
+				added = true;
+			}
+		}
+		if (added) {
+			updateRouting();
+		}
+	}
+
+	/**
+	 * Starts streaming the values a joining node will own to it. It is taken into the ring, and
+	 * gets its WELCOME, once it has them all - see {@link KeyRangeTransfer}. Until then we keep
+	 * serving that range. A node that asks to join while another transfer is going waits for it.
+	 * Any of the newcomer's other ids are handed keys by their owners once gossip tells them it joined.
+	 */
+	public void acceptNewNode(ServentInfo newNode) {
+		KeyRangeTransfer transfer;
+		synchronized (this) {
+			if (isHandingOver()) {
+				AppConfig.timestampedStandardPrint(newNode.getListenerPort() + " waits until our current transfer is done");
+				waitingJoins.add(newNode);
+				return;
+			}
+
+			TreeMap<Integer, ServentInfo> ring = new TreeMap<>(ringIndex);
+			claimAll(ring, AppConfig.myServentInfo);
+			claimAll(ring, newNode);
+			transfer = new KeyRangeTransfer(newNode, ring, valueStore, false);
+			outgoingTransfers.add(transfer);
+		}
+		transfer.start();
+	}
+
+	private synchronized boolean isHandingOver() {
+		return leaveState != LeaveState.NONE || !outgoingTransfers.isEmpty();
+	}
+
+	/**
+	 * Hands everything we own over to the nodes that take over our ranges - for each of our ids,
+	 * the node after it once we are gone - and then runs <code>whenHandedOver</code>, which should
+	 * tell the ring we left. Until then we keep serving our ranges. If a node is joining through us,
+	 * that is finished first.
+	 */
+	public void leave(Runnable whenHandedOver) {
+		synchronized (this) {
+			if (leaveState != LeaveState.NONE) {
+				AppConfig.timestampedStandardPrint("Already leaving");
+				return;
+			}
+			leaveState = LeaveState.REQUESTED;
+			this.whenHandedOver = whenHandedOver;
+		}
+		startLeave();
+	}
+
+	private void startLeave() {
+		List<KeyRangeTransfer> transfers = new ArrayList<>();
+		synchronized (this) {
+			if (leaveState != LeaveState.REQUESTED || !outgoingTransfers.isEmpty()) {
+				return;
+			}
+			leaveState = LeaveState.HANDING_OVER;
+
+			TreeMap<Integer, ServentInfo> ring = new TreeMap<>(ringIndex);
+			ring.values().removeIf(this::isMe);
+			Map<Integer, ServentInfo> targets = new LinkedHashMap<>();
+			if (!ring.isEmpty()) {
+				for (int id : AppConfig.myServentInfo.getVirtualIds()) {
+					Map.Entry<Integer, ServentInfo> next = ring.ceilingEntry(id);
+					ServentInfo target = (next == null ? ring.firstEntry() : next).getValue();
+					targets.putIfAbsent(target.getListenerPort(), target);
+				}
+			}
+			for (ServentInfo target : targets.values()) {
+				transfers.add(new KeyRangeTransfer(target, ring, valueStore, true));
+			}
+			outgoingTransfers.addAll(transfers);
+		}
+
+		if (transfers.isEmpty()) {
+			AppConfig.timestampedStandardPrint("We are the last node, there is no one to hand our values to");
+		}
+		for (KeyRangeTransfer transfer : transfers) {
+			transfer.start();
+		}
+		finishLeaveIfHandedOver();
+	}
+
+	private void finishLeaveIfHandedOver() {
+		Runnable callback;
+		List<KeyRangeTransfer> transfers;
+		synchronized (this) {
+			if (leaveState != LeaveState.HANDING_OVER) {
+				return;
+			}
+			for (KeyRangeTransfer transfer : outgoingTransfers) {
+				if (!transfer.isHandedOver()) {
+					return;
+				}
+			}
+			leaveState = LeaveState.HANDED_OVER;
+			callback = whenHandedOver;
+			transfers = new ArrayList<>(outgoingTransfers);
+		}
+
+		AppConfig.timestampedStandardPrint("All our values are handed over");
+		for (KeyRangeTransfer transfer : transfers) {
+			AppConfig.keyedLocks.handOver(transfer.getTarget(), transfer::covers, null);
+		}
+		callback.run();
+	}
+
+	/**
+	 * Removes the values we handed over when leaving, so a servent that comes back with
+	 * a durable store doesn't hand stale copies of them around.
+	 */
+	public void dropHandedOverValues() {
+		handoffLock.writeLock().lock();
+		try {
+			List<Integer> handedOver = new ArrayList<>();
+			valueStore.forEach((key, value) -> {
+				for (KeyRangeTransfer transfer : outgoingTransfers) {
+					if (transfer.isLeaving() && transfer.isHandedOver() && transfer.covers(key)) {
+						handedOver.add(key);
+						return;
+					}
+				}
+			});
+			int[] keys = new int[handedOver.size()];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = handedOver.get(i);
+			}
+			valueStore.removeAll(keys);
+		} catch (UncheckedIOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't drop handed over values: " + e.getCause().getMessage());
+		} finally {
+			handoffLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sends nodes that were waiting to join through us on to our successor.
+	 * Called once the ring knows we left, so it doesn't send them back to us.
+	 */
+	public void passOnWaitingJoins() {
+		List<ServentInfo> joins;
+		synchronized (this) {
+			joins = new ArrayList<>(waitingJoins);
+			waitingJoins.clear();
+		}
+		ServentInfo successor = successorInfo;
+		if (successor == null) {
+			return;
+		}
+		for (ServentInfo newNode : joins) {
+			MessageUtil.sendMessage(new NewNodeMessage(newNode.getListenerPort(), successor.getListenerPort()));
+		}
+	}
+
+	/**
+	 * Stores values (and files, see {@link servent.handler.KeyChunkHandler}) handed over to us.
+	 *
+	 * @return false if the store failed, so the chunk should be sent again
+	 */
+	public boolean storeValues(int[] keys, int[] values) {
+		try {
+			valueStore.putAll(keys, values);
+			return true;
+		} catch (UncheckedIOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't store streamed values: " + e.getCause().getMessage());
+			return false;
+		}
+	}
+
+	public void onKeyChunkAck(int transferId, int sequence, boolean stored) {
+		for (KeyRangeTransfer transfer : outgoingTransfers) {
+			if (transfer.getId() == transferId) {
+				transfer.onAck(sequence, stored);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Called by a transfer once all it sent is acked: either it goes another round with the
+	 * keys written meanwhile, or the range is handed over. For a joining node that means taking
+	 * it into the ring, handing it the locks on the range, dropping the range from our store and
+	 * welcoming it. When we are leaving, we keep the values, but from then on pass every write to
+	 * the range on to the new owner, and once all ranges are handed over, the locks too.
+	 */
+	void advanceHandoff(KeyRangeTransfer transfer) {
+		ServentInfo target = transfer.getTarget();
+		Map<Integer, Integer> lastWrites = new HashMap<>();
+		List<Integer> moved = new ArrayList<>();
+		handoffLock.writeLock().lock();
+		try {
+			if (!outgoingTransfers.contains(transfer) || transfer.queueWrittenKeys()) {
+				return;
+			}
+			for (int key : transfer.finish()) {
+				lastWrites.put(key, valueStore.get(key, -1));
+			}
+
+			if (!transfer.isLeaving()) {
+				// lock-ovi na imena iz opsega prelaze zajedno sa ključevima
+				AppConfig.keyedLocks.handOver(target, transfer::covers, () -> {
+					synchronized (this) {
+						addToIndex(AppConfig.myServentInfo);
+						addToIndex(target);
+						updateRouting();
+
+						valueStore.forEach((key, value) -> {
+							if (target.isSameNode(ownerEntry(key).getValue())) {
+								moved.add(key);
+							}
+						});
+						for (Integer key : moved) {
+							valueStore.remove(key);
+						}
+					}
+				});
+				outgoingTransfers.remove(transfer);
+			}
+		} finally {
+			handoffLock.writeLock().unlock();
+		}
+
+		if (transfer.isLeaving()) {
+			for (Map.Entry<Integer, Integer> write : lastWrites.entrySet()) {
+				transfer.forward(write.getKey(), write.getValue());
+			}
+			AppConfig.timestampedStandardPrint("Handed our values over to " + target.getListenerPort());
+			finishLeaveIfHandedOver();
+			return;
+		}
+
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		for (Map.Entry<Integer, Integer> write : lastWrites.entrySet()) {
+			MessageUtil.sendMessage(new PutMessage(myPort, target.getListenerPort(), write.getKey(), write.getValue()));
+		}
+		AppConfig.timestampedStandardPrint("Handed " + moved.size() + " keys over to " + target.getListenerPort());
+		MessageUtil.sendMessage(new WelcomeMessage(myPort, target.getListenerPort()));
+		membership.sendAll(target);
+
+		startWaitingWork();
+	}
+
+	/**
+	 * The target stopped answering. We never removed anything, so we just forget about it.
+	 * If we were leaving, we stay in the ring instead.
+	 */
+	void abortHandoff(KeyRangeTransfer transfer) {
+		List<KeyRangeTransfer> dropped = new ArrayList<>();
+		handoffLock.writeLock().lock();
+		try {
+			if (!outgoingTransfers.contains(transfer)) {
+				return;
+			}
+			if (transfer.isLeaving()) {
+				dropped.addAll(outgoingTransfers);
 			} else {
-				newList.add(serventInfo);
+				dropped.add(transfer);
 			}
+			for (KeyRangeTransfer t : dropped) {
+				t.finish();
+			}
+			outgoingTransfers.removeAll(dropped);
+		} finally {
+			handoffLock.writeLock().unlock();
 		}
 
-		allNodeInfo.clear();
-		allNodeInfo.addAll(newList);
-		allNodeInfo.addAll(newList2);
-		if (newList2.size() > 0) {
-			predecessorInfo = newList2.get(newList2.size() - 1);
+		if (transfer.isLeaving()) {
+			synchronized (this) {
+				leaveState = LeaveState.NONE;
+				whenHandedOver = null;
+			}
+			AppConfig.timestampedErrorPrint("Gave up handing our values to " + transfer.getTarget().getListenerPort()
+					+ ", it stopped answering. We stay in the ring.");
 		} else {
-			predecessorInfo = newList.get(newList.size() - 1);
+			AppConfig.timestampedErrorPrint("Gave up streaming keys to " + transfer.getTarget().getListenerPort()
+					+ ", it stopped answering");
 		}
 
-		updateSuccessorTable();
+		startWaitingWork();
 	}
 
-	public void putValue(int key, int value) {
-		if (isKeyMine(key)) {
-			valueMap.put(key, value);
+	private void startWaitingWork() {
+		ServentInfo next;
+		synchronized (this) {
+			if (leaveState == LeaveState.REQUESTED) {
+				next = null;
+			} else {
+				next = waitingJoins.poll();
+			}
+		}
+		if (next != null) {
+			acceptNewNode(next);
 		} else {
-			ServentInfo nextNode = getNextNodeForKey(key);
-			PutMessage pm = new PutMessage(
-					AppConfig.myServentInfo.getListenerPort(),
-					nextNode.getListenerPort(),
-					key, value
-			);
-			MessageUtil.sendMessage(pm);
+			startLeave();
+		}
+	}
+
+	/**
+	 * Sends every value we hold but no longer own to its owner.
+	 */
+	private void handOffForeignValues() {
+		Map<Integer, Integer> foreignValues = new HashMap<>();
+		synchronized (this) {
+			valueStore.forEach((key, value) -> {
+				if (!isKeyMine(key)) {
+					foreignValues.put(key, value);
+				}
+			});
+			for (Integer key : foreignValues.keySet()) {
+				valueStore.remove(key);
+			}
+		}
+
+		for (Map.Entry<Integer, Integer> valueEntry : foreignValues.entrySet()) {
+			AppConfig.timestampedStandardPrint("Handing key " + valueEntry.getKey() + " over to its new owner");
+			putValue(valueEntry.getKey(), valueEntry.getValue());
+		}
+	}
+
+	/**
+	 * Forgets a node that left the ring.
+	 */
+	public synchronized void removeNode(ServentInfo node) {
+		if (isMe(node)) {
+			return;
 		}
+		goneSince.put(node.getListenerPort(), System.currentTimeMillis());
+		nodeIndex.remove(node.getChordId());
+		for (int id : node.getVirtualIds()) {
+			if (node.isSameNode(ringIndex.get(id))) {
+				ringIndex.remove(id);
+			}
+		}
+
+		updateRouting();
+		for (Consumer<ServentInfo> listener : leaveListeners) {
+			listener.accept(node);
+		}
+	}
+
+	/**
+	 * Puts an uploaded file in its place, and notes it for handoffs of its key, the way {@link #putValue} notes values.
+	 */
+	void storeFile(IncomingFile file) throws IOException {
+		handoffLock.readLock().lock();
+		try {
+			file.finish();
+			int key = keyOf(file.getPath());
+			for (KeyRangeTransfer transfer : outgoingTransfers) {
+				if (!transfer.isHandedOver()) {
+					transfer.noteFileWrite(file.getPath(), key);
+				}
+			}
+		} finally {
+			handoffLock.readLock().unlock();
+		}
+	}
+
+	public void putValue(int key, int value) {
+		handoffLock.readLock().lock();
+		try {
+			if (isKeyMine(key)) {
+				try {
+					valueStore.put(key, value);
+				} catch (UncheckedIOException e) {
+					AppConfig.timestampedErrorPrint("Couldn't store " + key + ": " + e.getCause().getMessage());
+					return;
+				}
+				for (KeyRangeTransfer transfer : outgoingTransfers) {
+					if (!transfer.isHandedOver()) {
+						transfer.noteWrite(key);
+					} else if (transfer.covers(key)) {
+						transfer.forward(key, value);
+					}
+				}
+				return;
+			}
+		} finally {
+			handoffLock.readLock().unlock();
+		}
+
+		ServentInfo nextNode = getNextNodeForKey(key);
+		PutMessage pm = new PutMessage(
+				AppConfig.myServentInfo.getListenerPort(),
+				nextNode.getListenerPort(),
+				key, value
+		);
+		MessageUtil.sendMessage(pm);
 	}
 
 	public int getValue(int key) {
 		if (isKeyMine(key)) {
-			return valueMap.getOrDefault(key, -1);
+			return valueStore.get(key, -1);
 		}
 
 		ServentInfo nextNode = getNextNodeForKey(key);
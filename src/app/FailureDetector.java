@@ -0,0 +1,246 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import servent.message.HeartbeatMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * Phi accrual failure detector (Hayashibara et al.) for the servents we route through: our successor,
+ * predecessor, successor list and fingers. Every message we get from a servent counts as a heartbeat,
+ * so a servent we already talk to costs nothing extra. Only one we haven't heard from for
+ * <code>interval</code> is sent a HEARTBEAT, which it answers.
+ *
+ * Instead of a yes or no after a fixed timeout, each servent gets a suspicion level phi: how unlikely
+ * it is, given the gaps between heartbeats we have seen from it, to still hear from it after the
+ * silence so far. phi 8 means a one in 10^8 chance. Past <code>threshold</code> the servent is suspected
+ * and {@link Listener}s are told. A servent we couldn't even connect to is suspected right away. Either
+ * way it is cleared as soon as we hear from it again.
+ *
+ * A burst of messages would teach us tiny gaps and make us suspect everyone right after it, so arrivals
+ * closer than <code>interval / 2</code> to the last counted one only move the silence back, and are not
+ * counted as a gap.
+ */
+public class FailureDetector {
+
+	public interface Listener {
+
+		void suspected(ServentInfo node, double phi);
+
+		void recovered(ServentInfo node);
+	}
+
+	static final long DEFAULT_INTERVAL_MILLIS = 1000;
+	static final double DEFAULT_THRESHOLD = 8.0;
+
+	private static final int WINDOW = 100;
+
+	/**
+	 * Gaps between heartbeats from one servent, over the last {@link #WINDOW} of them.
+	 */
+	private final class History {
+		private final long[] gaps = new long[WINDOW];
+		private int count;
+		private int next;
+		private double sum;
+		private double sumOfSquares;
+
+		long lastHeard;
+		long lastCounted;
+		long lastPinged;
+		boolean unreachable;
+		boolean suspected;
+
+		History(long now) {
+			lastHeard = now;
+			lastCounted = now;
+			add(2 * interval); // prva procena, dok ne stignu pravi razmaci: ping posle tišine, pa odgovor
+		}
+
+		void add(long gap) {
+			if (count == WINDOW) {
+				sum -= gaps[next];
+				sumOfSquares -= (double) gaps[next] * gaps[next];
+			} else {
+				count++;
+			}
+			gaps[next] = gap;
+			next = (next + 1) % WINDOW;
+			sum += gap;
+			sumOfSquares += (double) gap * gap;
+		}
+
+		void heard(long now) {
+			lastHeard = now;
+			unreachable = false;
+			if (now - lastCounted >= interval / 2) {
+				add(now - lastCounted);
+				lastCounted = now;
+			}
+		}
+
+		/**
+		 * The silence is compared to the mean gap plus one interval, which is how late a ping can go
+		 * out, and the deviation is taken to be at least half an interval, so a servent we only ping
+		 * isn't suspected over one slow answer. The logistic approximation of the normal distribution
+		 * is the one Akka and Cassandra use.
+		 */
+		double phi(long now) {
+			if (unreachable) {
+				return Double.POSITIVE_INFINITY;
+			}
+			double mean = sum / count + interval;
+			double variance = Math.max(0, sumOfSquares / count - (sum / count) * (sum / count));
+			double stdDev = Math.max(Math.sqrt(variance), interval / 2.0);
+			double y = (now - lastHeard - mean) / stdDev;
+			double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+			if (now - lastHeard > mean) {
+				return -Math.log10(e / (1.0 + e));
+			}
+			return -Math.log10(1.0 - 1.0 / (1.0 + e));
+		}
+	}
+
+	private final ChordState chordState;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private long interval = DEFAULT_INTERVAL_MILLIS;
+	private double threshold = DEFAULT_THRESHOLD;
+
+	private final Map<Integer, History> histories = new HashMap<>();
+	private boolean running;
+	private ScheduledFuture<?> rounds;
+
+	FailureDetector(ChordState chordState) {
+		this.chordState = chordState;
+	}
+
+	synchronized void configure(long interval, double threshold) {
+		this.interval = interval;
+		this.threshold = threshold;
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		rounds = ServentExecutors.delayScheduler().scheduleWithFixedDelay(this::round, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		running = false;
+		if (rounds != null) {
+			rounds.cancel(false);
+		}
+	}
+
+	/**
+	 * Called for every message we get, with the port it says it comes from.
+	 */
+	public void heardFrom(int port) {
+		boolean recovered;
+		synchronized (this) {
+			History history = histories.get(port);
+			if (history == null) {
+				return;
+			}
+			history.heard(System.currentTimeMillis());
+			recovered = history.suspected;
+			history.suspected = false;
+		}
+		if (recovered) {
+			ServentInfo node = new ServentInfo("localhost", port);
+			for (Listener listener : listeners) {
+				listener.recovered(node);
+			}
+		}
+	}
+
+	/**
+	 * We couldn't send to the servent at all - nothing listens on its port any more.
+	 */
+	public void sendFailed(int port) {
+		synchronized (this) {
+			History history = histories.get(port);
+			if (history == null || history.suspected) {
+				return;
+			}
+			history.unreachable = true;
+			history.suspected = true;
+		}
+		ServentInfo node = new ServentInfo("localhost", port);
+		for (Listener listener : listeners) {
+			listener.suspected(node, Double.POSITIVE_INFINITY);
+		}
+	}
+
+	public synchronized boolean isSuspected(ServentInfo node) {
+		History history = node == null ? null : histories.get(node.getListenerPort());
+		return history != null && (history.suspected || history.phi(System.currentTimeMillis()) >= threshold);
+	}
+
+	/**
+	 * @return the current phi of the servent, or 0 if we don't watch it
+	 */
+	public synchronized double phi(ServentInfo node) {
+		History history = histories.get(node.getListenerPort());
+		return history == null ? 0 : history.phi(System.currentTimeMillis());
+	}
+
+	/**
+	 * Starts watching whoever we route through now, stops watching whoever we don't, pings those we
+	 * haven't heard from, and tells the listeners about servents that just went over the threshold.
+	 * Talks to {@link ChordState} before taking our lock, never while holding it.
+	 */
+	private void round() {
+		List<ServentInfo> watched = chordState.getMonitoredNodes();
+		List<Integer> toPing = new ArrayList<>();
+		Map<ServentInfo, Double> newlySuspected = new HashMap<>();
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			Set<Integer> ports = new HashSet<>();
+			for (ServentInfo node : watched) {
+				int port = node.getListenerPort();
+				ports.add(port);
+				History history = histories.computeIfAbsent(port, p -> new History(now));
+				if (now - history.lastHeard >= interval && now - history.lastPinged >= interval) {
+					history.lastPinged = now;
+					toPing.add(port);
+				}
+				if (!history.suspected) {
+					double phi = history.phi(now);
+					if (phi >= threshold) {
+						history.suspected = true;
+						newlySuspected.put(node, phi);
+					}
+				}
+			}
+			histories.keySet().retainAll(ports);
+		}
+
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		for (int port : toPing) {
+			MessageUtil.sendMessage(new HeartbeatMessage(myPort, port, false));
+		}
+		for (Map.Entry<ServentInfo, Double> entry : newlySuspected.entrySet()) {
+			for (Listener listener : listeners) {
+				listener.suspected(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+}
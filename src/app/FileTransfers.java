@@ -0,0 +1,217 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import servent.message.FileChunkAckMessage;
+import servent.message.FileChunkMessage;
+import servent.message.UploadMessage;
+import servent.message.UploadResponseMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * Uploads that are moving file content: ours going out, and those coming in to be stored here.
+ *
+ * The UPLOAD request only finds the node that stores the file, going along the ring like before. That node
+ * answers with a READY {@link FileChunkAckMessage}, and the file then goes straight to it in
+ * {@link FileChunkMessage}s of {@link #CHUNK_SIZE} bytes, read from disk as they are sent and written to
+ * disk as they come, with at most {@link OutgoingFile#WINDOW} of them waiting for an ack. So a transfer
+ * never holds more than a window of chunks in memory, however big the file is. Chunks go in the data lane,
+ * on their own connection, and never hold up control messages - see {@link servent.message.MessageLane}.
+ *
+ * Once it has the whole file, the storing node answers with UPLOAD_RESPONSE, and that ends the upload
+ * here and releases its lock.
+ *
+ * Files also move this way when their part of the ring changes owner, see {@link #handOver}.
+ */
+public class FileTransfers {
+
+	/**
+	 * A chunk with its frame header still fits the largest buffer the listener pools, see {@link servent.message.util.ByteBufferPool}.
+	 */
+	public static final int CHUNK_SIZE = 32 * 1024;
+
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final Map<Integer, OutgoingFile> outgoing = new ConcurrentHashMap<>();
+	// "port-transferId" uploader-a -> fajl koji primamo
+	private final Map<String, IncomingFile> incoming = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts uploading a file from our working directory. The write lock on <code>path</code> must be held,
+	 * and is released when the upload ends, whichever way.
+	 *
+	 * @return false if the file couldn't be read - the lock is released then
+	 */
+	public boolean upload(String path, File file) {
+		OutgoingFile transfer;
+		try {
+			transfer = new OutgoingFile(nextId.incrementAndGet(), path, file);
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't read " + file + " for upload: " + e.getMessage());
+			AppConfig.fileLocks.release(path);
+			return false;
+		}
+		outgoing.put(transfer.getId(), transfer);
+		transfer.start();
+		return true;
+	}
+
+	/**
+	 * Hands a file we store over to the node taking over its key, see {@link KeyRangeTransfer}. The request
+	 * goes straight to that node, which stores the file though the key isn't its own yet. No lock is taken,
+	 * the key is still ours until the handover.
+	 *
+	 * @return the transfer id, or -1 if the file couldn't be read - <code>whenHandedOver</code> is not called then
+	 */
+	int handOver(String path, File file, int targetPort, Consumer<Boolean> whenHandedOver) {
+		OutgoingFile transfer;
+		try {
+			transfer = new OutgoingFile(nextId.incrementAndGet(), path, file, targetPort, whenHandedOver);
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't read " + file + " to hand it over: " + e.getMessage());
+			return -1;
+		}
+		outgoing.put(transfer.getId(), transfer);
+		transfer.start();
+		return transfer.getId();
+	}
+
+	/**
+	 * Stops a handoff whose range transfer was given up. Its <code>whenHandedOver</code> is not called.
+	 */
+	void cancel(int transferId) {
+		OutgoingFile transfer = outgoing.remove(transferId);
+		if (transfer != null) {
+			transfer.close();
+		}
+	}
+
+	public void onAck(FileChunkAckMessage ack) {
+		OutgoingFile transfer = outgoing.get(ack.getTransferId());
+		if (transfer == null) {
+			return; // already ended, this ack came late
+		}
+		if (ack.getSequence() == FileChunkAckMessage.READY) {
+			transfer.onReady(ack.getSenderPort());
+		} else {
+			transfer.onAck(ack.getSequence(), ack.isStored());
+		}
+	}
+
+	/**
+	 * The storing node answered. Ends our upload with this transfer id, and releases its lock.
+	 */
+	public void onUploadResponse(int transferId, String path, boolean stored) {
+		OutgoingFile transfer = outgoing.get(transferId);
+		if (transfer == null) {
+			AppConfig.timestampedErrorPrint("Got an upload response for " + path + " (transfer " + transferId
+					+ "), which we are not uploading");
+			return;
+		}
+		end(transfer, stored, stored ? "Uploaded " + path : "Upload of " + path + " failed");
+	}
+
+	/**
+	 * Gives up on an upload whose chunks stopped being acked.
+	 */
+	void abandon(OutgoingFile transfer) {
+		end(transfer, false, "Upload of " + transfer.getPath() + " got no answer for too long, giving it up");
+	}
+
+	private void end(OutgoingFile transfer, boolean stored, String reason) {
+		if (outgoing.remove(transfer.getId(), transfer)) {
+			transfer.close();
+			if (transfer.isHandoff()) {
+				AppConfig.timestampedStandardPrint(reason + " (handoff)");
+				transfer.handedOver(stored);
+				return;
+			}
+			AppConfig.timestampedStandardPrint(reason + ". Releasing lock on " + transfer.getPath());
+			AppConfig.fileLocks.release(transfer.getPath());
+		}
+	}
+
+	/**
+	 * We store the file of this upload: make room for it, and tell the uploader to send it.
+	 */
+	public void receive(UploadMessage upload) {
+		String path = upload.getFilePath();
+		int uploader = upload.getOriginalRequesterPort();
+		if (uploader == AppConfig.myServentInfo.getListenerPort()) {
+			// naš fajl, već je u našem direktorijumu
+			respond(uploader, upload.getTransferId(), path, true);
+			return;
+		}
+
+		IncomingFile file;
+		try {
+			file = new IncomingFile(uploader, upload.getTransferId(), path, upload.getSize());
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't store " + path + ": " + e.getMessage());
+			respond(uploader, upload.getTransferId(), path, false);
+			return;
+		}
+		AppConfig.timestampedStandardPrint("Receiving " + path + " (" + upload.getSize() + " bytes) from " + uploader);
+		if (file.isComplete()) {
+			complete(file);
+			return;
+		}
+		incoming.put(file.getKey(), file);
+		file.start();
+		MessageUtil.sendMessage(new FileChunkAckMessage(AppConfig.myServentInfo.getListenerPort(), uploader,
+				upload.getTransferId(), FileChunkAckMessage.READY, true));
+	}
+
+	public void onChunk(FileChunkMessage chunk) {
+		IncomingFile file = incoming.get(IncomingFile.key(chunk.getSenderPort(), chunk.getTransferId()));
+		if (file == null) {
+			return; // resent after we already had everything
+		}
+		boolean stored;
+		try {
+			stored = file.write(chunk);
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't write to " + file.getPath() + ": " + e.getMessage());
+			drop(file);
+			respond(file.getUploader(), file.getTransferId(), file.getPath(), false);
+			return;
+		}
+		MessageUtil.sendMessage(new FileChunkAckMessage(AppConfig.myServentInfo.getListenerPort(), chunk.getSenderPort(),
+				chunk.getTransferId(), chunk.getSequence(), stored));
+		if (file.isComplete() && incoming.remove(file.getKey(), file)) {
+			complete(file);
+		}
+	}
+
+	private void complete(IncomingFile file) {
+		boolean stored;
+		try {
+			AppConfig.chordState.storeFile(file);
+			stored = true;
+			AppConfig.timestampedStandardPrint("Stored " + file.getPath() + " from " + file.getUploader());
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't store " + file.getPath() + ": " + e.getMessage());
+			file.discard();
+			stored = false;
+		}
+		respond(file.getUploader(), file.getTransferId(), file.getPath(), stored);
+	}
+
+	/**
+	 * Drops a file we were receiving, after an error or when the uploader went quiet.
+	 */
+	void drop(IncomingFile file) {
+		if (incoming.remove(file.getKey(), file)) {
+			file.discard();
+		}
+	}
+
+	private void respond(int uploader, int transferId, String path, boolean stored) {
+		MessageUtil.sendMessage(new UploadResponseMessage(AppConfig.myServentInfo.getListenerPort(), uploader,
+				transferId, stored, path));
+	}
+}
@@ -0,0 +1,46 @@
+package app;
+
+/**
+ * One row of the finger table: the start of the interval on the ring,
+ * <code>(myId + 2^i) mod CHORD_SIZE</code>, and the first node at or after it.
+ * Immutable - the whole table is rebuilt when membership changes.
+ */
+public class FingerEntry {
+
+	private final int start;
+	private final int nodeId;
+	private final ServentInfo node;
+
+	public FingerEntry(int start, int nodeId, ServentInfo node) {
+		this.start = start;
+		this.nodeId = nodeId;
+		this.node = node;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the id the node holds at this spot of the ring. With virtual nodes
+	 * this is not always {@link ServentInfo#getChordId()}.
+	 */
+	public int getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * @return the node responsible for {@link #getStart()}, or null if we don't know of any other node yet
+	 */
+	public ServentInfo getNode() {
+		return node;
+	}
+
+	@Override
+	public String toString() {
+		if (node == null || nodeId == node.getChordId()) {
+			return start + " -> " + node;
+		}
+		return start + " -> " + nodeId + "@" + node;
+	}
+}
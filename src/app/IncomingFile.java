@@ -0,0 +1,166 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import servent.message.FileChunkMessage;
+
+/**
+ * A file being uploaded to us. Chunks are written into a temporary file under <code>.incoming</code>
+ * in the working directory as they come, in any order, and the file takes its place only once it is
+ * whole, so nobody ever sees half of it. See {@link FileTransfers}.
+ */
+class IncomingFile {
+
+	/**
+	 * Where files are put together in the working directory, before they take their place.
+	 */
+	static final String DIRECTORY = ".incoming";
+
+	/**
+	 * An upload we get nothing of for this long is dropped, with what we had of it.
+	 */
+	private static final long TIMEOUT_MILLIS = 60_000;
+
+	private final int uploader;
+	private final int transferId;
+	private final String path;
+	private final long size;
+	private final int chunkCount;
+	private final Path target;
+	private final Path temporary;
+	private final FileChannel channel;
+
+	private final BitSet written = new BitSet();
+	private int writtenCount;
+	private volatile long lastProgress;
+	private ScheduledFuture<?> watchdog;
+
+	IncomingFile(int uploader, int transferId, String path, long size) throws IOException {
+		this.uploader = uploader;
+		this.transferId = transferId;
+		this.path = path;
+		this.size = size;
+		this.chunkCount = (int) ((size + FileTransfers.CHUNK_SIZE - 1) / FileTransfers.CHUNK_SIZE);
+
+		Path workingDir = new File(AppConfig.workingDirectory).toPath().toAbsolutePath().normalize();
+		target = workingDir.resolve(path).normalize();
+		if (!target.startsWith(workingDir) || target.equals(workingDir)) {
+			throw new IOException(path + " is outside the working directory");
+		}
+		Path incomingDir = workingDir.resolve(DIRECTORY);
+		Files.createDirectories(incomingDir);
+		temporary = incomingDir.resolve(key(uploader, transferId) + ".part");
+		channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	static String key(int uploader, int transferId) {
+		return uploader + "-" + transferId;
+	}
+
+	String getKey() {
+		return key(uploader, transferId);
+	}
+
+	int getUploader() {
+		return uploader;
+	}
+
+	int getTransferId() {
+		return transferId;
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	void start() {
+		lastProgress = System.currentTimeMillis();
+		watchdog = ServentExecutors.delayScheduler().scheduleWithFixedDelay(() -> {
+			if (System.currentTimeMillis() - lastProgress > TIMEOUT_MILLIS) {
+				AppConfig.timestampedErrorPrint("Nothing more of " + path + " came from " + uploader + ", dropping it");
+				AppConfig.fileTransfers.drop(this);
+			}
+		}, TIMEOUT_MILLIS, TIMEOUT_MILLIS / 4, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return false if the chunk is damaged, or doesn't fit the file - it has to come again
+	 */
+	synchronized boolean write(FileChunkMessage chunk) throws IOException {
+		int sequence = chunk.getSequence();
+		if (sequence < 0 || sequence >= chunkCount) {
+			return false;
+		}
+		long offset = (long) sequence * FileTransfers.CHUNK_SIZE;
+		if (!chunk.isIntact() || chunk.getData().length != Math.min(FileTransfers.CHUNK_SIZE, size - offset)) {
+			AppConfig.timestampedErrorPrint("Chunk " + sequence + " of " + path + " came in damaged, asking for it again");
+			return false;
+		}
+		lastProgress = System.currentTimeMillis();
+		if (written.get(sequence)) {
+			return true;
+		}
+		ByteBuffer data = ByteBuffer.wrap(chunk.getData());
+		while (data.hasRemaining()) {
+			channel.write(data, offset + data.position());
+		}
+		written.set(sequence);
+		writtenCount++;
+		return true;
+	}
+
+	synchronized boolean isComplete() {
+		return writtenCount == chunkCount;
+	}
+
+	/**
+	 * Puts the whole file in its place.
+	 */
+	synchronized void finish() throws IOException {
+		stopWatching();
+		try {
+			channel.force(false);
+		} finally {
+			channel.close();
+		}
+		long got = Files.size(temporary);
+		if (got != size) {
+			Files.deleteIfExists(temporary);
+			throw new IOException("got " + got + " bytes instead of " + size);
+		}
+		Files.createDirectories(target.getParent());
+		try {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	synchronized void discard() {
+		stopWatching();
+		try {
+			channel.close();
+			Files.deleteIfExists(temporary);
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't delete " + temporary + ": " + e.getMessage());
+		}
+	}
+
+	private void stopWatching() {
+		if (watchdog != null) {
+			watchdog.cancel(false);
+		}
+	}
+}
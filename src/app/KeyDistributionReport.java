@@ -0,0 +1,111 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline report of how evenly keys land on nodes, for each key hasher.
+ * Nodes are placed the way <code>servent_list.properties</code> places them
+ * (localhost, ports 1100, 1200, ...), and keys are file names like the ones we upload.
+ *
+ * Usage: <code>java app.KeyDistributionReport [servent_count] [chord_size] [key_count] [vnode_weight] [hasher...]</code>
+ * <br>
+ * With no hashers given, it compares legacy (before) to sha1 and xxhash (after). Run it once with
+ * vnode_weight 1 and once with more to see what virtual nodes do.
+ */
+public class KeyDistributionReport {
+
+	public static void main(String[] args) {
+		int serventCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int chordSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int keyCount = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+		int firstHasher = 3;
+		int weight = 1;
+		if (args.length > 3 && args[3].matches("\\d+")) {
+			weight = Integer.parseInt(args[3]);
+			firstHasher = 4;
+		}
+		List<String> hashers = new ArrayList<>();
+		for (int i = firstHasher; i < args.length; i++) {
+			hashers.add(args[i]);
+		}
+		if (hashers.isEmpty()) {
+			hashers.add("legacy");
+			hashers.add("sha1");
+			hashers.add("xxhash");
+		}
+
+		ChordState.CHORD_SIZE = chordSize;
+		Map<Integer, Integer> weightsByPort = new TreeMap<>();
+		for (int i = 0; i < serventCount; i++) {
+			weightsByPort.put(portOf(i), weight);
+		}
+		ChordState.setVirtualNodeWeights(weightsByPort);
+		System.out.println("servents=" + serventCount + ", chord_size=" + chordSize + ", keys=" + keyCount
+				+ ", vnode_weight=" + weight);
+		for (String hasherName : hashers) {
+			ChordState.setKeyHasher(KeyHasher.forName(hasherName));
+			report(hasherName, serventCount, keyCount);
+		}
+	}
+
+	private static int portOf(int serventId) {
+		return 1100 + serventId * 100;
+	}
+
+	private static void report(String hasherName, int serventCount, int keyCount) {
+		System.out.println();
+		System.out.println("== " + hasherName + " ==");
+
+		// A node whose main id is taken gets a SORRY from the ring, so it never joins.
+		// Virtual ids go in after all the main ones, lower ports first, same as ChordState does it.
+		TreeMap<Integer, Integer> ring = new TreeMap<>();
+		List<Integer> joined = new ArrayList<>();
+		int collisions = 0;
+		for (int i = 0; i < serventCount; i++) {
+			if (ring.putIfAbsent(ChordState.nodeId("localhost", portOf(i)), portOf(i)) != null) {
+				collisions++;
+			} else {
+				joined.add(portOf(i));
+			}
+		}
+		for (int port : joined) {
+			int[] virtualIds = ChordState.virtualIds("localhost", port);
+			for (int k = 1; k < virtualIds.length; k++) {
+				ring.putIfAbsent(virtualIds[k], port);
+			}
+		}
+
+		Map<Integer, Integer> load = new TreeMap<>();
+		for (int port : joined) {
+			load.put(port, 0);
+		}
+		for (int i = 0; i < keyCount; i++) {
+			int key = ChordState.keyOf("file" + i + ".txt");
+			Map.Entry<Integer, Integer> owner = ring.ceilingEntry(key);
+			if (owner == null) {
+				owner = ring.firstEntry();
+			}
+			load.merge(owner.getValue(), 1, Integer::sum);
+		}
+
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		double sumOfSquares = 0;
+		for (Map.Entry<Integer, Integer> entry : load.entrySet()) {
+			int keys = entry.getValue();
+			min = Math.min(min, keys);
+			max = Math.max(max, keys);
+			sumOfSquares += (double) keys * keys;
+			System.out.printf("node %-10d port %-5d keys %-7d %5.1f%%%n", ChordState.nodeId("localhost", entry.getKey()),
+					entry.getKey(), keys, 100.0 * keys / keyCount);
+		}
+
+		double mean = (double) keyCount / load.size();
+		double stdDev = Math.sqrt(Math.max(0, sumOfSquares / load.size() - mean * mean));
+		System.out.printf("joined=%d, id collisions=%d, min=%d, max=%d, mean=%.1f, stddev=%.1f, max/mean=%.2f%n",
+				joined.size(), collisions, min, max, mean, stdDev, max / mean);
+	}
+}
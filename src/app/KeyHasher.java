@@ -0,0 +1,50 @@
+package app;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns node addresses and key names into points on the Chord ring.
+ *
+ * A hasher gives back a full 64 bit hash, and {@link ChordState} keeps the low
+ * <code>m</code> bits of it, where <code>chord_size = 2^m</code>. Hashers are picked
+ * with <code>key_hasher</code> in the config:
+ * <ul>
+ * <li><code>legacy</code> - the original <code>61 * value</code>, node ids from the port only. This is the default.</li>
+ * <li><code>sha1</code> - the first 8 bytes of the SHA-1 digest, as in the Chord paper.</li>
+ * <li><code>xxhash</code> - xxHash64, much cheaper than SHA-1 and spreads keys just as well.</li>
+ * </ul>
+ */
+public interface KeyHasher {
+
+	long hash(byte[] data);
+
+	/**
+	 * @return the hash for the node listening on the given address
+	 */
+	default long hashNode(String ipAddress, int port) {
+		return hash((ipAddress + ":" + port).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the hash for a named key, like the relative path of a file
+	 */
+	default long hashKey(String key) {
+		return hash(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if there is no hasher with that name
+	 */
+	static KeyHasher forName(String name) {
+		switch (name.trim().toLowerCase()) {
+		case "legacy":
+			return new LegacyKeyHasher();
+		case "sha1":
+			return new Sha1KeyHasher();
+		case "xxhash":
+			return new XxHash64KeyHasher();
+		default:
+			throw new IllegalArgumentException("Unknown key hasher " + name);
+		}
+	}
+}
@@ -0,0 +1,431 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import app.storage.KeyValueStore;
+import servent.message.KeyChunkMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * Streams the values (and stored files) in part of the ring to the node that takes it over -
+ * a node joining in front of us, or, when we leave, the node after one of our ids.
+ * Values go in {@link KeyChunkMessage}s of {@link #CHUNK_SIZE} keys, with at most {@link #WINDOW}
+ * chunks waiting for an ack at a time, so a node holding millions of keys never builds one huge
+ * message, and a slow receiver is never sent more than it can take. Stored files go one at a time,
+ * content and all, the way uploads do, see {@link FileTransfers#handOver}.
+ *
+ * We keep owning (and serving) the range until the receiver has everything:
+ * <ol>
+ * <li>Every key in the range is sent, read from the store when its chunk goes out, and every file.
+ * Keys written meanwhile are remembered.</li>
+ * <li>Once all chunks are acked and all files stored, the keys written meanwhile are sent again, with
+ * files that came or changed meanwhile, and so on, until a round ends with nothing new written
+ * (or after {@link #MAX_CATCH_UP_ROUNDS}).</li>
+ * <li>Then {@link ChordState} hands the range over, see {@link ChordState#advanceHandoff(KeyRangeTransfer)}.</li>
+ * </ol>
+ * Going from one round to the next happens under {@link ChordState}'s handoff lock, which every
+ * local write holds for reading, so no write falls between two rounds.
+ */
+class KeyRangeTransfer {
+
+	static final int CHUNK_SIZE = 4096;
+	static final int WINDOW = 8;
+
+	/**
+	 * Under a steady stream of writes to the range, rounds may never come out empty.
+	 * After this many, the last few writes are passed on without waiting for an ack.
+	 */
+	static final int MAX_CATCH_UP_ROUNDS = 5;
+
+	/**
+	 * Chunks still not acked after this long without any ack are sent again. A chunk can get lost
+	 * when it goes out on a pooled connection to a servent that has restarted since.
+	 */
+	private static final long RESEND_MILLIS = 5_000;
+
+	/**
+	 * A transfer that gets no ack for this long is given up. We still have every key, so nothing is lost.
+	 */
+	private static final long TIMEOUT_MILLIS = 30_000;
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private enum Phase { STREAMING, CATCHING_UP, DONE }
+
+
+	private final int id = nextId.incrementAndGet();
+	private final ServentInfo target;
+	private final TreeMap<Integer, ServentInfo> ring;
+	private final KeyValueStore store;
+	private final boolean leaving;
+
+	private final List<int[]> chunks = new ArrayList<>();
+	private final BitSet acked = new BitSet();
+	private int ackedCount;
+	private int nextToSend;
+	private int inFlight;
+	private boolean advancing;
+	private int rounds;
+
+	private volatile Phase phase = Phase.STREAMING;
+	private final Set<Integer> writtenKeys = ConcurrentHashMap.newKeySet();
+
+	private final Set<String> writtenFiles = ConcurrentHashMap.newKeySet();
+	// fajlovi iz opsega koji čekaju da budu poslati
+	private final Deque<String> filesToSend = new ArrayDeque<>();
+	// fajl koji se upravo šalje, -1 ako nijedan
+	private volatile int fileTransferId = -1;
+
+	private volatile long lastProgress;
+	private ScheduledFuture<?> watchdog;
+
+	/**
+	 * @param ring the ring index as it will be once the range is handed over
+	 * @param leaving true if we are the one leaving, false if the target is joining
+	 */
+	KeyRangeTransfer(ServentInfo target, TreeMap<Integer, ServentInfo> ring, KeyValueStore store, boolean leaving) {
+		this.target = target;
+		this.ring = ring;
+		this.store = store;
+		this.leaving = leaving;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	ServentInfo getTarget() {
+		return target;
+	}
+
+	boolean isLeaving() {
+		return leaving;
+	}
+
+	boolean isHandedOver() {
+		return phase == Phase.DONE;
+	}
+
+	/**
+	 * @return true if the target owns the key once the range is handed over
+	 */
+	boolean covers(int key) {
+		Map.Entry<Integer, ServentInfo> owner = ring.ceilingEntry(key);
+		if (owner == null) {
+			owner = ring.firstEntry();
+		}
+		return owner != null && target.isSameNode(owner.getValue());
+	}
+
+	/**
+	 * Called for every local write, with the handoff lock held for reading.
+	 */
+	void noteWrite(int key) {
+		if (phase != Phase.DONE && covers(key)) {
+			writtenKeys.add(key);
+		}
+	}
+
+	/**
+	 * Called for every upload stored here, with the handoff lock held for reading.
+	 */
+	void noteFileWrite(String path, int key) {
+		if (phase != Phase.DONE && covers(key)) {
+			writtenFiles.add(path);
+		}
+	}
+
+	/**
+	 * Collects the keys and files to move, sends the first window of chunks and starts on the first file.
+	 */
+	void start() {
+		int[] batch = new int[CHUNK_SIZE];
+		int[] batchSize = {0};
+		synchronized (this) {
+			store.forEach((key, value) -> {
+				if (covers(key)) {
+					batch[batchSize[0]++] = key;
+					if (batchSize[0] == CHUNK_SIZE) {
+						chunks.add(batch.clone());
+						batchSize[0] = 0;
+					}
+				}
+			});
+			if (batchSize[0] > 0) {
+				int[] last = new int[batchSize[0]];
+				System.arraycopy(batch, 0, last, 0, last.length);
+				chunks.add(last);
+			}
+			int files = queueFiles(storedFiles());
+
+			AppConfig.timestampedStandardPrint("Streaming " + chunks.size() + " chunks of keys and " + files + " files to "
+					+ target.getListenerPort() + " (transfer " + id + ")");
+			lastProgress = System.currentTimeMillis();
+			watchdog = ServentExecutors.delayScheduler().scheduleWithFixedDelay(this::checkProgress,
+					RESEND_MILLIS, RESEND_MILLIS, TimeUnit.MILLISECONDS);
+			sendMore();
+			sendNextFile();
+		}
+		advance();
+	}
+
+	/**
+	 * Queues files that are not already waiting. Called with this object's lock held.
+	 *
+	 * @return how many were queued
+	 */
+	private int queueFiles(Iterable<String> paths) {
+		int queued = 0;
+		for (String path : paths) {
+			if (!filesToSend.contains(path)) {
+				filesToSend.add(path);
+				queued++;
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * The files stored in our working directory, subdirectories too, whose keys the target will own.
+	 * Named by their path from the working directory, as they were uploaded.
+	 */
+	private List<String> storedFiles() {
+		List<String> names = new ArrayList<>();
+		Path workingDir = new File(AppConfig.workingDirectory).toPath();
+		if (!Files.isDirectory(workingDir)) {
+			return names;
+		}
+		try (Stream<Path> paths = Files.walk(workingDir)) {
+			paths.filter(Files::isRegularFile).forEach(file -> {
+				Path relative = workingDir.relativize(file);
+				if (relative.startsWith(IncomingFile.DIRECTORY)) {
+					return; // upload koji još nije stigao ceo
+				}
+				String name = relative.toString().replace(File.separatorChar, '/');
+				if (covers(ChordState.keyOf(name))) {
+					names.add(name);
+				}
+			});
+		} catch (IOException | UncheckedIOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't list the files to hand over: " + e.getMessage());
+		}
+		return names;
+	}
+
+	/**
+	 * Starts handing over the next queued file, if none is on its way. Called with this object's lock held.
+	 */
+	private void sendNextFile() {
+		String path;
+		while (fileTransferId == -1 && phase != Phase.DONE && (path = filesToSend.poll()) != null) {
+			File file = new File(AppConfig.workingDirectory, path);
+			String sentPath = path;
+			// -1 ako fajl ne može da se pročita, npr. obrisan je u međuvremenu - idemo na sledeći
+			fileTransferId = AppConfig.fileTransfers.handOver(path, file, target.getListenerPort(),
+					stored -> onFileHandedOver(sentPath, stored));
+		}
+	}
+
+	private void onFileHandedOver(String path, boolean stored) {
+		synchronized (this) {
+			if (phase == Phase.DONE) {
+				return;
+			}
+			fileTransferId = -1;
+			if (stored) {
+				lastProgress = System.currentTimeMillis();
+				sendNextFile();
+			}
+		}
+		if (!stored) {
+			AppConfig.timestampedErrorPrint("Couldn't hand " + path + " over to " + target.getListenerPort());
+			AppConfig.chordState.abortHandoff(this);
+			return;
+		}
+		advance();
+	}
+
+	void onAck(int sequence, boolean stored) {
+		synchronized (this) {
+			if (phase == Phase.DONE || sequence < 0 || sequence >= chunks.size() || acked.get(sequence)) {
+				return;
+			}
+			lastProgress = System.currentTimeMillis();
+			if (!stored) {
+				send(sequence);
+				return;
+			}
+			acked.set(sequence);
+			ackedCount++;
+			inFlight--;
+			sendMore();
+		}
+		advance();
+	}
+
+	/**
+	 * Moves on once everything sent so far is acked and stored. Runs outside this object's lock, since
+	 * {@link ChordState} takes the handoff lock first, like writers do.
+	 */
+	private void advance() {
+		synchronized (this) {
+			if (advancing || phase == Phase.DONE || ackedCount < chunks.size() || fileTransferId != -1
+					|| !filesToSend.isEmpty()) {
+				return;
+			}
+			advancing = true;
+		}
+
+		AppConfig.chordState.advanceHandoff(this);
+		synchronized (this) {
+			advancing = false;
+			sendMore();
+		}
+		advance();
+	}
+
+	/**
+	 * Queues another round with the keys written, and the files stored or changed, since the last one.
+	 * Called with the handoff lock held for writing.
+	 *
+	 * @return false if there is nothing to send, or we have gone round too often - time to hand over
+	 */
+	synchronized boolean queueWrittenKeys() {
+		if (rounds == MAX_CATCH_UP_ROUNDS) {
+			return false;
+		}
+		if (writtenKeys.isEmpty() && writtenFiles.isEmpty()) {
+			return false;
+		}
+		rounds++;
+		int[] keys = drainWrittenKeys();
+		int files = queueFiles(drainWrittenFiles());
+		for (int from = 0; from < keys.length; from += CHUNK_SIZE) {
+			int[] chunk = new int[Math.min(CHUNK_SIZE, keys.length - from)];
+			System.arraycopy(keys, from, chunk, 0, chunk.length);
+			chunks.add(chunk);
+		}
+		AppConfig.timestampedStandardPrint("Sending " + keys.length + " keys and " + files + " files written during transfer "
+				+ id + " again");
+		phase = Phase.CATCHING_UP;
+		sendNextFile();
+		return true;
+	}
+
+	/**
+	 * Ends the transfer. Called with the handoff lock held for writing.
+	 *
+	 * @return keys written in the last round, which the target doesn't have yet (normally none)
+	 */
+	synchronized int[] finish() {
+		phase = Phase.DONE;
+		if (watchdog != null) {
+			watchdog.cancel(false);
+		}
+		if (fileTransferId != -1) {
+			AppConfig.fileTransfers.cancel(fileTransferId);
+			fileTransferId = -1;
+		}
+		return drainWrittenKeys();
+	}
+
+	private int[] drainWrittenKeys() {
+		int[] keys = new int[writtenKeys.size()];
+		int count = 0;
+		for (Integer key : writtenKeys) {
+			if (count == keys.length) {
+				break;
+			}
+			keys[count++] = key;
+			writtenKeys.remove(key);
+		}
+		return count == keys.length ? keys : Arrays.copyOf(keys, count);
+	}
+
+	private List<String> drainWrittenFiles() {
+		List<String> files = new ArrayList<>();
+		for (String path : writtenFiles) {
+			files.add(path);
+			writtenFiles.remove(path);
+		}
+		return files;
+	}
+
+	/**
+	 * Passes a value on to the target after the handover, without waiting for an ack.
+	 * Used when we are leaving, for writes that still reach us.
+	 */
+	void forward(int key, int value) {
+		MessageUtil.sendMessage(new KeyChunkMessage(AppConfig.myServentInfo.getListenerPort(), target.getListenerPort(),
+				id, KeyChunkMessage.UNSEQUENCED, new int[] {key}, new int[] {value}));
+	}
+
+	private void sendMore() {
+		while (inFlight < WINDOW && nextToSend < chunks.size()) {
+			send(nextToSend++);
+			inFlight++;
+		}
+	}
+
+	/**
+	 * Values are read now, not when the transfer started, so a resent chunk carries the latest ones.
+	 */
+	private void send(int sequence) {
+		int[] chunk = chunks.get(sequence);
+		int[] keys = new int[chunk.length];
+		int[] values = new int[chunk.length];
+		int count = 0;
+		for (int key : chunk) {
+			int value = store.get(key, Integer.MIN_VALUE);
+			if (value != Integer.MIN_VALUE || store.containsKey(key)) {
+				keys[count] = key;
+				values[count] = value;
+				count++;
+			}
+		}
+		if (count < keys.length) {
+			keys = Arrays.copyOf(keys, count);
+			values = Arrays.copyOf(values, count);
+		}
+
+		MessageUtil.sendMessage(new KeyChunkMessage(AppConfig.myServentInfo.getListenerPort(),
+				target.getListenerPort(), id, sequence, keys, values));
+	}
+
+	private void checkProgress() {
+		if (phase == Phase.DONE) {
+			return;
+		}
+		long silence = System.currentTimeMillis() - lastProgress;
+		// fajl koji se šalje ima svoj watchdog, i javiće ako stane
+		if (silence > TIMEOUT_MILLIS && fileTransferId == -1) {
+			AppConfig.chordState.abortHandoff(this);
+		} else if (silence >= RESEND_MILLIS) {
+			resendUnacked();
+		}
+	}
+
+	private synchronized void resendUnacked() {
+		for (int sequence = acked.nextClearBit(0); sequence < nextToSend; sequence = acked.nextClearBit(sequence + 1)) {
+			send(sequence);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package app;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import servent.message.MessageLane;
+
+/**
+ * Runs tasks on a delegate executor, at most <code>concurrency</code> at a time, taking them from
+ * per-lane queues in strict priority order. A waiting {@link MessageLane#CONTROL} task always starts
+ * before any waiting {@link MessageLane#DATA} task; within a lane, tasks start in the order they came.
+ * One slot is kept for CONTROL: DATA tasks never run more than <code>concurrency - 1</code> at a time
+ * (so it takes a concurrency of at least 2),
+ * so slow handlers of a burst of file chunks can't take every slot while a token or a lock waits.
+ *
+ * Because the concurrency is capped here and not by the delegate, this works the same on top of a
+ * bounded platform pool and on top of virtual threads.
+ */
+public class LaneExecutor {
+
+	private static final MessageLane[] LANES = MessageLane.values();
+
+	private static class LaneTask implements Comparable<LaneTask> {
+		private final MessageLane lane;
+		private final long sequence;
+		private final Runnable task;
+
+		LaneTask(MessageLane lane, long sequence, Runnable task) {
+			this.lane = lane;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(LaneTask other) {
+			if (lane != other.lane) {
+				return lane.compareTo(other.lane);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	private final String name;
+	private final Executor delegate;
+	private final int concurrency;
+	// koliko DATA zadataka sme da radi odjednom, jedan slot ostaje za CONTROL
+	private final int dataConcurrency;
+
+	private final PriorityBlockingQueue<LaneTask> queue = new PriorityBlockingQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger runningData = new AtomicInteger();
+
+	private final AtomicInteger[] depth = new AtomicInteger[LANES.length];
+	private final AtomicInteger[] maxDepth = new AtomicInteger[LANES.length];
+	private final AtomicLong[] executed = new AtomicLong[LANES.length];
+
+	public LaneExecutor(String name, Executor delegate, int concurrency) {
+		this.name = name;
+		this.delegate = delegate;
+		this.concurrency = concurrency;
+		this.dataConcurrency = Math.max(1, concurrency - 1);
+		for (int i = 0; i < LANES.length; i++) {
+			depth[i] = new AtomicInteger();
+			maxDepth[i] = new AtomicInteger();
+			executed[i] = new AtomicLong();
+		}
+	}
+
+	public void execute(MessageLane lane, Runnable task) {
+		int currentDepth = depth[lane.ordinal()].incrementAndGet();
+		maxDepth[lane.ordinal()].accumulateAndGet(currentDepth, Math::max);
+		queue.add(new LaneTask(lane, sequence.getAndIncrement(), task));
+		startNext();
+	}
+
+	/**
+	 * @return a plain executor that puts everything into the given lane
+	 */
+	public Executor forLane(MessageLane lane) {
+		return task -> execute(lane, task);
+	}
+
+	/**
+	 * Starts queued tasks while there are free slots for them. Every task that is queued, and every task
+	 * that ends, calls this, so a task that can't start now is started by whichever comes next.
+	 */
+	private void startNext() {
+		while (true) {
+			LaneTask next = takeStartable();
+			if (next == null) {
+				return;
+			}
+
+			depth[next.lane.ordinal()].decrementAndGet();
+			delegate.execute(() -> {
+				try {
+					next.task.run();
+				} catch (RuntimeException e) {
+					AppConfig.timestampedErrorPrint("Error in " + name + " task: " + e);
+					e.printStackTrace();
+				} finally {
+					executed[next.lane.ordinal()].incrementAndGet();
+					synchronized (this) {
+						running.decrementAndGet();
+						if (next.lane != MessageLane.CONTROL) {
+							runningData.decrementAndGet();
+						}
+					}
+					startNext();
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the next task, with its slot taken, or null if nothing can start now
+	 */
+	private synchronized LaneTask takeStartable() {
+		if (running.get() >= concurrency) {
+			return null;
+		}
+		LaneTask head = queue.peek();
+		if (head == null || (head.lane != MessageLane.CONTROL && runningData.get() >= dataConcurrency)) {
+			return null;
+		}
+		// a CONTROL task queued since the peek comes out first, and can always take a free slot
+		LaneTask next = queue.poll();
+		running.incrementAndGet();
+		if (next.lane != MessageLane.CONTROL) {
+			runningData.incrementAndGet();
+		}
+		return next;
+	}
+
+	/**
+	 * @return true if anything is queued or running
+	 */
+	public boolean isBusy() {
+		return running.get() > 0 || !queue.isEmpty();
+	}
+
+	public int getQueueDepth(MessageLane lane) {
+		return depth[lane.ordinal()].get();
+	}
+
+	public int getMaxQueueDepth(MessageLane lane) {
+		return maxDepth[lane.ordinal()].get();
+	}
+
+	public long getExecutedCount(MessageLane lane) {
+		return executed[lane.ordinal()].get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append(": running=").append(running.get());
+		for (MessageLane lane : LANES) {
+			sb.append(", ").append(lane).append("[queued=").append(getQueueDepth(lane))
+					.append(", max queued=").append(getMaxQueueDepth(lane))
+					.append(", done=").append(getExecutedCount(lane)).append("]");
+		}
+		return sb.toString();
+	}
+}
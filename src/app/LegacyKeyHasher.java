@@ -0,0 +1,31 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * The hash this project started with: <code>61 * value</code>, with node ids taken from the
+ * listener port and keys from {@link String#hashCode()}. Kept as the default so existing
+ * setups (and the collision test in <code>servent_list.properties</code>) behave the same.
+ */
+public class LegacyKeyHasher implements KeyHasher {
+
+	@Override
+	public long hash(byte[] data) {
+		return 61 * Arrays.hashCode(data);
+	}
+
+	@Override
+	public long hashNode(String ipAddress, int port) {
+		return 61 * port;
+	}
+
+	@Override
+	public long hashKey(String key) {
+		return 61 * key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "legacy";
+	}
+}
@@ -0,0 +1,194 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Offline count of the hops a lookup takes. All servents share one ring, each with its own finger tables,
+ * and a lookup for a key starts at a random servent and hops the way {@link ChordState#getNextNodeForKey}
+ * routes, until it reaches a servent that owns the key. For comparison, the hops it would take going from
+ * successor to successor, as lookups did before finger tables.
+ *
+ * Usage: <code>java app.LookupBenchmark [chord_size] [lookups] [vnode_weight] [servent_count...]</code>
+ * <br>
+ * With no counts given, it runs 8 to 4096 servents. Nodes and keys are placed the way
+ * {@link KeyDistributionReport} places them, with the sha1 key hasher.
+ */
+public class LookupBenchmark {
+
+	/**
+	 * A servent's routing state: its ids and, for each id, the ring id every finger lands on,
+	 * or -1 where a finger lands on the servent itself - like in {@link ChordState}.
+	 */
+	private static final class Node {
+		final ServentInfo info;
+		final int[] ids;
+		final int[][] fingers;
+
+		Node(ServentInfo info, int[] ids, int[][] fingers) {
+			this.info = info;
+			this.ids = ids;
+			this.fingers = fingers;
+		}
+	}
+
+	public static void main(String[] args) {
+		int chordSize = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int weight = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		List<Integer> counts = new ArrayList<>();
+		for (int i = 3; i < args.length; i++) {
+			counts.add(Integer.parseInt(args[i]));
+		}
+		if (counts.isEmpty()) {
+			counts.addAll(Arrays.asList(8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096));
+		}
+
+		ChordState.CHORD_SIZE = chordSize;
+		ChordState.setKeyHasher(KeyHasher.forName("sha1"));
+		System.out.println("chord_size=" + chordSize + ", lookups=" + lookups + ", vnode_weight=" + weight);
+		System.out.printf("%9s %8s %9s %9s %7s %15s %14s%n", "servents", "joined", "hops avg", "hops max", "log2 N",
+				"successor avg", "wrong owner");
+		for (int count : counts) {
+			run(count, lookups, weight);
+		}
+	}
+
+	private static void run(int serventCount, int lookups, int weight) {
+		Map<Integer, Integer> weightsByPort = new HashMap<>();
+		for (int i = 0; i < serventCount; i++) {
+			weightsByPort.put(1100 + i * 100, weight);
+		}
+		ChordState.setVirtualNodeWeights(weightsByPort);
+
+		// servent čiji je id zauzet dobije SORRY i ne uđe u ring
+		TreeMap<Integer, ServentInfo> joined = new TreeMap<>();
+		for (int i = 0; i < serventCount; i++) {
+			ServentInfo servent = new ServentInfo("localhost", 1100 + i * 100);
+			joined.putIfAbsent(servent.getChordId(), servent);
+		}
+		List<ServentInfo> servents = new ArrayList<>(joined.values());
+		if (servents.size() < 2) {
+			System.out.printf("%9d too few servents joined%n", serventCount);
+			return;
+		}
+
+		// jedan ring za sve, kao ringIndex koji bi svaki servent imao
+		TreeMap<Integer, ServentInfo> ring = new TreeMap<>();
+		for (ServentInfo servent : servents) {
+			ChordState.claimAll(ring, servent);
+		}
+		int chordLevel = Integer.numberOfTrailingZeros(ChordState.CHORD_SIZE);
+		Map<Integer, Node> nodes = new HashMap<>();
+		for (ServentInfo servent : servents) {
+			int[] ids = servent.getVirtualIds();
+			int[][] fingers = new int[ids.length][chordLevel];
+			for (int v = 0; v < ids.length; v++) {
+				for (int i = 0; i < chordLevel; i++) {
+					Map.Entry<Integer, ServentInfo> owner = ownerEntry(ring, (int) ((ids[v] + (1L << i)) % ChordState.CHORD_SIZE));
+					fingers[v][i] = owner.getValue().isSameNode(servent) ? -1 : owner.getKey();
+				}
+			}
+			nodes.put(servent.getListenerPort(), new Node(servent, ids, fingers));
+		}
+
+		Random random = new Random(serventCount);
+		long totalHops = 0;
+		int maxHops = 0;
+		long totalSuccessorHops = 0;
+		int wrongOwners = 0;
+		for (int i = 0; i < lookups; i++) {
+			int key = ChordState.keyOf("file" + i + ".txt");
+			ServentInfo start = servents.get(random.nextInt(servents.size()));
+			ServentInfo current = start;
+			int hops = 0;
+			while (hops <= servents.size()) {
+				ServentInfo next = nextNodeForKey(nodes.get(current.getListenerPort()), ring, joined, key);
+				if (next.isSameNode(current)) {
+					break;
+				}
+				current = next;
+				hops++;
+			}
+			if (!current.isSameNode(ownerEntry(ring, key).getValue())) {
+				wrongOwners++;
+			}
+			totalHops += hops;
+			maxHops = Math.max(maxHops, hops);
+			totalSuccessorHops += successorHops(ring, start, key);
+		}
+
+		System.out.printf("%9d %8d %9.2f %9d %7.1f %15.2f %14d%n", serventCount, servents.size(), (double) totalHops / lookups,
+				maxHops, Math.log(servents.size()) / Math.log(2), (double) totalSuccessorHops / lookups, wrongOwners);
+	}
+
+	/**
+	 * The routing of {@link ChordState#getNextNodeForKey} with every servent alive, over the shared ring.
+	 */
+	private static ServentInfo nextNodeForKey(Node node, TreeMap<Integer, ServentInfo> ring,
+											  TreeMap<Integer, ServentInfo> mainIds, int key) {
+		ServentInfo me = node.info;
+		if (ownerEntry(ring, key).getValue().isSameNode(me)) {
+			return me;
+		}
+
+		int closest = 0;
+		for (int i = 1; i < node.ids.length; i++) {
+			if (Math.floorMod(key - node.ids[i], ChordState.CHORD_SIZE) < Math.floorMod(key - node.ids[closest], ChordState.CHORD_SIZE)) {
+				closest = i;
+			}
+		}
+		int fromId = node.ids[closest];
+
+		Map.Entry<Integer, ServentInfo> next = ring.higherEntry(fromId);
+		if (next == null) {
+			next = ring.firstEntry();
+		}
+		if (!next.getValue().isSameNode(me) && ChordState.isInHalfOpenInterval(key, fromId, next.getKey())) {
+			return next.getValue();
+		}
+
+		int[] fingers = node.fingers[closest];
+		for (int i = fingers.length - 1; i >= 0; i--) {
+			if (fingers[i] != -1 && ChordState.isInOpenInterval(fingers[i], fromId, key)) {
+				return ring.get(fingers[i]);
+			}
+		}
+
+		// successor ide po glavnim id-evima
+		Map.Entry<Integer, ServentInfo> successor = mainIds.higherEntry(me.getChordId());
+		return (successor == null ? mainIds.firstEntry() : successor).getValue();
+	}
+
+	private static Map.Entry<Integer, ServentInfo> ownerEntry(TreeMap<Integer, ServentInfo> ring, int id) {
+		Map.Entry<Integer, ServentInfo> owner = ring.ceilingEntry(id);
+		return owner == null ? ring.firstEntry() : owner;
+	}
+
+	/**
+	 * Hops from the servent to the key's owner going round the ring from its main id, one servent at a time.
+	 */
+	private static int successorHops(TreeMap<Integer, ServentInfo> ring, ServentInfo from, int key) {
+		ServentInfo owner = ownerEntry(ring, key).getValue();
+		ServentInfo current = from;
+		int id = from.getChordId();
+		int hops = 0;
+		while (!current.isSameNode(owner)) {
+			Map.Entry<Integer, ServentInfo> next = ring.higherEntry(id);
+			if (next == null) {
+				next = ring.firstEntry();
+			}
+			id = next.getKey();
+			if (!next.getValue().isSameNode(current)) {
+				current = next.getValue();
+				hops++;
+			}
+		}
+		return hops;
+	}
+}
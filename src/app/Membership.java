@@ -0,0 +1,293 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import servent.message.GossipMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * Spreads joins, leaves and failures by gossip, SWIM style, instead of walking an UPDATE around
+ * the whole ring. Every servent keeps a record for each servent it knows: alive, left or failed,
+ * with an incarnation number that only the servent itself ever raises.
+ *
+ * A change is "hot" for about 3 log2(N) sends. Every round we send the hot records to
+ * <code>fanout</code> random live servents, which take in what is new to them and pass it on
+ * the same way, so a change reaches everyone in O(log N) rounds. A round with nothing hot sends
+ * nothing, except that every {@link #ANTI_ENTROPY_ROUNDS}th round one random servent gets
+ * all our records, to fix whatever gossip missed.
+ *
+ * Records are merged like this: a higher incarnation wins, and with the same incarnation left
+ * beats failed, which beats alive. A servent that hears it failed (it was just slow) raises its
+ * incarnation, and the new record wins everywhere. A servent started again on the same port takes the
+ * current time as its first incarnation, which beats anything the old one ever sent.
+ *
+ * What changes is fed into {@link ChordState} as it comes - a join is one insert into the ring index,
+ * and a leave one removal.
+ */
+class Membership {
+
+	static final long DEFAULT_INTERVAL_MILLIS = 1000;
+	static final int DEFAULT_FANOUT = 2;
+
+	private static final int ANTI_ENTROPY_ROUNDS = 10;
+	private static final int RETRANSMIT_MULTIPLIER = 3;
+
+	enum State {
+		ALIVE, FAILED, LEFT;
+
+		private static final State[] VALUES = values();
+
+		/**
+		 * @return null for an ordinal no state has
+		 */
+		static State of(int ordinal) {
+			return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+		}
+	}
+
+	private static final class Record {
+		final int port;
+		final State state;
+		final long incarnation;
+
+		Record(int port, State state, long incarnation) {
+			this.port = port;
+			this.state = state;
+			this.incarnation = incarnation;
+		}
+
+		boolean supersedes(Record other) {
+			return other == null || incarnation > other.incarnation
+					|| (incarnation == other.incarnation && state.ordinal() > other.state.ordinal());
+		}
+	}
+
+	private final ChordState chordState;
+	private long interval = DEFAULT_INTERVAL_MILLIS;
+	private int fanout = DEFAULT_FANOUT;
+
+	private final Map<Integer, Record> records = new HashMap<>();
+	// port -> koliko puta još šaljemo taj zapis
+	private final Map<Integer, Integer> hot = new HashMap<>();
+	private long rounds;
+	private boolean running;
+	private ScheduledFuture<?> nextRound;
+
+	Membership(ChordState chordState) {
+		this.chordState = chordState;
+	}
+
+	synchronized void configure(long interval, int fanout) {
+		this.interval = interval;
+		this.fanout = fanout;
+	}
+
+	/**
+	 * We are in the ring: tells everyone, and starts gossiping.
+	 */
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		Record mine = records.get(myPort);
+		long incarnation = Math.max(System.currentTimeMillis(), mine == null ? 0 : mine.incarnation + 1);
+		update(new Record(myPort, State.ALIVE, incarnation));
+		nextRound = ServentExecutors.delayScheduler().scheduleWithFixedDelay(this::round, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		running = false;
+		if (nextRound != null) {
+			nextRound.cancel(false);
+		}
+	}
+
+	/**
+	 * Marks us as left and sends that to <code>fanout</code> servents right away, since we won't be there
+	 * for another round. They pass it on.
+	 */
+	void leave() {
+		List<GossipMessage> messages = new ArrayList<>();
+		synchronized (this) {
+			Record mine = records.get(AppConfig.myServentInfo.getListenerPort());
+			if (mine == null) {
+				return;
+			}
+			update(new Record(mine.port, State.LEFT, mine.incarnation));
+			for (int target : randomAlive(fanout)) {
+				messages.add(hotMessage(target));
+			}
+		}
+		for (GossipMessage message : messages) {
+			MessageUtil.sendMessage(message);
+		}
+	}
+
+	void markFailed(ServentInfo node) {
+		markGone(node, State.FAILED);
+	}
+
+	void markLeft(ServentInfo node) {
+		markGone(node, State.LEFT);
+	}
+
+	private synchronized void markGone(ServentInfo node, State state) {
+		Record known = records.get(node.getListenerPort());
+		if (known != null && known.state == State.ALIVE && !AppConfig.myServentInfo.isSameNode(node)) {
+			update(new Record(known.port, state, known.incarnation));
+		}
+	}
+
+	/**
+	 * Sends every record we have. Used for a servent that just joined through us, and for anti-entropy.
+	 */
+	void sendAll(ServentInfo node) {
+		GossipMessage message;
+		synchronized (this) {
+			message = toMessage(node.getListenerPort(), new ArrayList<>(records.values()));
+		}
+		MessageUtil.sendMessage(message);
+	}
+
+	/**
+	 * Takes in records from another servent. Those that are new to us go into {@link ChordState},
+	 * and we pass them on.
+	 */
+	void merge(int[] ports, byte[] states, long[] incarnations) {
+		List<ServentInfo> joined = new ArrayList<>();
+		List<ServentInfo> gone = new ArrayList<>();
+		synchronized (this) {
+			int myPort = AppConfig.myServentInfo.getListenerPort();
+			for (int i = 0; i < ports.length; i++) {
+				State state = State.of(states[i]);
+				if (state == null) {
+					AppConfig.timestampedErrorPrint("Gossip about " + ports[i] + " has an unknown state " + states[i] + ", skipping it");
+					continue;
+				}
+				Record heard = new Record(ports[i], state, incarnations[i]);
+				Record known = records.get(heard.port);
+				if (heard.port == myPort) {
+					if (running && heard.state != State.ALIVE && known != null && known.state == State.ALIVE
+							&& heard.incarnation >= known.incarnation) {
+						AppConfig.timestampedStandardPrint("Gossip says we " + heard.state.name().toLowerCase()
+								+ ", telling everyone we are still here");
+						update(new Record(myPort, State.ALIVE, heard.incarnation + 1));
+					}
+					continue;
+				}
+				if (!heard.supersedes(known)) {
+					continue;
+				}
+				update(heard);
+
+				boolean wasAlive = known != null && known.state == State.ALIVE;
+				ServentInfo node = new ServentInfo("localhost", heard.port);
+				if (heard.state == State.ALIVE && !wasAlive) {
+					joined.add(node);
+				} else if (heard.state != State.ALIVE && wasAlive) {
+					gone.add(node);
+				}
+			}
+		}
+
+		if (!joined.isEmpty()) {
+			AppConfig.timestampedStandardPrint("Gossip: " + joined + " joined");
+			chordState.addNodes(joined);
+		}
+		for (ServentInfo node : gone) {
+			AppConfig.timestampedStandardPrint("Gossip: " + node + " is gone");
+			chordState.removeNode(node);
+		}
+	}
+
+	/**
+	 * Stores the record and makes it hot. Called with our lock held.
+	 */
+	private void update(Record record) {
+		records.put(record.port, record);
+		int alive = 0;
+		for (Record r : records.values()) {
+			if (r.state == State.ALIVE) {
+				alive++;
+			}
+		}
+		hot.put(record.port, RETRANSMIT_MULTIPLIER * (32 - Integer.numberOfLeadingZeros(alive + 1)));
+	}
+
+	private void round() {
+		List<GossipMessage> messages = new ArrayList<>();
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			rounds++;
+			if (!hot.isEmpty()) {
+				for (int target : randomAlive(fanout)) {
+					messages.add(hotMessage(target));
+				}
+			} else if (rounds % ANTI_ENTROPY_ROUNDS == 0) {
+				for (int target : randomAlive(1)) {
+					messages.add(toMessage(target, new ArrayList<>(records.values())));
+				}
+			}
+		}
+		for (GossipMessage message : messages) {
+			MessageUtil.sendMessage(message);
+		}
+	}
+
+	/**
+	 * A message with all hot records, each of which then has one send less to go. Called with our lock held.
+	 */
+	private GossipMessage hotMessage(int target) {
+		List<Record> payload = new ArrayList<>();
+		for (Iterator<Map.Entry<Integer, Integer>> it = hot.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Integer, Integer> entry = it.next();
+			payload.add(records.get(entry.getKey()));
+			if (entry.getValue() <= 1) {
+				it.remove();
+			} else {
+				entry.setValue(entry.getValue() - 1);
+			}
+		}
+		return toMessage(target, payload);
+	}
+
+	private static GossipMessage toMessage(int target, List<Record> payload) {
+		int[] ports = new int[payload.size()];
+		byte[] states = new byte[payload.size()];
+		long[] incarnations = new long[payload.size()];
+		for (int i = 0; i < ports.length; i++) {
+			Record record = payload.get(i);
+			ports[i] = record.port;
+			states[i] = (byte) record.state.ordinal();
+			incarnations[i] = record.incarnation;
+		}
+		return new GossipMessage(AppConfig.myServentInfo.getListenerPort(), target, ports, states, incarnations);
+	}
+
+	/**
+	 * @return up to <code>count</code> random ports of live servents other than us. Called with our lock held.
+	 */
+	private List<Integer> randomAlive(int count) {
+		List<Integer> candidates = new ArrayList<>();
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		for (Record record : records.values()) {
+			if (record.state == State.ALIVE && record.port != myPort) {
+				candidates.add(record.port);
+			}
+		}
+		Collections.shuffle(candidates, ThreadLocalRandom.current());
+		return candidates.subList(0, Math.min(count, candidates.size()));
+	}
+}
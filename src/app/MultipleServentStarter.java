@@ -75,7 +75,7 @@ public class MultipleServentStarter {
 		List<Process> serventProcesses = new ArrayList<>();
 
 		// Read config once to get SERVENT_COUNT and BOOTSTRAP_PORT for the BootstrapServer process
-		// AppConfig.myServentId will be 0 here, but it's mainly for BS_PORT and SERVENT_COUNT at this stage.
+		// It is read as servent 0, but only BS_PORT and SERVENT_COUNT are needed at this stage.
 		AppConfig.readConfig(testName + "/servent_list.properties", 0);
 
 		AppConfig.timestampedStandardPrint("Starting multiple servent runner. "
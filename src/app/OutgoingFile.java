@@ -0,0 +1,197 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import servent.message.FileChunkMessage;
+import servent.message.UploadMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * One of our uploads, or a file we hand over. Chunks are read from the file when they go out, and again
+ * if one has to be resent, so only the chunks of the current window are ever in memory. See {@link FileTransfers}.
+ */
+class OutgoingFile {
+
+	static final int WINDOW = 8;
+
+	/**
+	 * Chunks still not acked after this long without any ack are sent again.
+	 */
+	private static final long RESEND_MILLIS = 5_000;
+
+	/**
+	 * An upload that gets no ack (or no READY) for this long is given up.
+	 */
+	private static final long TIMEOUT_MILLIS = 30_000;
+
+	private final int id;
+	private final String path;
+	// čvor koji preuzima fajl kad se njegov opseg seli, -1 za upload
+	private final int handoffTarget;
+	private final Consumer<Boolean> whenHandedOver;
+	private final FileChannel channel;
+	private final long size;
+	private final int chunkCount;
+
+	// port čvora koji čuva fajl, kad javi READY
+	private int target = -1;
+	private final BitSet acked = new BitSet();
+	private int nextToSend;
+	private int inFlight;
+	private boolean closed;
+
+	private volatile long lastProgress;
+	private long lastRenewal;
+	private ScheduledFuture<?> watchdog;
+
+	OutgoingFile(int id, String path, File file) throws IOException {
+		this(id, path, file, -1, null);
+	}
+
+	/**
+	 * A handoff of a file to <code>handoffTarget</code>. <code>whenHandedOver</code> gets whether it was stored there.
+	 */
+	OutgoingFile(int id, String path, File file, int handoffTarget, Consumer<Boolean> whenHandedOver) throws IOException {
+		this.id = id;
+		this.path = path;
+		this.handoffTarget = handoffTarget;
+		this.whenHandedOver = whenHandedOver;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.size = channel.size();
+		this.chunkCount = (int) ((size + FileTransfers.CHUNK_SIZE - 1) / FileTransfers.CHUNK_SIZE);
+	}
+
+	int getId() {
+		return id;
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	boolean isHandoff() {
+		return handoffTarget != -1;
+	}
+
+	/**
+	 * Called once the transfer ended, with whether the file was stored. Runs outside our lock.
+	 */
+	void handedOver(boolean stored) {
+		whenHandedOver.accept(stored);
+	}
+
+	/**
+	 * Sends the request towards the node that stores the file, or straight to the node we hand it over to.
+	 * Chunks wait for its READY.
+	 */
+	synchronized void start() {
+		lastProgress = System.currentTimeMillis();
+		lastRenewal = lastProgress;
+		watchdog = ServentExecutors.delayScheduler().scheduleWithFixedDelay(this::checkProgress,
+				RESEND_MILLIS, RESEND_MILLIS, TimeUnit.MILLISECONDS);
+		// sami u ringu, ili tek predajemo opseg i naslednik još nije postavljen - onda ide nama
+		int firstHop = isHandoff() ? handoffTarget
+				: AppConfig.chordState.getNextNodeForKey(ChordState.keyOf(path)).getListenerPort();
+		MessageUtil.sendMessage(new UploadMessage(AppConfig.myServentInfo.getListenerPort(),
+				firstHop, id, path, size, isHandoff()));
+		AppConfig.timestampedStandardPrint("Sent " + (isHandoff() ? "handoff" : "upload") + " request for " + path + " (" + size + " bytes, "
+				+ chunkCount + " chunks, transfer " + id + ")");
+	}
+
+	synchronized void onReady(int ownerPort) {
+		if (closed || target != -1) {
+			return;
+		}
+		target = ownerPort;
+		lastProgress = System.currentTimeMillis();
+		AppConfig.timestampedStandardPrint("Streaming " + path + " to " + ownerPort);
+		sendMore();
+	}
+
+	synchronized void onAck(int sequence, boolean stored) {
+		if (closed || sequence < 0 || sequence >= nextToSend || acked.get(sequence)) {
+			return;
+		}
+		lastProgress = System.currentTimeMillis();
+		if (!stored) {
+			send(sequence);
+			return;
+		}
+		acked.set(sequence);
+		inFlight--;
+		sendMore();
+	}
+
+	private void sendMore() {
+		while (inFlight < WINDOW && nextToSend < chunkCount) {
+			send(nextToSend++);
+			inFlight++;
+		}
+	}
+
+	private void send(int sequence) {
+		long offset = (long) sequence * FileTransfers.CHUNK_SIZE;
+		ByteBuffer data = ByteBuffer.allocate((int) Math.min(FileTransfers.CHUNK_SIZE, size - offset));
+		try {
+			while (data.hasRemaining()) {
+				if (channel.read(data, offset + data.position()) < 0) {
+					throw new IOException("the file got shorter while uploading");
+				}
+			}
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't read chunk " + sequence + " of " + path + ": " + e.getMessage());
+			// watchdog će pokušati ponovo, pa odustati
+			return;
+		}
+		MessageUtil.sendMessage(new FileChunkMessage(AppConfig.myServentInfo.getListenerPort(), target,
+				id, sequence, data.array()));
+	}
+
+	/**
+	 * Runs every {@link #RESEND_MILLIS}. While chunks keep being acked, the lease on the file's lock is
+	 * renewed, so an upload that takes longer than a lease keeps its lock for as long as it moves.
+	 * A handoff holds no lock.
+	 */
+	private void checkProgress() {
+		long progress = lastProgress;
+		long silence = System.currentTimeMillis() - progress;
+		if (silence > TIMEOUT_MILLIS) {
+			AppConfig.fileTransfers.abandon(this);
+			return;
+		}
+		if (silence >= RESEND_MILLIS) {
+			resendUnacked();
+		}
+		if (!isHandoff() && progress > lastRenewal) {
+			lastRenewal = progress;
+			AppConfig.fileLocks.renew(path);
+		}
+	}
+
+	private synchronized void resendUnacked() {
+		if (closed || target == -1) {
+			return;
+		}
+		for (int sequence = acked.nextClearBit(0); sequence < nextToSend; sequence = acked.nextClearBit(sequence + 1)) {
+			send(sequence);
+		}
+	}
+
+	synchronized void close() {
+		closed = true;
+		if (watchdog != null) {
+			watchdog.cancel(false);
+		}
+		try {
+			channel.close();
+		} catch (IOException ignored) { }
+	}
+}
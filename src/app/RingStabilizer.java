@@ -0,0 +1,234 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import servent.message.NotifyMessage;
+import servent.message.StabilizeMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * Repairs the ring when servents crash, the way Chord does it. Every round we:
+ * <ul>
+ * <li>stabilize - ask our successor for its predecessor and successor list. If its predecessor
+ * sits between us, that is our new successor. Otherwise we keep its list as ours, and notify it
+ * about us if it doesn't know us as its predecessor yet.</li>
+ * <li>check_predecessor - ask our predecessor the same, only to see it answer.</li>
+ * <li>fix_fingers - ask one of the nodes in our finger tables, a different one each round.</li>
+ * </ul>
+ * A node that doesn't answer within the timeout is taken out of the ring, and the next live node
+ * in our successor list takes over from it, see {@link ChordState#removeFailedNode(ServentInfo, List)}.
+ *
+ * Rounds come every <code>minInterval</code> while the ring is changing, and each quiet round doubles
+ * the wait, up to <code>maxInterval</code>. A stable ring costs a few messages every few seconds,
+ * and one that just lost a node is probed often until it is whole again.
+ */
+class RingStabilizer {
+
+	static final int DEFAULT_SUCCESSOR_LIST_SIZE = 3;
+	static final long DEFAULT_MIN_INTERVAL_MILLIS = 500;
+	static final long DEFAULT_MAX_INTERVAL_MILLIS = 4000;
+	static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+	private final ChordState chordState;
+
+	private int successorListSize = DEFAULT_SUCCESSOR_LIST_SIZE;
+	private long minInterval = DEFAULT_MIN_INTERVAL_MILLIS;
+	private long maxInterval = DEFAULT_MAX_INTERVAL_MILLIS;
+	private long timeout = DEFAULT_TIMEOUT_MILLIS;
+
+	private volatile List<ServentInfo> successorList = Collections.emptyList();
+
+	// port -> kada smo poslali STABILIZE na koji još čekamo odgovor
+	private final Map<Integer, Long> pendingProbes = new HashMap<>();
+	private boolean running;
+	private long interval;
+	private volatile boolean churn;
+	private long nextRoundAt;
+	private ScheduledFuture<?> nextRound;
+	private int nextFinger;
+
+	RingStabilizer(ChordState chordState) {
+		this.chordState = chordState;
+	}
+
+	synchronized void configure(int successorListSize, long minInterval, long maxInterval, long timeout) {
+		this.successorListSize = successorListSize;
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.timeout = timeout;
+	}
+
+	int getSuccessorListSize() {
+		return successorListSize;
+	}
+
+	/**
+	 * @return the nodes after us, nearest first, as our successor last told us
+	 */
+	List<ServentInfo> getSuccessorList() {
+		return successorList;
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		interval = minInterval;
+		schedule(minInterval);
+	}
+
+	synchronized void stop() {
+		running = false;
+		if (nextRound != null) {
+			nextRound.cancel(false);
+		}
+	}
+
+	/**
+	 * The ring changed (a node came, left or failed), so the next round comes after
+	 * <code>minInterval</code>, not after however long the ring was quiet before.
+	 */
+	void noteChurn() {
+		churn = true;
+		synchronized (this) {
+			interval = minInterval;
+			if (running && nextRoundAt - System.currentTimeMillis() > minInterval) {
+				nextRound.cancel(false);
+				schedule(minInterval);
+			}
+		}
+	}
+
+	private void schedule(long delay) {
+		nextRoundAt = System.currentTimeMillis() + delay;
+		nextRound = ServentExecutors.delayScheduler().schedule(this::round, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs on the delay scheduler. Talks to {@link ChordState} before taking our own lock, never while holding it,
+	 * since {@link ChordState} calls {@link #noteChurn()} with its lock held.
+	 */
+	private void round() {
+		ServentInfo successor = chordState.getSuccessor();
+		ServentInfo predecessor = chordState.getPredecessor();
+		List<ServentInfo> fingerNodes = chordState.getFingerNodes();
+
+		if (successor != null) {
+			probe(successor);
+		}
+		if (predecessor != null && !predecessor.isSameNode(successor)) {
+			probe(predecessor);
+		}
+		fingerNodes.removeIf(node -> node.isSameNode(successor) || node.isSameNode(predecessor));
+		if (!fingerNodes.isEmpty()) {
+			int next;
+			synchronized (this) {
+				next = nextFinger++ % fingerNodes.size();
+			}
+			probe(fingerNodes.get(next));
+		}
+
+		boolean changed = churn;
+		churn = false;
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			interval = changed ? minInterval : Math.min(maxInterval, interval * 2);
+			schedule(interval);
+		}
+	}
+
+	private void probe(ServentInfo node) {
+		long sentAt = System.currentTimeMillis();
+		synchronized (this) {
+			if (pendingProbes.putIfAbsent(node.getListenerPort(), sentAt) != null) {
+				return;
+			}
+		}
+		MessageUtil.sendMessage(new StabilizeMessage(AppConfig.myServentInfo.getListenerPort(), node.getListenerPort()));
+		ServentExecutors.delayScheduler().schedule(() -> checkAnswered(node, sentAt), timeout, TimeUnit.MILLISECONDS);
+	}
+
+	private void checkAnswered(ServentInfo node, long sentAt) {
+		List<ServentInfo> fallback;
+		synchronized (this) {
+			if (!running || !pendingProbes.remove(node.getListenerPort(), sentAt)) {
+				return;
+			}
+			fallback = nodesAfter(node);
+		}
+		AppConfig.timestampedErrorPrint(node.getListenerPort() + " didn't answer for " + timeout + " ms, taking it out of the ring");
+		chordState.removeFailedNode(node, fallback);
+		noteChurn();
+	}
+
+	/**
+	 * @return the nodes after the given one in our successor list, or the whole list if it is not in it
+	 */
+	private List<ServentInfo> nodesAfter(ServentInfo node) {
+		List<ServentInfo> list = successorList;
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i).isSameNode(node)) {
+				return new ArrayList<>(list.subList(i + 1, list.size()));
+			}
+		}
+		return new ArrayList<>(list);
+	}
+
+	void onReply(ServentInfo from, int predecessorPort, int[] successorPorts) {
+		synchronized (this) {
+			pendingProbes.remove(from.getListenerPort());
+		}
+
+		ServentInfo successor = chordState.getSuccessor();
+		if (!from.isSameNode(successor)) {
+			return; // check_predecessor ili fix_fingers - bilo je dovoljno da odgovori
+		}
+
+		ServentInfo me = AppConfig.myServentInfo;
+		ServentInfo between = predecessorPort < 0 ? null : new ServentInfo("localhost", predecessorPort);
+		if (between != null && !me.isSameNode(between) && !chordState.isRecentlyGone(between)
+				&& ChordState.isInOpenInterval(between.getChordId(), me.getChordId(), successor.getChordId())) {
+			AppConfig.timestampedStandardPrint("Found a node between us and our successor: " + between.getListenerPort());
+			chordState.addNodes(Collections.singletonList(between));
+			noteChurn();
+			return;
+		}
+
+		List<ServentInfo> list = new ArrayList<>();
+		list.add(successor);
+		for (int port : successorPorts) {
+			if (list.size() == successorListSize || port == me.getListenerPort()) {
+				break;
+			}
+			list.add(new ServentInfo("localhost", port));
+		}
+		if (!samePorts(list, successorList)) {
+			successorList = Collections.unmodifiableList(list);
+		}
+
+		if (between == null || !me.isSameNode(between)) {
+			MessageUtil.sendMessage(new NotifyMessage(me.getListenerPort(), successor.getListenerPort()));
+		}
+	}
+
+	private static boolean samePorts(List<ServentInfo> a, List<ServentInfo> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (!a.get(i).isSameNode(b.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,190 @@
+package app;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the executors that run message handlers and outgoing sends.
+ *
+ * Both handlers and sends go through a {@link LaneExecutor}, so control messages (token, ring, liveness)
+ * are always taken before data messages. Decoding received frames happens on a separate small executor,
+ * since we need to decode a message before we know which lane it goes to.
+ *
+ * There are two execution modes, picked with <code>execution_mode</code> in the config:
+ * <ul>
+ * <li><code>platform</code> - bounded pools of platform threads; handlers and sends get <code>platform_pool_size</code> each.
+ * This is the default.</li>
+ * <li><code>virtual</code> - a new virtual thread for every handler run and every send. Blocking handlers
+ * (file I/O, waiting on a lock) then cost next to nothing, so thousands of messages can be in flight.
+ * Needs a JVM with virtual threads (21+); on older JVMs we fall back to <code>platform</code>.</li>
+ * </ul>
+ */
+public class ServentExecutors {
+
+	public enum Mode { PLATFORM, VIRTUAL }
+
+	public static final int DEFAULT_POOL_SIZE = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+	/**
+	 * With virtual threads a running task is cheap, so we let many more of them go at once.
+	 * The cap is still there so the lanes have something to order when we are flooded.
+	 */
+	private static final int VIRTUAL_CONCURRENCY = 1024;
+
+	private static Mode mode;
+	private static ExecutorService handlerExecutor;
+	private static ExecutorService senderExecutor;
+	private static ExecutorService decoderExecutor;
+	private static ScheduledExecutorService delayScheduler;
+	private static LaneExecutor inboundLanes;
+	private static LaneExecutor outboundLanes;
+
+	/**
+	 * Creates the executors. Called once, from {@link AppConfig#readConfig(String, int)}.
+	 */
+	public static synchronized void init(Mode requestedMode, int platformPoolSize) {
+		delayScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "send-delay");
+			t.setDaemon(true);
+			return t;
+		});
+
+		if (requestedMode == Mode.VIRTUAL) {
+			ExecutorService handlers = newVirtualThreadPerTaskExecutor();
+			ExecutorService senders = newVirtualThreadPerTaskExecutor();
+			ExecutorService decoders = newVirtualThreadPerTaskExecutor();
+			if (handlers != null && senders != null && decoders != null) {
+				mode = Mode.VIRTUAL;
+				handlerExecutor = handlers;
+				senderExecutor = senders;
+				decoderExecutor = decoders;
+				inboundLanes = new LaneExecutor("inbound", handlerExecutor, VIRTUAL_CONCURRENCY);
+				outboundLanes = new LaneExecutor("outbound", senderExecutor, VIRTUAL_CONCURRENCY);
+				return;
+			}
+			AppConfig.timestampedErrorPrint("Virtual threads are not available on this JVM, using "
+					+ platformPoolSize + " platform threads instead.");
+		}
+
+		mode = Mode.PLATFORM;
+		handlerExecutor = newBoundedPool("handler", platformPoolSize);
+		senderExecutor = newBoundedPool("sender", platformPoolSize);
+		decoderExecutor = newBoundedPool("decoder", Math.max(2, Runtime.getRuntime().availableProcessors()));
+		inboundLanes = new LaneExecutor("inbound", handlerExecutor, platformPoolSize);
+		outboundLanes = new LaneExecutor("outbound", senderExecutor, platformPoolSize);
+	}
+
+	public static synchronized Mode getMode() {
+		ensureInitialized();
+		return mode;
+	}
+
+	/**
+	 * Runs {@link servent.handler.MessageHandler}s, control messages first.
+	 */
+	public static synchronized LaneExecutor inboundLanes() {
+		ensureInitialized();
+		return inboundLanes;
+	}
+
+	/**
+	 * Runs {@link servent.message.util.DelayedMessageSender}s, control messages first.
+	 */
+	public static synchronized LaneExecutor outboundLanes() {
+		ensureInitialized();
+		return outboundLanes;
+	}
+
+	/**
+	 * Decodes received frames, before they are put into an inbound lane.
+	 */
+	public static synchronized ExecutorService decoderExecutor() {
+		ensureInitialized();
+		return decoderExecutor;
+	}
+
+	/**
+	 * Holds back sends that the send delay policy wants delayed, without tying up a sender thread.
+	 */
+	public static synchronized ScheduledExecutorService delayScheduler() {
+		ensureInitialized();
+		return delayScheduler;
+	}
+
+	private static void ensureInitialized() {
+		if (mode == null) {
+			init(Mode.PLATFORM, DEFAULT_POOL_SIZE);
+		}
+	}
+
+	/**
+	 * Lets queued sends (like a token being passed on) go out, waiting at most the given time.
+	 */
+	public static void shutdown(long timeoutMillis) {
+		ExecutorService handlers;
+		ExecutorService senders;
+		ExecutorService decoders;
+		synchronized (ServentExecutors.class) {
+			handlers = handlerExecutor;
+			senders = senderExecutor;
+			decoders = decoderExecutor;
+		}
+		if (senders == null) {
+			return;
+		}
+
+		/*
+		 * The senders are not shut down: a send that is still queued in the outbound lanes
+		 * only reaches the sender executor later, and we want it to go out. We just wait for
+		 * the outbound lanes to drain instead.
+		 */
+		decoders.shutdown();
+		handlers.shutdown();
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (System.currentTimeMillis() < deadline && outboundLanes.isBusy()) {
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		senders.shutdown();
+		try {
+			senders.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static ExecutorService newBoundedPool(String name, int size) {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+		return new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+	}
+
+	/**
+	 * Looked up reflectively, so the code still builds and runs on JVMs without virtual threads.
+	 *
+	 * @return the executor, or null if this JVM doesn't have virtual threads
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -13,11 +13,13 @@ public class ServentInfo implements Serializable {
 	private final String ipAddress;
 	private final int listenerPort;
 	private final int chordId;
+	private final int[] virtualIds;
 	
 	public ServentInfo(String ipAddress, int listenerPort) {
 		this.ipAddress = ipAddress;
 		this.listenerPort = listenerPort;
-		this.chordId = ChordState.chordHash(listenerPort);
+		this.virtualIds = ChordState.virtualIds(ipAddress, listenerPort);
+		this.chordId = virtualIds[0];
 	}
 
 	public String getIpAddress() {
@@ -31,6 +33,20 @@ public class ServentInfo implements Serializable {
 	public int getChordId() {
 		return chordId;
 	}
+
+	/**
+	 * @return every id this servent holds on the ring, its chord id first
+	 */
+	public int[] getVirtualIds() {
+		return virtualIds.clone();
+	}
+
+	/**
+	 * @return true if both describe the servent listening on the same address
+	 */
+	public boolean isSameNode(ServentInfo other) {
+		return other != null && listenerPort == other.listenerPort && ipAddress.equals(other.ipAddress);
+	}
 	
 	@Override
 	public String toString() {
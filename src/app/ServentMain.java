@@ -51,7 +51,8 @@ public class ServentMain {
 		Thread listenerThread = new Thread(simpleListener);
 		listenerThread.start();
 		
-		CLIParser cliParser = new CLIParser(simpleListener);
+		CLIParser cliParser = new CLIParser();
+		AppConfig.cliParser = cliParser;
 		Thread cliThread = new Thread(cliParser);
 		cliThread.start();
 		
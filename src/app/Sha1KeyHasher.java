@@ -0,0 +1,37 @@
+package app;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Consistent hashing as in the Chord paper - ids are taken from the SHA-1 digest.
+ * We only need the first 8 bytes of it, since ids never go over 64 bits.
+ */
+public class Sha1KeyHasher implements KeyHasher {
+
+	/**
+	 * MessageDigest is not thread safe, and handlers hash keys concurrently.
+	 */
+	private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available on this JVM", e);
+		}
+	});
+
+	@Override
+	public long hash(byte[] data) {
+		byte[] sha1 = digest.get().digest(data);
+		long result = 0;
+		for (int i = 0; i < 8; i++) {
+			result = (result << 8) | (sha1[i] & 0xff);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "sha1";
+	}
+}
@@ -0,0 +1,103 @@
+package app;
+
+/**
+ * xxHash64 with seed 0. Spreads keys over the ring as evenly as SHA-1 does, at a fraction
+ * of the cost, so it is the better pick when keys are hashed on every request.
+ */
+public class XxHash64KeyHasher implements KeyHasher {
+
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	@Override
+	public long hash(byte[] data) {
+		int length = data.length;
+		int pos = 0;
+		long h;
+
+		if (length >= 32) {
+			long v1 = PRIME64_1 + PRIME64_2;
+			long v2 = PRIME64_2;
+			long v3 = 0;
+			long v4 = -PRIME64_1;
+			int limit = length - 32;
+			do {
+				v1 = round(v1, readLong(data, pos));
+				v2 = round(v2, readLong(data, pos + 8));
+				v3 = round(v3, readLong(data, pos + 16));
+				v4 = round(v4, readLong(data, pos + 24));
+				pos += 32;
+			} while (pos <= limit);
+
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = PRIME64_5;
+		}
+
+		h += length;
+
+		while (pos + 8 <= length) {
+			h ^= round(0, readLong(data, pos));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+			pos += 8;
+		}
+		if (pos + 4 <= length) {
+			h ^= (readInt(data, pos) & 0xFFFFFFFFL) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			pos += 4;
+		}
+		while (pos < length) {
+			h ^= (data[pos] & 0xFF) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+			pos++;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+
+	private static long readLong(byte[] data, int pos) {
+		return (data[pos] & 0xFFL)
+				| (data[pos + 1] & 0xFFL) << 8
+				| (data[pos + 2] & 0xFFL) << 16
+				| (data[pos + 3] & 0xFFL) << 24
+				| (data[pos + 4] & 0xFFL) << 32
+				| (data[pos + 5] & 0xFFL) << 40
+				| (data[pos + 6] & 0xFFL) << 48
+				| (data[pos + 7] & 0xFFL) << 56;
+	}
+
+	private static int readInt(byte[] data, int pos) {
+		return (data[pos] & 0xFF)
+				| (data[pos + 1] & 0xFF) << 8
+				| (data[pos + 2] & 0xFF) << 16
+				| (data[pos + 3] & 0xFF) << 24;
+	}
+
+	@Override
+	public String toString() {
+		return "xxhash";
+	}
+}
@@ -0,0 +1,33 @@
+package app.lock;
+
+/**
+ * Locks taken around file operations. A lock is named by the file it protects, or by
+ * {@link #profile(int)} for a servent's file list, and released by the handler that gets the answer.
+ */
+public interface FileLocks {
+
+	/**
+	 * Blocks until we hold the lock.
+	 *
+	 * @return false if it couldn't be had in time - nothing is held then
+	 */
+	boolean acquire(String name, LockMode mode) throws InterruptedException;
+
+	/**
+	 * Releases a lock taken with {@link #acquire(String, LockMode)} under the same name.
+	 */
+	void release(String name);
+
+	/**
+	 * Starts the lease of a lock we hold under this name over, for an operation that runs longer than
+	 * a lease but is still getting somewhere, like a big upload. Does nothing if we don't hold it.
+	 */
+	void renew(String name);
+
+	/**
+	 * @return the lock name for the file list of the servent on this port
+	 */
+	static String profile(int port) {
+		return "profile:" + port;
+	}
+}
@@ -0,0 +1,60 @@
+package app.lock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import app.AppConfig;
+
+/**
+ * Every lock is the one token of {@link app.mutex.DistributedMutex}, and every mode exclusive - file
+ * operations run one at a time across the whole system. Chosen with <code>file_locks=global</code>.
+ *
+ * A release is matched to its section by the ticket it got, the first one still held under that name,
+ * so a response that comes after the section's lease ran out is ignored by the mutex instead of ending
+ * the section that holds the token now.
+ */
+public class GlobalTokenLocks implements FileLocks {
+
+	// ime -> tiketi sekcija uzetih pod tim imenom, po redu
+	private final Map<String, Deque<Long>> tickets = new HashMap<>();
+
+	@Override
+	public boolean acquire(String name, LockMode mode) throws InterruptedException {
+		long ticket = AppConfig.mutex.requestCSEntry();
+		synchronized (tickets) {
+			tickets.computeIfAbsent(name, key -> new ArrayDeque<>()).add(ticket);
+		}
+		return true;
+	}
+
+	@Override
+	public void release(String name) {
+		Long ticket;
+		synchronized (tickets) {
+			Deque<Long> held = tickets.get(name);
+			ticket = held == null ? null : held.poll();
+			if (held != null && held.isEmpty()) {
+				tickets.remove(name);
+			}
+		}
+		if (ticket == null) {
+			AppConfig.timestampedErrorPrint("Tried to release " + name + ", which we don't hold");
+			return;
+		}
+		AppConfig.mutex.releaseCSEntry(ticket);
+	}
+
+	@Override
+	public void renew(String name) {
+		Long ticket;
+		synchronized (tickets) {
+			Deque<Long> held = tickets.get(name);
+			ticket = held == null ? null : held.peek();
+		}
+		if (ticket != null) {
+			AppConfig.mutex.renewLease(ticket);
+		}
+	}
+}
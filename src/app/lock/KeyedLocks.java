@@ -0,0 +1,282 @@
+package app.lock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import app.AppConfig;
+import app.ChordState;
+import app.ServentInfo;
+import servent.message.LockGrantMessage;
+import servent.message.LockHandoffMessage;
+import servent.message.LockReleaseMessage;
+import servent.message.LockRenewMessage;
+import servent.message.LockRequestMessage;
+import servent.message.util.MessageUtil;
+
+/**
+ * One lock per name, arbitrated by the servent that owns the name's chord key, instead of one token
+ * for the whole system. Operations on different files run in parallel on different owners, and a
+ * file list is locked for reading, so listings never wait on each other. Chosen with
+ * <code>file_locks=keyed</code>, the default.
+ *
+ * A LOCK_REQUEST goes around the ring like an UPLOAD does, the owner answers with a LOCK_GRANT
+ * straight to the requester, and the LOCK_RELEASE goes straight back to whoever granted it. When a key
+ * changes owner, the old owner hands its locks on the key's names over in a LOCK_HANDOFF, and the new one
+ * grants the holders again, so they renew and release with it from then on. See {@link #handOver}.
+ *
+ * Every servent runs both sides: it takes locks for its own commands, and arbitrates the names it owns,
+ * see {@link LockTable}.
+ */
+public class KeyedLocks implements FileLocks {
+
+	public static final long DEFAULT_LEASE_MILLIS = 60_000;
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+	private static final class Held {
+		final int requestId;
+		// menja se kad lock pređe na novog vlasnika imena; pod lock-om held
+		int granterPort;
+
+		Held(int requestId, int granterPort) {
+			this.requestId = requestId;
+			this.granterPort = granterPort;
+		}
+	}
+
+	/**
+	 * Keys we still own in the ring, but whose locks we already handed over to the servent
+	 * that takes them when we leave.
+	 */
+	private static final class MovedRange {
+		final ServentInfo target;
+		final IntPredicate covers;
+
+		MovedRange(ServentInfo target, IntPredicate covers) {
+			this.target = target;
+			this.covers = covers;
+		}
+	}
+
+	private final LockTable table = new LockTable(this::grant, DEFAULT_LEASE_MILLIS);
+	private volatile long timeout = DEFAULT_TIMEOUT_MILLIS;
+
+	// pod njim se odlučuje da li je ime naše i menja vlasnik, da nijedan zahtev ne promakne predaji
+	private final Object arbitration = new Object();
+	private final List<MovedRange> movedAway = new ArrayList<>();
+
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+	// requestId -> port servent-a koji nam je dao lock, kada stigne
+	private final Map<Integer, CompletableFuture<Integer>> pending = new ConcurrentHashMap<>();
+	// ime -> lock-ovi koje držimo, po redu kojim smo ih dobili
+	private final Map<String, Deque<Held>> held = new HashMap<>();
+
+	public void configure(long lease, long timeout) {
+		table.setLease(lease);
+		this.timeout = timeout;
+	}
+
+	@Override
+	public boolean acquire(String name, LockMode mode) throws InterruptedException {
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		int requestId = nextRequestId.incrementAndGet();
+		CompletableFuture<Integer> grant = new CompletableFuture<>();
+		pending.put(requestId, grant);
+		onRequest(new LockRequestMessage(myPort, myPort, myPort, requestId, name, mode));
+
+		try {
+			grant.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			synchronized (held) {
+				if (pending.remove(requestId) != null) {
+					AppConfig.timestampedErrorPrint("No " + mode + " lock on " + name + " after " + timeout + " ms, giving up");
+					return false;
+				}
+			}
+			// stigao je baš sada, onGrant ga je već upisao
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		return true;
+	}
+
+	@Override
+	public void release(String name) {
+		Held lock;
+		synchronized (held) {
+			Deque<Held> locks = held.get(name);
+			lock = locks == null ? null : locks.poll();
+			if (locks != null && locks.isEmpty()) {
+				held.remove(name);
+			}
+		}
+		if (lock == null) {
+			AppConfig.timestampedErrorPrint("Tried to release a lock on " + name + " that we don't hold");
+			return;
+		}
+		sendRelease(name, lock.requestId, lock.granterPort);
+	}
+
+	@Override
+	public void renew(String name) {
+		Held lock;
+		synchronized (held) {
+			Deque<Held> locks = held.get(name);
+			lock = locks == null ? null : locks.peek();
+		}
+		if (lock == null) {
+			return;
+		}
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		if (lock.granterPort == myPort) {
+			onRenew(name, myPort, lock.requestId);
+		} else {
+			MessageUtil.sendMessage(new LockRenewMessage(myPort, lock.granterPort, lock.requestId, name));
+		}
+	}
+
+	/**
+	 * Arbitrates the request if we own the name, or passes it on towards the owner.
+	 */
+	public void onRequest(LockRequestMessage request) {
+		int key = ChordState.keyOf(request.getName());
+		ServentInfo nextNode = null;
+		synchronized (arbitration) {
+			for (MovedRange range : movedAway) {
+				if (range.covers.test(key)) {
+					nextNode = range.target;
+					break;
+				}
+			}
+			if (nextNode == null && AppConfig.chordState.isKeyMine(key)) {
+				table.request(new LockTable.Request(request.getName(), request.getRequesterPort(),
+						request.getRequestId(), request.getMode()));
+				return;
+			}
+		}
+
+		if (nextNode == null) {
+			nextNode = AppConfig.chordState.getNextNodeForKey(key);
+		}
+		MessageUtil.sendMessage(new LockRequestMessage(AppConfig.myServentInfo.getListenerPort(), nextNode.getListenerPort(),
+				request.getRequesterPort(), request.getRequestId(), request.getName(), request.getMode()));
+	}
+
+	public void onGrant(String name, int requestId, int granterPort) {
+		synchronized (held) {
+			CompletableFuture<Integer> grant = pending.remove(requestId);
+			if (grant != null) {
+				held.computeIfAbsent(name, n -> new ArrayDeque<>()).add(new Held(requestId, granterPort));
+				grant.complete(granterPort);
+				return;
+			}
+			Deque<Held> locks = held.get(name);
+			if (locks != null) {
+				for (Held lock : locks) {
+					if (lock.requestId == requestId) {
+						// ime je promenilo vlasnika, on sada drži naš lock
+						lock.granterPort = granterPort;
+						return;
+					}
+				}
+			}
+		}
+		// odustali smo od njega u međuvremenu
+		sendRelease(name, requestId, granterPort);
+	}
+
+	public void onRelease(String name, int holderPort, int requestId) {
+		table.release(name, holderPort, requestId);
+	}
+
+	public void onRenew(String name, int holderPort, int requestId) {
+		table.renew(name, holderPort, requestId);
+	}
+
+	/**
+	 * Hands the locks on the keys <code>covers</code> accepts over to <code>target</code>, which owns them from
+	 * now on. <code>moveOwnership</code> is what makes it their owner here, and no request is arbitrated while
+	 * it runs, so none is granted by both of us. Without it - when we are leaving and stay in the ring
+	 * until the handoff is done - requests for those keys are passed on to the target from now on.
+	 */
+	public void handOver(ServentInfo target, IntPredicate covers, Runnable moveOwnership) {
+		List<LockTable.Request> holders = new ArrayList<>();
+		List<LockTable.Request> waiting = new ArrayList<>();
+		synchronized (arbitration) {
+			if (moveOwnership != null) {
+				moveOwnership.run();
+			} else {
+				movedAway.add(new MovedRange(target, covers));
+			}
+			table.takeAll(name -> covers.test(ChordState.keyOf(name)), holders, waiting);
+		}
+		if (holders.isEmpty() && waiting.isEmpty()) {
+			return;
+		}
+
+		int count = holders.size() + waiting.size();
+		String[] names = new String[count];
+		int[] ports = new int[count];
+		int[] requestIds = new int[count];
+		LockMode[] modes = new LockMode[count];
+		boolean[] isHeld = new boolean[count];
+		Arrays.fill(isHeld, 0, holders.size(), true);
+		int i = 0;
+		for (List<LockTable.Request> requests : Arrays.asList(holders, waiting)) {
+			for (LockTable.Request request : requests) {
+				names[i] = request.name;
+				ports[i] = request.port;
+				requestIds[i] = request.requestId;
+				modes[i] = request.mode;
+				i++;
+			}
+		}
+
+		AppConfig.timestampedStandardPrint("Handing " + holders.size() + " held and " + waiting.size()
+				+ " waiting locks over to " + target.getListenerPort());
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		MessageUtil.sendMessage(new LockHandoffMessage(myPort, target.getListenerPort(), names, ports, requestIds,
+				modes, isHeld));
+	}
+
+	public void onHandoff(LockHandoffMessage handoff) {
+		List<LockTable.Request> holders = new ArrayList<>();
+		List<LockTable.Request> waiting = new ArrayList<>();
+		String[] names = handoff.getNames();
+		for (int i = 0; i < names.length; i++) {
+			LockTable.Request request = new LockTable.Request(names[i], handoff.getPorts()[i],
+					handoff.getRequestIds()[i], handoff.getModes()[i]);
+			(handoff.getHeld()[i] ? holders : waiting).add(request);
+		}
+		table.adopt(holders, waiting);
+	}
+
+	private void grant(LockTable.Request request) {
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		if (request.port == myPort) {
+			onGrant(request.name, request.requestId, myPort);
+		} else {
+			MessageUtil.sendMessage(new LockGrantMessage(myPort, request.port, request.requestId, request.name));
+		}
+	}
+
+	private void sendRelease(String name, int requestId, int granterPort) {
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		if (granterPort == myPort) {
+			onRelease(name, myPort, requestId);
+		} else {
+			MessageUtil.sendMessage(new LockReleaseMessage(myPort, granterPort, requestId, name));
+		}
+	}
+}
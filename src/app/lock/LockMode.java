@@ -0,0 +1,14 @@
+package app.lock;
+
+/**
+ * Any number of readers can hold a lock together, a writer only alone.
+ */
+public enum LockMode {
+	READ, WRITE;
+
+	private static final LockMode[] VALUES = values();
+
+	public static LockMode of(int ordinal) {
+		return VALUES[ordinal];
+	}
+}
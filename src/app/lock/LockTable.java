@@ -0,0 +1,208 @@
+package app.lock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import app.AppConfig;
+import app.ServentExecutors;
+
+/**
+ * The locks we arbitrate: those on names whose chord key we own. Requests are granted in the order they
+ * came, so a writer waits only for the readers ahead of it, and readers behind a waiting writer wait for it.
+ *
+ * A lock held longer than <code>lease</code> is taken back. That covers a holder that crashed, or
+ * whose answer never came, so nobody waits on it forever. A holder that is still working renews
+ * the lease, see {@link #renew}.
+ */
+class LockTable {
+
+	static final class Request {
+		final String name;
+		final int port;
+		final int requestId;
+		final LockMode mode;
+		// kad ističe lease, dok je među holder-ima; pod lock-om tabele
+		long leaseEnds;
+
+		Request(String name, int port, int requestId, LockMode mode) {
+			this.name = name;
+			this.port = port;
+			this.requestId = requestId;
+			this.mode = mode;
+		}
+
+		boolean isFrom(int port, int requestId) {
+			return this.port == port && this.requestId == requestId;
+		}
+	}
+
+	private static final class Entry {
+		final List<Request> holders = new ArrayList<>();
+		final Deque<Request> waiting = new ArrayDeque<>();
+	}
+
+	interface Granter {
+		void grant(Request request);
+	}
+
+	private final Granter granter;
+	private volatile long lease;
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	LockTable(Granter granter, long lease) {
+		this.granter = granter;
+		this.lease = lease;
+	}
+
+	void setLease(long lease) {
+		this.lease = lease;
+	}
+
+	void request(Request request) {
+		List<Request> granted;
+		synchronized (this) {
+			Entry entry = entries.computeIfAbsent(request.name, name -> new Entry());
+			for (Request known : entry.holders) {
+				if (known.isFrom(request.port, request.requestId)) {
+					return;
+				}
+			}
+			for (Request known : entry.waiting) {
+				if (known.isFrom(request.port, request.requestId)) {
+					return;
+				}
+			}
+			entry.waiting.add(request);
+			granted = grantWaiting(request.name, entry);
+		}
+		grant(granted);
+	}
+
+	void release(String name, int port, int requestId) {
+		List<Request> granted;
+		synchronized (this) {
+			Entry entry = entries.get(name);
+			if (entry == null || !entry.holders.removeIf(holder -> holder.isFrom(port, requestId))) {
+				return;
+			}
+			granted = grantWaiting(name, entry);
+		}
+		grant(granted);
+	}
+
+	/**
+	 * Starts the lease of a holder over.
+	 */
+	synchronized void renew(String name, int port, int requestId) {
+		Entry entry = entries.get(name);
+		if (entry == null) {
+			return;
+		}
+		for (Request holder : entry.holders) {
+			if (holder.isFrom(port, requestId)) {
+				holder.leaseEnds = System.currentTimeMillis() + lease;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes the locks on the names the predicate accepts, for handing them over to another arbiter.
+	 * Holders go into <code>holders</code>, and waiting requests into <code>waiting</code> in the order they came.
+	 */
+	synchronized void takeAll(Predicate<String> names, List<Request> holders, List<Request> waiting) {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Entry> entry = it.next();
+			if (names.test(entry.getKey())) {
+				holders.addAll(entry.getValue().holders);
+				waiting.addAll(entry.getValue().waiting);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Takes over locks another arbiter granted, see {@link #takeAll}. Holders get a fresh lease and are
+	 * granted again, which tells them whom to renew and release with from now on.
+	 */
+	void adopt(List<Request> holders, List<Request> waiting) {
+		List<Request> granted = new ArrayList<>();
+		synchronized (this) {
+			for (Request holder : holders) {
+				Entry entry = entries.computeIfAbsent(holder.name, name -> new Entry());
+				holder.leaseEnds = System.currentTimeMillis() + lease;
+				entry.holders.add(holder);
+				granted.add(holder);
+			}
+			Set<String> names = new HashSet<>();
+			for (Request request : waiting) {
+				entries.computeIfAbsent(request.name, name -> new Entry()).waiting.add(request);
+				names.add(request.name);
+			}
+			for (String name : names) {
+				granted.addAll(grantWaiting(name, entries.get(name)));
+			}
+		}
+		grant(granted);
+	}
+
+	private void expire(Request holder) {
+		List<Request> granted;
+		synchronized (this) {
+			Entry entry = entries.get(holder.name);
+			if (entry == null || !entry.holders.contains(holder)) {
+				return;
+			}
+			long left = holder.leaseEnds - System.currentTimeMillis();
+			if (left > 0) {
+				// obnovljen u međuvremenu
+				ServentExecutors.delayScheduler().schedule(() -> expire(holder), left, TimeUnit.MILLISECONDS);
+				return;
+			}
+			entry.holders.remove(holder);
+			granted = grantWaiting(holder.name, entry);
+		}
+		AppConfig.timestampedErrorPrint("Lock on " + holder.name + " held by " + holder.port + " for over "
+				+ lease + " ms, taking it back");
+		grant(granted);
+	}
+
+	/**
+	 * Moves waiting requests to the holders for as long as the one at the head fits in. Called with our lock held.
+	 */
+	private List<Request> grantWaiting(String name, Entry entry) {
+		List<Request> granted = new ArrayList<>();
+		while (!entry.waiting.isEmpty()) {
+			Request next = entry.waiting.peek();
+			boolean writerHolds = !entry.holders.isEmpty() && entry.holders.get(0).mode == LockMode.WRITE;
+			if (next.mode == LockMode.WRITE ? !entry.holders.isEmpty() : writerHolds) {
+				break;
+			}
+			entry.holders.add(entry.waiting.poll());
+			next.leaseEnds = System.currentTimeMillis() + lease;
+			granted.add(next);
+		}
+		if (entry.holders.isEmpty() && entry.waiting.isEmpty()) {
+			entries.remove(name);
+		}
+		return granted;
+	}
+
+	private void grant(List<Request> granted) {
+		for (Request request : granted) {
+			ServentExecutors.delayScheduler().schedule(() -> expire(request), lease, TimeUnit.MILLISECONDS);
+			granter.grant(request);
+		}
+	}
+}
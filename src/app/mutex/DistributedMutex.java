@@ -0,0 +1,51 @@
+package app.mutex;
+
+import servent.message.Message;
+
+/**
+ * One critical section for the whole system, guarded by a token that moves between servents.
+ * Chosen per deployment with <code>mutex</code>: {@link SuzukiKasamiMutex} (the default)
+ * or {@link RaymondMutex}. <code>java app.mutex.MutexBenchmark</code> compares the two.
+ */
+public interface DistributedMutex {
+
+	/** A critical section is ended for its holder after this long, so a lost response can't keep the token forever */
+	long DEFAULT_LEASE_MILLIS = 30_000;
+
+	/**
+	 * Called on the servent that started the chord system, before anyone else can ask for the token.
+	 */
+	void firstInSystem();
+
+	/**
+	 * Blocks until we hold the token and are in the critical section.
+	 *
+	 * @return the ticket of this section, to leave it with
+	 */
+	long requestCSEntry() throws InterruptedException;
+
+	/**
+	 * Leaves the critical section, and passes the token on if someone waits for it. A ticket of a section
+	 * that already ended - its lease ran out, or it was left before - is ignored, so a late release can't
+	 * end the section of whoever has the token now.
+	 */
+	void releaseCSEntry(long ticket);
+
+	/**
+	 * Starts the lease of the section over, for one that runs long but is still getting somewhere.
+	 * Ignored for a section that already ended.
+	 */
+	void renewLease(long ticket);
+
+	/**
+	 * Handles a message of this algorithm, sent to us by the same algorithm on another servent.
+	 */
+	void handle(Message message);
+
+	/**
+	 * Called when the servent stops, so a token held here doesn't go down with it.
+	 */
+	void passTokenOnShutdown();
+
+	MutexStats getStats();
+}
@@ -0,0 +1,137 @@
+package app.mutex;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import app.ServentInfo;
+import servent.message.Message;
+
+/**
+ * Offline comparison of the mutex algorithms: every servent is a {@link DistributedMutex} in this process,
+ * and messages between them go over a simulated network that delivers each one after
+ * <code>latency_ms</code>, in the order they were sent. Every servent runs <code>entries</code> critical
+ * sections of <code>hold_ms</code>, each after a random pause of up to twice <code>think_ms</code>, and we
+ * count the messages per entry and how long entries waited for the token.
+ *
+ * Usage: <code>java app.mutex.MutexBenchmark [entries] [hold_ms] [think_ms] [latency_ms] [servent_count...]</code>
+ * <br>
+ * With no counts given, it runs 5, 10, 25, 50, 100 and 200 servents. The shorter the pauses, the more
+ * servents wait at once, and the more requests Raymond's tree serves on one trip of the token.
+ */
+public class MutexBenchmark {
+
+	private interface Factory {
+		DistributedMutex create(int id, ServentInfo[] servents, Consumer<Message> transport);
+	}
+
+	// leases i regeneracija tokena ne treba da se umešaju u merenje
+	private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+	public static void main(String[] args) throws InterruptedException {
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		long hold = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		long think = args.length > 2 ? Long.parseLong(args[2]) : 50;
+		long latency = args.length > 3 ? Long.parseLong(args[3]) : 1;
+		List<Integer> counts = new ArrayList<>();
+		for (int i = 4; i < args.length; i++) {
+			counts.add(Integer.parseInt(args[i]));
+		}
+		if (counts.isEmpty()) {
+			counts.addAll(Arrays.asList(5, 10, 25, 50, 100, 200));
+		}
+
+		Map<String, Factory> algorithms = new HashMap<>();
+		algorithms.put("suzuki_kasami", (id, servents, transport) -> {
+			List<ServentInfo> others = new ArrayList<>(Arrays.asList(servents));
+			others.remove(id);
+			return new SuzukiKasamiMutex(servents[id].getListenerPort(), () -> others, transport,
+					NEVER, 2 * NEVER, SuzukiKasamiMutex.DEFAULT_BATCH_BUDGET);
+		});
+		algorithms.put("raymond", (id, servents, transport) -> new RaymondMutex(id, servents, transport, NEVER));
+
+		// algoritmi pišu svaki korak na stdout, a nama treba samo tabela
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		out.println("entries=" + entries + ", hold_ms=" + hold + ", think_ms=" + think + ", latency_ms=" + latency);
+		out.printf("%-14s %9s %13s %14s %14s %10s%n", "mutex", "servents", "msgs/entry", "wait avg ms", "wait max ms", "total ms");
+		for (int count : counts) {
+			for (String name : Arrays.asList("suzuki_kasami", "raymond")) {
+				run(out, name, algorithms.get(name), count, entries, hold, think, latency);
+			}
+		}
+		System.setOut(out);
+	}
+
+	private static void run(PrintStream out, String name, Factory factory, int count, int entries, long hold, long think,
+							long latency) throws InterruptedException {
+		ServentInfo[] servents = new ServentInfo[count];
+		for (int i = 0; i < count; i++) {
+			servents[i] = new ServentInfo("localhost", 1100 + i * 100);
+		}
+
+		// jedna nit isporučuje sve, pa poruke sa istim kašnjenjem stižu redom kojim su poslate
+		ScheduledExecutorService network = Executors.newSingleThreadScheduledExecutor();
+		Map<Integer, DistributedMutex> byPort = new HashMap<>();
+		AtomicLong messages = new AtomicLong();
+		Consumer<Message> transport = message -> {
+			messages.incrementAndGet();
+			network.schedule(() -> byPort.get(message.getReceiverPort()).handle(message), latency, TimeUnit.MILLISECONDS);
+		};
+		for (int i = 0; i < count; i++) {
+			byPort.put(servents[i].getListenerPort(), factory.create(i, servents, transport));
+		}
+		byPort.get(servents[0].getListenerPort()).firstInSystem();
+
+		double[] waits = new double[count * entries];
+		AtomicInteger done = new AtomicInteger();
+		List<Thread> clients = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			DistributedMutex mutex = byPort.get(servents[i].getListenerPort());
+			Random random = new Random(i);
+			Thread client = new Thread(() -> {
+				try {
+					for (int k = 0; k < entries; k++) {
+						Thread.sleep(random.nextInt((int) (2 * think + 1)));
+						long requested = System.nanoTime();
+						long ticket = mutex.requestCSEntry();
+						waits[done.getAndIncrement()] = (System.nanoTime() - requested) / 1e6;
+						Thread.sleep(hold);
+						mutex.releaseCSEntry(ticket);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			clients.add(client);
+			client.start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		long total = (System.nanoTime() - start) / 1_000_000;
+		network.shutdownNow();
+
+		double sum = 0;
+		double max = 0;
+		for (double wait : waits) {
+			sum += wait;
+			max = Math.max(max, wait);
+		}
+		out.printf("%-14s %9d %13.1f %14.1f %14.1f %10d%n", name, count, (double) messages.get() / waits.length,
+				sum / waits.length, max, total);
+	}
+}
@@ -0,0 +1,69 @@
+package app.mutex;
+
+/**
+ * How long critical sections waited for the token and held it, how many messages the algorithm sent,
+ * how many sections ran in one token visit, how many didn't need a token request of their own, and
+ * how often a lease ran out or the token had to be made anew. Shown by the <code>mutex_stats</code> command.
+ */
+public class MutexStats {
+
+	private long entries;
+	private long totalWait;
+	private long maxWait;
+	private long messages;
+	private long holds;
+	private long totalHold;
+	private long maxHold;
+	private long visits;
+	private long visitSections;
+	private long maxVisitSections;
+	private long coalescedRequests;
+	private long expiredLeases;
+	private long regenerations;
+
+	public synchronized void recordWait(long millis) {
+		entries++;
+		totalWait += millis;
+		maxWait = Math.max(maxWait, millis);
+	}
+
+	public synchronized void recordMessage() {
+		messages++;
+	}
+
+	public synchronized void recordHold(long millis) {
+		holds++;
+		totalHold += millis;
+		maxHold = Math.max(maxHold, millis);
+	}
+
+	public synchronized void recordVisit(int sections) {
+		visits++;
+		visitSections += sections;
+		maxVisitSections = Math.max(maxVisitSections, sections);
+	}
+
+	public synchronized void recordCoalescedRequest() {
+		coalescedRequests++;
+	}
+
+	public synchronized void recordExpiredLease() {
+		expiredLeases++;
+	}
+
+	public synchronized void recordRegeneration() {
+		regenerations++;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "entries=" + entries
+				+ ", wait avg/max=" + (entries == 0 ? 0 : totalWait / entries) + "/" + maxWait + " ms"
+				+ ", messages sent=" + messages
+				+ ", hold avg/max=" + (holds == 0 ? 0 : totalHold / holds) + "/" + maxHold + " ms"
+				+ ", sections per visit avg/max=" + (visits == 0 ? 0 : visitSections / visits) + "/" + maxVisitSections
+				+ ", coalesced requests=" + coalescedRequests
+				+ ", expired leases=" + expiredLeases
+				+ ", regenerated tokens=" + regenerations;
+	}
+}
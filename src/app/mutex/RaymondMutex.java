@@ -0,0 +1,198 @@
+package app.mutex;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+import app.AppConfig;
+import app.ServentInfo;
+import servent.message.Message;
+import servent.message.RaymondPrivilegeMessage;
+import servent.message.RaymondRequestMessage;
+
+/**
+ * Raymond's tree algorithm. The servents form a fixed binary tree - servent i hangs under (i - 1) / 2,
+ * and servent 0, the root, starts with the token - and each of them only knows which neighbour the
+ * token lies towards, its holder. A request goes along those arrows to the token, asked for at most
+ * once per servent while it waits, and the token comes back the same way, turning every arrow it passes
+ * towards itself. That is O(log N) messages per entry instead of the N of {@link SuzukiKasamiMutex}, and
+ * nothing a servent keeps grows with the system except its queue, at most one entry per neighbour.
+ *
+ * Requests are served in the order they reach a servent, ours included, one entry in the queue for every
+ * section of ours that waits. Leases still end a section whose holder forgot it, but a token that dies
+ * with its holder, or a tree cut by a dead servent, is not repaired.
+ */
+public class RaymondMutex extends TokenMutex {
+
+	// sused ka kome je token, ili mi sami
+	private int holder;
+	// ko je tražio token od nas: susedi, i myId za svaku našu sekciju koja čeka
+	private final Queue<Integer> requests = new ArrayDeque<>();
+	private boolean asked;
+	// token je dat jednoj našoj sekciji, koja možda još nije ušla
+	private boolean using;
+	private final Deque<Object> localWaiters = new ArrayDeque<>();
+	private final ServentInfo[] servents;
+	// kritične sekcije u ovoj poseti tokena
+	private int visitEntries;
+
+	public RaymondMutex(int myId, ServentInfo[] servents, Consumer<Message> transport, long leaseMillis) {
+		super(myId, transport, leaseMillis);
+		this.servents = servents;
+		holder = myId == 0 ? myId : (myId - 1) / 2;
+		AppConfig.timestampedStandardPrint("Servent " + myId + " initialized " + (holder == myId ? "WITH" : "WITHOUT")
+				+ " Raymond token, parent " + holder);
+	}
+
+	@Override
+	public void firstInSystem() {
+		// token je uvek prvo kod korena stabla, servent-a 0, ko god da je pokrenuo sistem
+	}
+
+	private int portOf(int serventId) {
+		return servents[serventId].getListenerPort();
+	}
+
+	@Override
+	public long requestCSEntry() throws InterruptedException {
+		lock.lock();
+		try {
+			long requestedAt = System.currentTimeMillis();
+			Object waiter = new Object();
+			localWaiters.add(waiter);
+			requests.add(myId);
+			assignPrivilege();
+			makeRequest();
+
+			try {
+				while (!using || inCriticalSection || localWaiters.peek() != waiter) {
+					changed.await();
+				}
+			} catch (InterruptedException e) {
+				if (using && !inCriticalSection && localWaiters.peek() == waiter) {
+					localWaiters.poll();
+					using = false;
+					assignPrivilege();
+					makeRequest();
+				} else {
+					localWaiters.remove(waiter);
+					requests.remove(myId);
+				}
+				throw e;
+			}
+
+			localWaiters.poll();
+			visitEntries++;
+			long ticket = enterCS(requestedAt);
+			AppConfig.timestampedStandardPrint("Raymond: Servent " + myId + " entering CS");
+			return ticket;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void releaseCSEntry(long ticket) {
+		lock.lock();
+		try {
+			if (!leaveCS(ticket)) {
+				return;
+			}
+			using = false;
+			AppConfig.timestampedStandardPrint("Raymond: Servent " + myId + " released CS. Queue: " + requests);
+			assignPrivilege();
+			makeRequest();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives the token to whoever is first in the queue, if we have it and nobody of ours uses it.
+	 * Called with the lock held, as is {@link #makeRequest()}.
+	 */
+	private void assignPrivilege() {
+		if (holder != myId || using || requests.isEmpty()) {
+			return;
+		}
+		int next = requests.poll();
+		asked = false;
+		if (next == myId) {
+			using = true;
+			changed.signalAll();
+			return;
+		}
+		holder = next;
+		if (visitEntries > 0) {
+			stats.recordVisit(visitEntries);
+			visitEntries = 0;
+		}
+		AppConfig.timestampedStandardPrint("Raymond: Servent " + myId + " sending token to servent " + next + ". Queue: " + requests);
+		send(new RaymondPrivilegeMessage(portOf(myId), portOf(next), myId));
+	}
+
+	/**
+	 * Asks our holder for the token, once, if anyone in our queue waits for it.
+	 */
+	private void makeRequest() {
+		if (holder == myId || requests.isEmpty() || asked) {
+			return;
+		}
+		asked = true;
+		AppConfig.timestampedStandardPrint("Raymond: Servent " + myId + " asking servent " + holder + " for the token");
+		send(new RaymondRequestMessage(portOf(myId), portOf(holder), myId));
+	}
+
+	@Override
+	public void handle(Message message) {
+		lock.lock();
+		try {
+			switch (message.getMessageType()) {
+				case RAYMOND_REQUEST:
+					int requesterId = ((RaymondRequestMessage) message).getRequesterId();
+					requests.add(requesterId);
+					AppConfig.timestampedStandardPrint("Raymond: Servent " + requesterId + " asked us for the token. Queue: " + requests);
+					break;
+				case RAYMOND_PRIVILEGE:
+					holder = myId;
+					AppConfig.timestampedStandardPrint("Raymond: Servent " + myId + " received token from servent "
+							+ ((RaymondPrivilegeMessage) message).getSenderId() + ". Queue: " + requests);
+					break;
+				default:
+					AppConfig.timestampedErrorPrint("Raymond: got " + message.getMessageType() + ", which is not a Raymond message."
+							+ " Do all servents have the same mutex?");
+					return;
+			}
+			assignPrivilege();
+			makeRequest();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void passTokenOnShutdown() {
+		lock.lock();
+		try {
+			if (holder != myId) {
+				return;
+			}
+			// naše sekcije se gase sa nama
+			using = false;
+			inCriticalSection = false;
+			requests.removeIf(id -> id == myId);
+			assignPrivilege();
+			if (holder == myId) {
+				AppConfig.timestampedStandardPrint("Raymond: Holding token on shutdown, nobody asked for it. Token remains with servent " + myId);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Raymond";
+	}
+}
@@ -0,0 +1,153 @@
+package app.mutex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import app.AppConfig;
+import app.ServentExecutors;
+import servent.message.SKTokenProbeMessage;
+
+/**
+ * Makes the Suzuki-Kasami token anew when it went down with its holder. Leases keep a live holder
+ * from sitting on the token, so a servent that waits for it longer than <code>sk.token_timeout_ms</code>
+ * suspects the holder is dead, and asks every servent in the ring whether it has the token:
+ * <ul>
+ * <li>If one does, we keep waiting - it is alive, and the probe carried our request again in case it was lost.</li>
+ * <li>If none does, the lowest waiting servent makes a new token, with the next epoch. Servents that
+ * didn't answer within {@link #PROBE_TIMEOUT_MILLIS} are taken to be dead.</li>
+ * </ul>
+ * A token from an older epoch is dropped by every servent that has had the newer one. The new token
+ * goes first to everyone who was waiting, so a holder that was only slow to answer can't pass its old
+ * token to any of them.
+ *
+ * Everything here runs with the lock of {@link SuzukiKasamiMutex} held.
+ */
+class SKTokenRecovery {
+
+	static final long PROBE_TIMEOUT_MILLIS = 5_000;
+
+	private static final class Reply {
+		final boolean waiting;
+		final long incarnation;
+		final int sequenceNumber;
+
+		Reply(boolean waiting, long incarnation, int sequenceNumber) {
+			this.waiting = waiting;
+			this.incarnation = incarnation;
+			this.sequenceNumber = sequenceNumber;
+		}
+	}
+
+	private final SuzukiKasamiMutex sk;
+	// epoha koju dobija novi token
+	private final int epoch;
+	private final Map<Integer, Reply> replies = new HashMap<>();
+	// ko je bio u ringu kad smo počeli
+	private List<Integer> asked;
+	private boolean done;
+
+	SKTokenRecovery(SuzukiKasamiMutex sk, int epoch) {
+		this.sk = sk;
+		this.epoch = epoch;
+	}
+
+	int getEpoch() {
+		return epoch;
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	void start(long waitedMillis) {
+		asked = sk.memberPorts();
+		AppConfig.timestampedStandardPrint("SK: No token after " + waitedMillis + " ms, asking the " + asked.size()
+				+ " servents in the ring whether they have it");
+		int mySequence = sk.rn(sk.myId);
+		for (int port : asked) {
+			sk.send(new SKTokenProbeMessage(sk.myId, port, sk.myId, sk.incarnation, mySequence, epoch));
+		}
+		ServentExecutors.delayScheduler().schedule(this::timeout, PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	void onReply(int serventPort, boolean hasToken, boolean waiting, long incarnation, int sequenceNumber) {
+		if (done) {
+			return;
+		}
+		if (hasToken) {
+			done = true;
+			AppConfig.timestampedStandardPrint("SK: Servent " + serventPort + " has the token, waiting on");
+			return;
+		}
+		replies.put(serventPort, new Reply(waiting, incarnation, sequenceNumber));
+		if (replies.keySet().containsAll(asked)) {
+			finish();
+		}
+	}
+
+	private void timeout() {
+		sk.lock.lock();
+		try {
+			if (!done) {
+				finish();
+			}
+		} finally {
+			sk.lock.unlock();
+		}
+	}
+
+	private void finish() {
+		done = true;
+		if (sk.hasToken || !sk.waitingForToken) {
+			return; // stigao je u međuvremenu
+		}
+
+		int me = sk.myId;
+		List<Integer> silent = new ArrayList<>();
+		for (int port : asked) {
+			Reply reply = replies.get(port);
+			if (reply == null) {
+				silent.add(port);
+				continue;
+			}
+			if (reply.waiting && port < me) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + port + " is waiting too, leaving the new token to it");
+				return;
+			}
+		}
+
+		// oni koji nisu odgovorili ne čekaju, koliko znamo
+		Map<Integer, Integer> ln = new HashMap<>();
+		Queue<Integer> queue = new LinkedList<>();
+		for (int port : silent) {
+			ln.put(port, sk.rn(port));
+		}
+		ln.put(me, sk.rn(me) - 1);
+		for (Map.Entry<Integer, Reply> entry : replies.entrySet()) {
+			int port = entry.getKey();
+			Reply reply = entry.getValue();
+			sk.noteRequest(port, reply.incarnation, reply.sequenceNumber, 0);
+			ln.put(port, reply.waiting ? sk.rn(port) - 1 : sk.rn(port));
+			if (reply.waiting) {
+				queue.add(port);
+			}
+		}
+		ln.values().removeIf(granted -> granted <= 0);
+		// svaki grant je za pokretanje čije zahteve znamo
+		Map<Integer, Long> li = new HashMap<>();
+		for (int port : ln.keySet()) {
+			li.put(port, sk.RI.get(port));
+		}
+
+		AppConfig.timestampedStandardPrint("SK: Nobody has the token" + (silent.isEmpty() ? "" : ", " + silent + " didn't answer")
+				+ ". Making a new one, epoch " + epoch);
+		sk.remakeToken(epoch, ln, li, queue);
+		sk.stats.recordRegeneration();
+		sk.changed.signalAll();
+	}
+}
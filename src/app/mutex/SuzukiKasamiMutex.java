@@ -0,0 +1,582 @@
+package app.mutex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import app.AppConfig;
+import app.ServentInfo;
+import servent.message.Message;
+import servent.message.SKTokenMessage;
+import servent.message.SKTokenProbeMessage;
+import servent.message.SKTokenProbeReplyMessage;
+import servent.message.SKTokenRequestMessage;
+
+/**
+ * Suzuki-Kasami: a servent that wants the token asks every other servent for it, and whoever has it
+ * passes it on once it is done. That is N messages per entry, N - 1 requests and the token.
+ *
+ * The servents are whoever is in the chord ring right now, named by their listener port, not the ones
+ * in <code>servent_list.properties</code>. Request numbers (RN) and the token's grant numbers (LN) are
+ * kept only for servents we have heard of, a missing one counts as 0, so a servent that joins costs
+ * nothing until it asks, and one that leaves the ring is dropped from both. The token is made by the
+ * first servent in the system.
+ *
+ * Every servent keeps the LN of the last token it had, and a request says which version of the token that
+ * was, so the token goes to it with only the grants that changed since, see {@link SKTokenMessage}.
+ *
+ * A servent started again on the same port counts its requests from 1 again. Its requests and grants
+ * carry the time it was started, its incarnation, so a request from a newer incarnation starts RN over,
+ * one from an older is dropped, and the token's grant is reset to 0 only when it is for an incarnation
+ * older than the requests we heard - never lowered because a request looks behind.
+ *
+ * Critical sections on one servent share a single request, and run one after another once the token
+ * comes, see {@link #releaseCSEntry(long)}. A lost token is made anew by {@link SKTokenRecovery}.
+ */
+public class SuzukiKasamiMutex extends TokenMutex {
+
+	/** Waiting this long for the token, we suspect its holder is dead and check whether the token needs making anew */
+	public static final long DEFAULT_TOKEN_TIMEOUT_MILLIS = 60_000;
+	/** While others wait for the token, this many of our critical sections can still run in one visit before it goes on */
+	public static final int DEFAULT_BATCH_BUDGET = 8;
+
+	private final Supplier<List<ServentInfo>> members;
+	private final long tokenTimeoutMillis;
+	private final int batchBudget;
+
+	final long incarnation;                            // When this servent was started, see the class comment
+	final Map<Integer, Integer> RN = new HashMap<>(); // port -> highest request number we heard from it
+	final Map<Integer, Long> RI = new HashMap<>();    // port -> incarnation its RN is from, kept after it leaves
+	boolean hasToken;
+	boolean waitingForToken;
+
+	// Token's data (Q_token only valid if hasToken is true, LN_token is the last one we had)
+	Map<Integer, Integer> LN_token = new HashMap<>(); // port -> request number it was last granted
+	Map<Integer, Long> LI_token = new HashMap<>();    // port -> incarnation that grant was for
+	Queue<Integer> Q_token = new LinkedList<>();      // Queue of ports waiting for the token
+	int tokenEpoch;                                   // Goes up each time a lost token is made anew, see SKTokenRecovery
+	int tokenVersion;                                 // Goes up each time the token is sent, 0 if we never had it
+
+	// port -> verzija tokena u kojoj se njegov LN poslednji put promenio, ili kasnija; ostaje i kad je LN pao na 0
+	private final Map<Integer, Integer> lnChangedAt = new HashMap<>();
+	// LN unosi koje smo promenili dok držimo token, dobijaju verziju kad ga pošaljemo
+	private final Set<Integer> changedHere = new HashSet<>();
+	// port -> verzija tokena koju ima, po njegovom poslednjem zahtevu; 0 ili bez unosa - šaljemo ceo LN
+	private final Map<Integer, Integer> seenVersion = new HashMap<>();
+
+	// ring nam javlja odlaske bez našeg lock-a, pa ih ovde preuzimamo kad ga uzmemo
+	private final Queue<Integer> justLeft = new ConcurrentLinkedQueue<>();
+	// portovi koji su napustili ring, da ih izbacimo i iz tokena koji stigne posle
+	private final Set<Integer> gone = new HashSet<>();
+
+	// lokalni red: svi pozivi requestCSEntry na ovom servent-u čekaju na jedan zahtev za token, i ulaze po redu
+	private final Deque<Object> localWaiters = new ArrayDeque<>();
+	// kritične sekcije u ovoj poseti tokena
+	private int visitEntries;
+	private SKTokenRecovery tokenRecovery;
+
+	/**
+	 * @param members the other servents, as the ring sees them right now
+	 */
+	public SuzukiKasamiMutex(int myPort, Supplier<List<ServentInfo>> members, Consumer<Message> transport,
+							 long leaseMillis, long tokenTimeoutMillis, int batchBudget) {
+		super(myPort, transport, leaseMillis);
+		this.members = members;
+		this.tokenTimeoutMillis = tokenTimeoutMillis;
+		this.batchBudget = batchBudget;
+		this.incarnation = System.currentTimeMillis();
+		RI.put(myPort, incarnation);
+	}
+
+	@Override
+	public void firstInSystem() {
+		lock.lock();
+		try {
+			hasToken = true;
+			AppConfig.timestampedStandardPrint("SK: Servent " + myId + " is the first, making the Suzuki-Kasami token.");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The servent on this port is out of the ring. Doesn't wait for our lock - see {@link app.ChordState#addLeaveListener}.
+	 */
+	public void memberLeft(int port) {
+		justLeft.add(port);
+	}
+
+	/**
+	 * @return the ports of everyone else in the ring
+	 */
+	List<Integer> memberPorts() {
+		List<Integer> ports = new ArrayList<>();
+		for (ServentInfo member : members.get()) {
+			ports.add(member.getListenerPort());
+		}
+		return ports;
+	}
+
+	int rn(int port) {
+		return RN.getOrDefault(port, 0);
+	}
+
+	int ln(int port) {
+		return LN_token.getOrDefault(port, 0);
+	}
+
+	private void setLn(int port, int granted, long grantedIncarnation) {
+		putLn(port, granted, grantedIncarnation);
+		changedHere.add(port);
+	}
+
+	private void putLn(int port, int granted, long grantedIncarnation) {
+		if (granted > 0) {
+			LN_token.put(port, granted);
+			LI_token.put(port, grantedIncarnation);
+		} else {
+			LN_token.remove(port);
+			LI_token.remove(port);
+		}
+	}
+
+	/**
+	 * Whether the request we heard last from this port is the next one to be granted. Its grant in the token
+	 * is reset to 0 here if it is for an older incarnation than that request - the servent was started again.
+	 * A grant for a newer incarnation means we missed its new requests, so what we heard is old.
+	 * Assumes lock is held, and that we have the token.
+	 */
+	private boolean isNext(int port) {
+		long requested = RI.getOrDefault(port, 0L);
+		long granted = LI_token.getOrDefault(port, 0L);
+		if (granted > requested) {
+			return false;
+		}
+		if (granted < requested && ln(port) > 0) {
+			AppConfig.timestampedStandardPrint("SK: Servent " + port + " was started again, its grant " + ln(port)
+					+ " was for the run before");
+			setLn(port, 0, 0);
+		}
+		return rn(port) == ln(port) + 1;
+	}
+
+	/**
+	 * Forgets servents that left the ring: their requests, and, while we hold the token, their grants
+	 * and place in the queue. A dropped grant is a change like any other, and goes to the next holder
+	 * as a 0. Assumes lock is held.
+	 */
+	private void forgetGone() {
+		Integer port;
+		while ((port = justLeft.poll()) != null) {
+			if (port != myId && gone.add(port)) {
+				RN.remove(port);
+				seenVersion.remove(port);
+				AppConfig.timestampedStandardPrint("SK: Servent " + port + " left the ring, forgetting its requests");
+			}
+		}
+		if (hasToken) {
+			for (int left : gone) {
+				// grant novijeg pokretanja ostaje, taj servent je ponovo u ringu
+				if (ln(left) > 0 && LI_token.get(left) <= RI.getOrDefault(left, Long.MAX_VALUE)) {
+					setLn(left, 0, 0); // ide dalje kao 0, da ga izbace i ostali
+				}
+			}
+			Q_token.removeAll(gone);
+		}
+	}
+
+	/**
+	 * Waits for the token and enters the critical section. Callers on this servent share one token request:
+	 * whoever comes while it is out just queues behind it, and they all enter one after another once the token
+	 * is here, see {@link #releaseCSEntry(long)}.
+	 */
+	@Override
+	public long requestCSEntry() throws InterruptedException {
+		lock.lock();
+		try {
+			long requestedAt = System.currentTimeMillis();
+			Object waiter = new Object();
+			localWaiters.add(waiter);
+			if (!hasToken && !waitingForToken) {
+				requestToken();
+			} else if (!hasToken) {
+				stats.recordCoalescedRequest();
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId + " already asked for the token, "
+						+ localWaiters.size() + " sections wait for it");
+			}
+
+			try {
+				while (!hasToken || inCriticalSection || localWaiters.peek() != waiter) {
+					if (!hasToken) {
+						AppConfig.timestampedStandardPrint("SK: Servent " + myId + " waiting for token...");
+					}
+					if (!changed.await(tokenTimeoutMillis, TimeUnit.MILLISECONDS) && !hasToken
+							&& waitingForToken && (tokenRecovery == null || tokenRecovery.isDone())) {
+						tokenRecovery = new SKTokenRecovery(this, tokenEpoch + 1);
+						tokenRecovery.start(System.currentTimeMillis() - requestedAt);
+					}
+				}
+			} catch (InterruptedException e) {
+				localWaiters.remove(waiter);
+				changed.signalAll(); // možda smo bili na redu
+				throw e;
+			}
+
+			localWaiters.poll();
+			waitingForToken = false;
+			visitEntries++;
+			long ticket = enterCS(requestedAt);
+			AppConfig.timestampedStandardPrint("SK: Servent " + myId + " entering CS, section " + visitEntries + " of this token visit");
+			return ticket;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Asks everyone for the token on behalf of all our waiting sections. Assumes lock is held.
+	 */
+	private void requestToken() {
+		RN.put(myId, rn(myId) + 1);
+		waitingForToken = true;
+		AppConfig.timestampedStandardPrint("SK: Servent " + myId + " requesting token with RN[" + myId + "]=" + rn(myId));
+		broadcastTokenRequest(rn(myId));
+	}
+
+	/**
+	 * Whether the token is needed here - a section of ours holds it, or waits to get it next.
+	 * Somebody else's request then waits for {@link #releaseCSEntry(long)} to queue it. Assumes lock is held.
+	 */
+	private boolean isTokenInUse() {
+		return inCriticalSection || !localWaiters.isEmpty();
+	}
+
+	/**
+	 * Leaves the critical section. If more of our sections wait, the next one gets the token right away,
+	 * without asking anyone - unless others wait for it too and this visit already ran
+	 * <code>sk.batch_budget</code> sections. Then the token goes on, and we ask for it again at once.
+	 */
+	@Override
+	public void releaseCSEntry(long ticket) {
+		lock.lock();
+		try {
+			if (!leaveCS(ticket)) {
+				// Dupli release, ili je lease već istekao i token je otišao dalje
+				return;
+			}
+			if (!hasToken) {
+				// This case should ideally not happen if logic is correct
+				AppConfig.timestampedErrorPrint("SK: ERROR! Servent " + myId + " was in CS without token.");
+				return;
+			}
+
+			forgetGone();
+			setLn(myId, rn(myId), incarnation);
+			AppConfig.timestampedStandardPrint("SK: Servent " + myId + " released CS. LN_token[" + myId + "]=" + ln(myId));
+
+			for (Map.Entry<Integer, Integer> request : RN.entrySet()) {
+				int j = request.getKey();
+				if (j != myId && !Q_token.contains(j) && isNext(j)) {
+					Q_token.add(j);
+					AppConfig.timestampedStandardPrint("SK: Added servent " + j + " to token queue. Q_token: " + Q_token);
+				}
+			}
+
+			if (!localWaiters.isEmpty() && (Q_token.isEmpty() || visitEntries < batchBudget)) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId + " keeps token for the next of its "
+						+ localWaiters.size() + " waiting sections. Q_token: " + Q_token);
+				changed.signalAll();
+			} else if (!Q_token.isEmpty()) {
+				int targetPort = Q_token.poll();
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId + " sending token to servent " + targetPort + ". Q_token after poll: " + Q_token);
+				sendToken(targetPort); // sendToken will set hasToken = false
+				if (!localWaiters.isEmpty()) {
+					requestToken();
+				}
+			} else {
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId + " keeps token, queue is empty.");
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void broadcastTokenRequest(int sequenceNumber) {
+		// Assumes lock is held by the caller (requestToken)
+		List<Integer> targets = memberPorts();
+		AppConfig.timestampedStandardPrint("SK: Servent " + myId + " broadcasting TOKEN_REQUEST with seq_num " + sequenceNumber
+				+ " to " + targets.size() + " servents");
+		for (int target : targets) {
+			send(new SKTokenRequestMessage(
+					myId,
+					target,
+					myId, // The port of the servent making the request
+					incarnation,
+					sequenceNumber,
+					tokenEpoch,
+					tokenVersion // The token we last had, the one we will get goes over it
+			));
+		}
+	}
+
+	void sendToken(int targetPort) {
+		// Assumes lock is held by the caller (releaseCSEntry, onTokenRequest, passTokenOnShutdown)
+		if (!hasToken) {
+			AppConfig.timestampedErrorPrint("SK: ERROR! Servent " + myId + " tried to send token but doesn't have it.");
+			return;
+		}
+		tokenVersion++;
+		for (int port : changedHere) {
+			lnChangedAt.put(port, tokenVersion);
+		}
+		changedHere.clear();
+
+		// samo ono što se promenilo od verzije koju primalac ima, ili ceo LN ako je ne znamo
+		int baseVersion = seenVersion.getOrDefault(targetPort, 0);
+		Set<Integer> ports = new TreeSet<>();
+		if (baseVersion == 0) {
+			ports.addAll(LN_token.keySet());
+		} else {
+			for (Map.Entry<Integer, Integer> change : lnChangedAt.entrySet()) {
+				if (change.getValue() > baseVersion) {
+					ports.add(change.getKey());
+				}
+			}
+		}
+		int[] sentPorts = new int[ports.size()];
+		int[] grants = new int[ports.size()];
+		long[] incarnations = new long[ports.size()];
+		int i = 0;
+		for (int port : ports) {
+			sentPorts[i] = port;
+			incarnations[i] = LI_token.getOrDefault(port, 0L);
+			grants[i++] = ln(port);
+		}
+		int[] queue = new int[Q_token.size()];
+		i = 0;
+		for (int port : Q_token) {
+			queue[i++] = port;
+		}
+
+		send(new SKTokenMessage(myId, targetPort, tokenEpoch, tokenVersion, baseVersion, sentPorts, grants, incarnations, queue));
+		seenVersion.put(targetPort, tokenVersion);
+		AppConfig.timestampedStandardPrint("SK: Sent TOKEN v" + tokenVersion + " from servent " + myId + " to servent " + targetPort
+				+ " with " + sentPorts.length + " of " + LN_token.size() + " LN entries" + (baseVersion == 0 ? "" : ", changed since v" + baseVersion)
+				+ ". Q: " + Q_token);
+		hasToken = false;
+		if (visitEntries > 0) {
+			stats.recordVisit(visitEntries);
+			visitEntries = 0;
+		}
+		// Q_token is now part of the sent token, LN_token stays as the base the next token goes over.
+		Q_token.clear();
+	}
+
+	@Override
+	public void handle(Message message) {
+		switch (message.getMessageType()) {
+			case SK_TOKEN_REQUEST:
+				SKTokenRequestMessage request = (SKTokenRequestMessage) message;
+				onTokenRequest(request.getRequesterId(), request.getIncarnation(), request.getSequenceNumber(),
+						request.getSeenEpoch(), request.getSeenVersion());
+				break;
+			case SK_TOKEN:
+				onToken((SKTokenMessage) message);
+				break;
+			case SK_TOKEN_PROBE:
+				SKTokenProbeMessage probe = (SKTokenProbeMessage) message;
+				onTokenProbe(probe.getSenderPort(), probe.getRequesterId(), probe.getIncarnation(), probe.getSequenceNumber(),
+						probe.getEpoch());
+				break;
+			case SK_TOKEN_PROBE_REPLY:
+				SKTokenProbeReplyMessage reply = (SKTokenProbeReplyMessage) message;
+				onTokenProbeReply(reply.getServentId(), reply.getEpoch(), reply.hasToken(), reply.isWaiting(),
+						reply.getIncarnation(), reply.getSequenceNumber());
+				break;
+			default:
+				AppConfig.timestampedErrorPrint("SK: got " + message.getMessageType() + ", which is not a Suzuki-Kasami message."
+						+ " Do all servents have the same mutex?");
+		}
+	}
+
+	/**
+	 * Takes in a request number, and the version of the token the requester has - 0 when we don't know it,
+	 * the token then goes to it whole. A request from a newer incarnation than we heard of starts RN over,
+	 * even for a servent we took as gone. One from an older incarnation, or from before its servent left,
+	 * is old news and dropped.
+	 */
+	void noteRequest(int requesterPort, long requesterIncarnation, int sequenceNum, int seenVersion) {
+		forgetGone();
+		Long known = RI.get(requesterPort);
+		if (known == null || requesterIncarnation > known) {
+			if (known != null) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + requesterPort + " was started again, its requests count from "
+						+ sequenceNum);
+			}
+			gone.remove(requesterPort);
+			RI.put(requesterPort, requesterIncarnation);
+			RN.put(requesterPort, sequenceNum);
+			this.seenVersion.put(requesterPort, seenVersion);
+		} else if (requesterIncarnation == known && !gone.contains(requesterPort) && sequenceNum > rn(requesterPort)) {
+			RN.put(requesterPort, sequenceNum);
+			this.seenVersion.put(requesterPort, seenVersion);
+		}
+	}
+
+	private void onTokenRequest(int requestingPort, long requestingIncarnation, int sequenceNum, int seenEpoch, int seenVersion) {
+		lock.lock();
+		try {
+			AppConfig.timestampedStandardPrint("SK: Servent " + myId +
+					" received TOKEN_REQUEST from servent " + requestingPort +
+					" with SN=" + sequenceNum + ". Current RN: " + RN);
+
+			noteRequest(requestingPort, requestingIncarnation, sequenceNum, seenEpoch == tokenEpoch ? seenVersion : 0);
+			AppConfig.timestampedStandardPrint("SK: Updated RN[" + requestingPort + "] to " + rn(requestingPort));
+
+			if (hasToken && !isTokenInUse() && isNext(requestingPort)) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId +
+						" has token, doesn't need it, and request is next. Sending token to " + requestingPort);
+				sendToken(requestingPort);
+			} else {
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId +
+						" will not send token now. hasToken=" + hasToken +
+						", inCS=" + inCriticalSection +
+						", RN[" + requestingPort + "]=" + rn(requestingPort) +
+						", LN_token[" + requestingPort + "]=" + ln(requestingPort));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onToken(SKTokenMessage tokenMsg) {
+		lock.lock();
+		try {
+			if (tokenMsg.getEpoch() < tokenEpoch) {
+				// Token je u međuvremenu napravljen ponovo - ovaj je zastareo
+				AppConfig.timestampedErrorPrint("SK: Dropping a token from epoch " + tokenMsg.getEpoch()
+						+ ", the current one is " + tokenEpoch);
+				return;
+			}
+			if (tokenMsg.getEpoch() > tokenEpoch) {
+				seenVersion.clear(); // verzije starog tokena ne važe za novi
+			}
+			int[] ports = tokenMsg.getPorts();
+			int[] grants = tokenMsg.getGrants();
+			long[] incarnations = tokenMsg.getIncarnations();
+			if (tokenMsg.getBaseVersion() == 0) {
+				LN_token.clear();
+				LI_token.clear();
+				lnChangedAt.clear();
+			} else if (tokenMsg.getBaseVersion() != tokenVersion || tokenMsg.getEpoch() != tokenEpoch) {
+				AppConfig.timestampedErrorPrint("SK: Token has LN changes since v" + tokenMsg.getBaseVersion()
+						+ ", but we last had v" + tokenVersion + " of epoch " + tokenEpoch + ". Using them anyway.");
+			}
+			for (int i = 0; i < ports.length; i++) {
+				putLn(ports[i], grants[i], incarnations[i]);
+				lnChangedAt.put(ports[i], tokenMsg.getVersion());
+			}
+			tokenEpoch = tokenMsg.getEpoch();
+			tokenVersion = tokenMsg.getVersion();
+			hasToken = true;
+			Q_token = new LinkedList<>();
+			for (int port : tokenMsg.getQueue()) {
+				Q_token.add(port);
+			}
+			forgetGone();
+
+			AppConfig.timestampedStandardPrint("SK: Servent " + myId + " received TOKEN v" + tokenVersion + " with "
+					+ ports.length + " of " + LN_token.size() + " LN entries. Q_token: " + Q_token);
+
+			if (waitingForToken) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + myId + " was waiting. Signaling token arrival.");
+				changed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Someone has waited too long for the token. If we have it, we say so, and hand it over if its request
+	 * is next - the request may never have reached us.
+	 */
+	private void onTokenProbe(int senderPort, int requesterPort, long requesterIncarnation, int sequenceNumber, int epoch) {
+		lock.lock();
+		try {
+			noteRequest(requesterPort, requesterIncarnation, sequenceNumber, 0);
+			send(new SKTokenProbeReplyMessage(myId, senderPort,
+					myId, epoch, hasToken, waitingForToken, incarnation, rn(myId)));
+			if (hasToken && !isTokenInUse() && isNext(requesterPort)) {
+				AppConfig.timestampedStandardPrint("SK: Servent " + requesterPort + " is still waiting. Sending token to " + requesterPort);
+				sendToken(requesterPort);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onTokenProbeReply(int serventPort, int epoch, boolean replierHasToken, boolean waiting,
+								   long replierIncarnation, int sequenceNumber) {
+		lock.lock();
+		try {
+			if (tokenRecovery != null && tokenRecovery.getEpoch() == epoch) {
+				tokenRecovery.onReply(serventPort, replierHasToken, waiting, replierIncarnation, sequenceNumber);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts in a token made by {@link SKTokenRecovery}. Nobody has a version of it yet, so it goes everywhere whole at first.
+	 */
+	void remakeToken(int epoch, Map<Integer, Integer> ln, Map<Integer, Long> li, Queue<Integer> queue) {
+		tokenEpoch = epoch;
+		tokenVersion = 0;
+		LN_token = ln;
+		LI_token = li;
+		Q_token = queue;
+		lnChangedAt.clear();
+		seenVersion.clear();
+		changedHere.addAll(ln.keySet());
+		hasToken = true;
+	}
+
+	@Override
+	public void passTokenOnShutdown() {
+		lock.lock();
+		try {
+			if (hasToken) {
+				forgetGone();
+				if (!Q_token.isEmpty()) {
+					int nextHolder = Q_token.poll();
+					AppConfig.timestampedStandardPrint("SK: Passing SK token to servent " + nextHolder + " on shutdown.");
+					sendToken(nextHolder);
+				} else {
+					AppConfig.timestampedStandardPrint("SK: Holding SK token on shutdown, but queue is empty. Token remains with servent " + myId);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SK";
+	}
+}
@@ -0,0 +1,119 @@
+package app.mutex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import app.AppConfig;
+import app.ServentExecutors;
+import servent.message.Message;
+
+/**
+ * What both token algorithms share: how messages go out, and the lease on the critical section - a section
+ * is ended for its holder after <code>leaseMillis</code>, so a lost response can't keep the token forever,
+ * unless the holder renews the lease.
+ *
+ * All the state of a subclass is guarded by {@link #lock}, and waiting sections wait on {@link #changed}.
+ */
+abstract class TokenMutex implements DistributedMutex {
+
+	protected final int myId;
+	private final Consumer<Message> transport;
+	private final long leaseMillis;
+	protected final MutexStats stats = new MutexStats();
+
+	protected final Lock lock = new ReentrantLock();
+	protected final Condition changed = lock.newCondition();
+
+	protected boolean inCriticalSection;
+	private long enteredAt;
+	private long leaseEnds;
+	// broj ulazaka u kritičnu sekciju, da istek lease-a zna da li je to još ista sekcija
+	private long entries;
+
+	TokenMutex(int myId, Consumer<Message> transport, long leaseMillis) {
+		this.myId = myId;
+		this.transport = transport;
+		this.leaseMillis = leaseMillis;
+	}
+
+	@Override
+	public MutexStats getStats() {
+		return stats;
+	}
+
+	protected void send(Message message) {
+		stats.recordMessage();
+		transport.accept(message);
+	}
+
+	/**
+	 * Starts the lease on the critical section. Called with {@link #lock} held.
+	 *
+	 * @return the ticket of the section, see {@link DistributedMutex#releaseCSEntry(long)}
+	 */
+	protected long enterCS(long requestedAt) {
+		inCriticalSection = true;
+		enteredAt = System.currentTimeMillis();
+		stats.recordWait(enteredAt - requestedAt);
+		leaseEnds = enteredAt + leaseMillis;
+		long entry = ++entries;
+		ServentExecutors.delayScheduler().schedule(() -> expireLease(entry), leaseMillis, TimeUnit.MILLISECONDS);
+		return entry;
+	}
+
+	/**
+	 * Ends the critical section the ticket is for. Called with {@link #lock} held.
+	 *
+	 * @return false if that section isn't the one we are in - a double release, or its lease ran out first
+	 */
+	protected boolean leaveCS(long ticket) {
+		if (!inCriticalSection) {
+			AppConfig.timestampedErrorPrint(this + ": Servent " + myId + " tried to release CS but was not marked as in CS.");
+			return false;
+		}
+		if (ticket != entries) {
+			AppConfig.timestampedErrorPrint(this + ": Servent " + myId + " tried to release section " + ticket
+					+ ", which already ended. Section " + entries + " holds the token now.");
+			return false;
+		}
+		inCriticalSection = false;
+		stats.recordHold(System.currentTimeMillis() - enteredAt);
+		return true;
+	}
+
+	@Override
+	public void renewLease(long ticket) {
+		lock.lock();
+		try {
+			if (inCriticalSection && entries == ticket) {
+				leaseEnds = System.currentTimeMillis() + leaseMillis;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void expireLease(long entry) {
+		lock.lock();
+		try {
+			if (!inCriticalSection || entries != entry) {
+				return;
+			}
+			long left = leaseEnds - System.currentTimeMillis();
+			if (left > 0) {
+				// obnovljen u međuvremenu
+				ServentExecutors.delayScheduler().schedule(() -> expireLease(entry), left, TimeUnit.MILLISECONDS);
+				return;
+			}
+			AppConfig.timestampedErrorPrint(this + ": Servent " + myId + " held the token for over " + leaseMillis
+					+ " ms, releasing it");
+			stats.recordExpiredLease();
+			releaseCSEntry(entry);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
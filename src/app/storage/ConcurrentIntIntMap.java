@@ -0,0 +1,254 @@
+package app.storage;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An int to int hash map for the DHT values, safe for concurrent use.
+ *
+ * Keys are spread over {@link #STRIPES} independently locked stripes, so handlers working on
+ * different keys rarely wait on each other, and reads don't take a lock at all unless they race a write. Each stripe is an open addressing table with linear
+ * probing, kept in three parallel arrays - an entry costs 9 bytes plus free slots, where a boxed
+ * <code>HashMap&lt;Integer, Integer&gt;</code> entry costs a node and two Integers, around 60 bytes.
+ * Removing shifts the following entries back instead of leaving tombstones, so lookups
+ * don't slow down as keys come and go.
+ */
+public class ConcurrentIntIntMap implements KeyValueStore {
+
+	private static final int STRIPES = 64;
+	private static final int STRIPE_SHIFT = 26; // top 6 bits of the hash pick the stripe
+	private static final int INITIAL_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.7f;
+
+	/**
+	 * The arrays of one stripe. Replaced as a whole when the stripe grows, so a reader
+	 * always sees arrays of the same length.
+	 */
+	private static final class Table {
+
+		final int[] keys;
+		final int[] values;
+		final boolean[] used;
+
+		Table(int capacity) {
+			keys = new int[capacity];
+			values = new int[capacity];
+			used = new boolean[capacity];
+		}
+
+		/**
+		 * @return the slot holding the key, or the free slot where it would go
+		 */
+		int slotOf(int key) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+	}
+
+	/**
+	 * Writers take the write lock. Readers first try without any lock and only fall back
+	 * to the read lock if a writer got in while they were looking.
+	 */
+	private static final class Stripe {
+
+		private final StampedLock lock = new StampedLock();
+		private Table table = new Table(INITIAL_CAPACITY);
+		private int size;
+
+		void put(int key, int value) {
+			long stamp = lock.writeLock();
+			try {
+				Table t = table;
+				int slot = t.slotOf(key);
+				if (t.used[slot]) {
+					t.values[slot] = value;
+					return;
+				}
+
+				t.keys[slot] = key;
+				t.values[slot] = value;
+				t.used[slot] = true;
+				size++;
+				if (size > t.keys.length * LOAD_FACTOR) {
+					resize();
+				}
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		int get(int key, int defaultValue) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				Table t = table;
+				int slot = t.slotOf(key);
+				int value = t.used[slot] ? t.values[slot] : defaultValue;
+				if (lock.validate(stamp)) {
+					return value;
+				}
+			}
+
+			stamp = lock.readLock();
+			try {
+				Table t = table;
+				int slot = t.slotOf(key);
+				return t.used[slot] ? t.values[slot] : defaultValue;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		boolean containsKey(int key) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				Table t = table;
+				boolean found = t.used[t.slotOf(key)];
+				if (lock.validate(stamp)) {
+					return found;
+				}
+			}
+
+			stamp = lock.readLock();
+			try {
+				Table t = table;
+				return t.used[t.slotOf(key)];
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		boolean remove(int key) {
+			long stamp = lock.writeLock();
+			try {
+				Table t = table;
+				int slot = t.slotOf(key);
+				if (!t.used[slot]) {
+					return false;
+				}
+				t.used[slot] = false;
+				size--;
+
+				// Shift back the entries after the hole that would not be found any more otherwise.
+				int mask = t.keys.length - 1;
+				int hole = slot;
+				int next = (hole + 1) & mask;
+				while (t.used[next]) {
+					int home = hash(t.keys[next]) & mask;
+					boolean canMove = hole <= next
+							? (home <= hole || home > next)
+							: (home <= hole && home > next);
+					if (canMove) {
+						t.keys[hole] = t.keys[next];
+						t.values[hole] = t.values[next];
+						t.used[hole] = true;
+						t.used[next] = false;
+						hole = next;
+					}
+					next = (next + 1) & mask;
+				}
+				return true;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		int size() {
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		void forEach(EntryConsumer consumer) {
+			long stamp = lock.readLock();
+			try {
+				Table t = table;
+				for (int i = 0; i < t.keys.length; i++) {
+					if (t.used[i]) {
+						consumer.accept(t.keys[i], t.values[i]);
+					}
+				}
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private void resize() {
+			Table old = table;
+			Table grown = new Table(old.keys.length * 2);
+			for (int i = 0; i < old.keys.length; i++) {
+				if (old.used[i]) {
+					int slot = grown.slotOf(old.keys[i]);
+					grown.keys[slot] = old.keys[i];
+					grown.values[slot] = old.values[i];
+					grown.used[slot] = true;
+				}
+			}
+			table = grown;
+		}
+	}
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	public ConcurrentIntIntMap() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * DHT keys are small consecutive ints, so they are mixed before use.
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private Stripe stripeFor(int key) {
+		return stripes[hash(key) >>> STRIPE_SHIFT];
+	}
+
+	@Override
+	public void put(int key, int value) {
+		stripeFor(key).put(key, value);
+	}
+
+	@Override
+	public int get(int key, int defaultValue) {
+		return stripeFor(key).get(key, defaultValue);
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return stripeFor(key).containsKey(key);
+	}
+
+	@Override
+	public boolean remove(int key) {
+		return stripeFor(key).remove(key);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Goes over one stripe at a time, holding its read lock, so the consumer must not write back into this map.
+	 */
+	@Override
+	public void forEach(EntryConsumer consumer) {
+		for (Stripe stripe : stripes) {
+			stripe.forEach(consumer);
+		}
+	}
+}
@@ -0,0 +1,540 @@
+package app.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import app.AppConfig;
+
+/**
+ * Makes an in-memory {@link KeyValueStore} survive restarts with a write-ahead log and snapshots.
+ *
+ * Every put and remove is applied in memory and appended to the log, and returns once the log
+ * record is on disk. Records are written by a single committer thread: while it waits on one fsync,
+ * new records pile up and all go out with the next one, so many writers share each fsync (group commit).
+ *
+ * After {@link #snapshotEvery} records the committer moves on to a new log segment, and a snapshot
+ * of the whole map is written in the background. Once the snapshot is safely renamed into place,
+ * the segments before it are deleted. On startup we load the newest snapshot and replay the segments
+ * that came after it. Replaying is safe even if the snapshot already has some of those writes,
+ * since every record just sets or clears one key.
+ *
+ * Files in the directory:
+ * <ul>
+ * <li><code>wal-[gen].log</code> - records of 13 bytes: op, key, value, CRC32 of the first 9</li>
+ * <li><code>snapshot-[gen].snap</code> - key/value pairs, then the count, a CRC32 and an end marker.
+ * It holds everything logged before <code>wal-[gen].log</code>.</li>
+ * </ul>
+ */
+public class DurableKeyValueStore implements KeyValueStore {
+
+	private static final byte OP_PUT = 1;
+	private static final byte OP_REMOVE = 2;
+	private static final int RECORD_SIZE = 13;
+	private static final int SNAPSHOT_END = 0x534E4150; // "SNAP"
+	private static final int SNAPSHOT_TRAILER_SIZE = 20;
+
+	private final KeyValueStore memory;
+	private final File directory;
+	private final long groupCommitMillis;
+	private final long snapshotEvery;
+
+	// Guards the records waiting to be written. The committer waits on it for new records.
+	private final Object appendLock = new Object();
+	private final CRC32 recordCrc = new CRC32();
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+	private long appendedCount;
+	private long recordsSinceSnapshot;
+	private boolean closed;
+
+	// Writers wait on this one until their record is on disk
+	private final Object durableLock = new Object();
+	private long durableCount;
+	private volatile IOException failure;
+
+	// Only touched by the committer thread once we are open
+	private FileChannel log;
+	private long logGeneration;
+
+	private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+	private final Thread committer;
+
+	/**
+	 * Recovers whatever is in the directory into <code>memory</code>, then starts logging.
+	 *
+	 * @param groupCommitMillis how long the committer waits for more records before an fsync, 0 for not at all
+	 * @param snapshotEvery how many records go into the log before we take a snapshot
+	 */
+	public DurableKeyValueStore(KeyValueStore memory, File directory, long groupCommitMillis, long snapshotEvery)
+			throws IOException {
+		this.memory = memory;
+		this.directory = directory;
+		this.groupCommitMillis = groupCommitMillis;
+		this.snapshotEvery = snapshotEvery;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create storage directory " + directory.getAbsolutePath());
+		}
+
+		long start = System.currentTimeMillis();
+		long lastGeneration = recover();
+		AppConfig.timestampedStandardPrint("Recovered " + memory.size() + " keys from " + directory.getPath()
+				+ " in " + (System.currentTimeMillis() - start) + " ms");
+
+		logGeneration = lastGeneration + 1;
+		log = openLog(logGeneration);
+
+		committer = new Thread(this::commitLoop, "wal-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	@Override
+	public void put(int key, int value) {
+		long count;
+		synchronized (appendLock) {
+			checkWritable();
+			memory.put(key, value);
+			count = append(OP_PUT, key, value);
+		}
+		awaitDurable(count);
+	}
+
+	@Override
+	public void putAll(int[] keys, int[] values) {
+		long count;
+		synchronized (appendLock) {
+			checkWritable();
+			count = appendedCount;
+			for (int i = 0; i < keys.length; i++) {
+				memory.put(keys[i], values[i]);
+				count = append(OP_PUT, keys[i], values[i]);
+			}
+		}
+		awaitDurable(count);
+	}
+
+	@Override
+	public boolean remove(int key) {
+		long count;
+		synchronized (appendLock) {
+			checkWritable();
+			if (!memory.remove(key)) {
+				return false;
+			}
+			count = append(OP_REMOVE, key, 0);
+		}
+		awaitDurable(count);
+		return true;
+	}
+
+	@Override
+	public void removeAll(int[] keys) {
+		long count;
+		synchronized (appendLock) {
+			checkWritable();
+			count = appendedCount;
+			for (int key : keys) {
+				if (memory.remove(key)) {
+					count = append(OP_REMOVE, key, 0);
+				}
+			}
+		}
+		awaitDurable(count);
+	}
+
+	@Override
+	public int get(int key, int defaultValue) {
+		return memory.get(key, defaultValue);
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return memory.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return memory.size();
+	}
+
+	@Override
+	public void forEach(EntryConsumer consumer) {
+		memory.forEach(consumer);
+	}
+
+	/**
+	 * Waits for everything appended so far to reach the disk, then stops the committer.
+	 */
+	@Override
+	public void close() {
+		synchronized (appendLock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			appendLock.notifyAll();
+		}
+		try {
+			committer.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			log.close();
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't close the write-ahead log: " + e.getMessage());
+		}
+	}
+
+	private void checkWritable() {
+		if (closed) {
+			throw new IllegalStateException("Store is closed");
+		}
+		if (failure != null) {
+			throw new UncheckedIOException("Write-ahead log failed", failure);
+		}
+	}
+
+	/**
+	 * Called with the append lock held.
+	 *
+	 * @return how many records have been appended, this one included
+	 */
+	private long append(byte op, int key, int value) {
+		if (pending.remaining() < RECORD_SIZE) {
+			ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+
+		int start = pending.position();
+		pending.put(op).putInt(key).putInt(value);
+		recordCrc.reset();
+		recordCrc.update(pending.array(), start, RECORD_SIZE - 4);
+		pending.putInt((int) recordCrc.getValue());
+
+		if (start == 0) {
+			appendLock.notifyAll();
+		}
+		return ++appendedCount;
+	}
+
+	private void awaitDurable(long count) {
+		synchronized (durableLock) {
+			while (durableCount < count && failure == null) {
+				try {
+					durableLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (durableCount < count) {
+				throw new UncheckedIOException("Write-ahead log failed", failure);
+			}
+		}
+	}
+
+	private void commitLoop() {
+		ByteBuffer spare = ByteBuffer.allocate(pending.capacity());
+		while (true) {
+			ByteBuffer batch;
+			long batchCount;
+			boolean rotate;
+
+			synchronized (appendLock) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						appendLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.position() == 0) {
+					return; // closed and nothing left to write
+				}
+			}
+
+			if (groupCommitMillis > 0) {
+				try {
+					Thread.sleep(groupCommitMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			synchronized (appendLock) {
+				batch = pending;
+				batchCount = appendedCount;
+				spare.clear();
+				pending = spare.capacity() >= batch.capacity() ? spare : ByteBuffer.allocate(batch.capacity());
+				recordsSinceSnapshot += batch.position() / RECORD_SIZE;
+				rotate = recordsSinceSnapshot >= snapshotEvery && !snapshotRunning.get();
+				if (rotate) {
+					recordsSinceSnapshot = 0;
+				}
+			}
+
+			try {
+				batch.flip();
+				while (batch.hasRemaining()) {
+					log.write(batch);
+				}
+				log.force(false);
+				if (rotate) {
+					log.close();
+					logGeneration++;
+					log = openLog(logGeneration);
+				}
+			} catch (IOException e) {
+				AppConfig.timestampedErrorPrint("Write-ahead log failed: " + e.getMessage());
+				synchronized (durableLock) {
+					failure = e;
+					durableLock.notifyAll();
+				}
+				return;
+			}
+
+			synchronized (durableLock) {
+				durableCount = batchCount;
+				durableLock.notifyAll();
+			}
+			spare = batch;
+
+			if (rotate) {
+				startSnapshot(logGeneration);
+			}
+		}
+	}
+
+	/**
+	 * Writes the snapshot on its own thread, so commits don't wait for it.
+	 */
+	private void startSnapshot(long generation) {
+		if (!snapshotRunning.compareAndSet(false, true)) {
+			return;
+		}
+		Thread snapshotter = new Thread(() -> {
+			try {
+				writeSnapshot(generation);
+				deleteOlderThan(generation);
+			} catch (IOException e) {
+				AppConfig.timestampedErrorPrint("Couldn't write snapshot " + generation + ": " + e.getMessage());
+			} finally {
+				snapshotRunning.set(false);
+			}
+		}, "wal-snapshot");
+		snapshotter.setDaemon(true);
+		snapshotter.start();
+	}
+
+	private void writeSnapshot(long generation) throws IOException {
+		File temp = new File(directory, "snapshot-" + generation + ".tmp");
+		CRC32 crc = new CRC32();
+		long[] count = new long[1];
+
+		try (FileOutputStream fileOut = new FileOutputStream(temp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+			byte[] entry = new byte[8];
+			IOException[] writeFailure = new IOException[1];
+			memory.forEach((key, value) -> {
+				if (writeFailure[0] != null) {
+					return;
+				}
+				ByteBuffer.wrap(entry).putInt(key).putInt(value);
+				crc.update(entry, 0, 8);
+				try {
+					out.write(entry);
+				} catch (IOException e) {
+					writeFailure[0] = e;
+				}
+				count[0]++;
+			});
+			if (writeFailure[0] != null) {
+				throw writeFailure[0];
+			}
+			out.writeLong(count[0]);
+			out.writeLong(crc.getValue());
+			out.writeInt(SNAPSHOT_END);
+			out.flush();
+			fileOut.getFD().sync();
+		}
+
+		Files.move(temp.toPath(), snapshotFile(generation).toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteOlderThan(long generation) {
+		for (long old : generations("wal-", ".log")) {
+			if (old < generation) {
+				logFile(old).delete();
+			}
+		}
+		for (long old : generations("snapshot-", ".snap")) {
+			if (old < generation) {
+				snapshotFile(old).delete();
+			}
+		}
+	}
+
+	/**
+	 * Loads the newest good snapshot and replays the log segments from its generation on.
+	 *
+	 * @return the highest generation found on disk, 0 if the directory was empty
+	 */
+	private long recover() throws IOException {
+		for (long unfinished : generations("snapshot-", ".tmp")) {
+			new File(directory, "snapshot-" + unfinished + ".tmp").delete();
+		}
+
+		List<Long> snapshots = generations("snapshot-", ".snap");
+		List<Long> logs = generations("wal-", ".log");
+		long highest = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+
+		long snapshotGeneration = 0;
+		for (int i = snapshots.size() - 1; i >= 0; i--) {
+			if (loadSnapshot(snapshots.get(i))) {
+				snapshotGeneration = snapshots.get(i);
+				break;
+			}
+			AppConfig.timestampedErrorPrint("Snapshot " + snapshots.get(i) + " is damaged, trying an older one.");
+		}
+
+		for (long generation : logs) {
+			highest = Math.max(highest, generation);
+			if (logFile(generation).length() == 0) {
+				logFile(generation).delete(); // left by a restart with no writes after it
+			} else if (generation >= snapshotGeneration) {
+				replay(generation);
+			}
+		}
+		return highest;
+	}
+
+	/**
+	 * Checks the whole file first and only then loads it, so a damaged snapshot leaves the map untouched.
+	 */
+	private boolean loadSnapshot(long generation) throws IOException {
+		File file = snapshotFile(generation);
+		long length = file.length();
+		if (length < SNAPSHOT_TRAILER_SIZE || (length - SNAPSHOT_TRAILER_SIZE) % 8 != 0) {
+			return false;
+		}
+		long entries = (length - SNAPSHOT_TRAILER_SIZE) / 8;
+		byte[] entry = new byte[8];
+
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			for (long i = 0; i < entries; i++) {
+				in.readFully(entry);
+				crc.update(entry, 0, 8);
+			}
+			if (in.readLong() != entries || in.readLong() != crc.getValue() || in.readInt() != SNAPSHOT_END) {
+				return false;
+			}
+		} catch (EOFException e) {
+			return false;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			for (long i = 0; i < entries; i++) {
+				memory.put(in.readInt(), in.readInt());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the records of one segment. A crash can leave a torn record at the end,
+	 * so we stop at the first one that is short or fails its CRC, and cut it off.
+	 */
+	private void replay(long generation) throws IOException {
+		File file = logFile(generation);
+		long goodLength = 0;
+		CRC32 crc = new CRC32();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+			boolean damaged = false;
+			while (!damaged && channel.read(buffer) > 0) {
+				buffer.flip();
+				while (buffer.remaining() >= RECORD_SIZE) {
+					int start = buffer.position();
+					crc.reset();
+					crc.update(buffer.array(), start, RECORD_SIZE - 4);
+					byte op = buffer.get();
+					int key = buffer.getInt();
+					int value = buffer.getInt();
+					int expectedCrc = buffer.getInt();
+					if (expectedCrc != (int) crc.getValue() || (op != OP_PUT && op != OP_REMOVE)) {
+						damaged = true;
+						break;
+					}
+					if (op == OP_PUT) {
+						memory.put(key, value);
+					} else {
+						memory.remove(key);
+					}
+					goodLength += RECORD_SIZE;
+				}
+				buffer.compact();
+			}
+
+			if (goodLength < channel.size()) {
+				AppConfig.timestampedErrorPrint("Cutting off " + (channel.size() - goodLength)
+						+ " bytes of a torn write at the end of " + file.getName());
+				channel.truncate(goodLength);
+			}
+		}
+	}
+
+	private FileChannel openLog(long generation) throws IOException {
+		return FileChannel.open(logFile(generation).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private File logFile(long generation) {
+		return new File(directory, "wal-" + generation + ".log");
+	}
+
+	private File snapshotFile(long generation) {
+		return new File(directory, "snapshot-" + generation + ".snap");
+	}
+
+	/**
+	 * @return the generations of the files with this prefix and suffix, lowest first
+	 */
+	private List<Long> generations(String prefix, String suffix) {
+		List<Long> generations = new ArrayList<>();
+		String[] names = directory.list();
+		if (names == null) {
+			return generations;
+		}
+		for (String name : names) {
+			if (name.startsWith(prefix) && name.endsWith(suffix)) {
+				try {
+					generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException ignored) { }
+			}
+		}
+		generations.sort(null);
+		return generations;
+	}
+}
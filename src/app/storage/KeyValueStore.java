@@ -0,0 +1,63 @@
+package app.storage;
+
+/**
+ * Where a servent keeps the DHT values it owns. Keys and values are plain ints,
+ * so implementations can store them without boxing.
+ *
+ * All implementations must be safe to use from several handler threads at once.
+ */
+public interface KeyValueStore {
+
+	/**
+	 * Gets every entry, one at a time. See {@link KeyValueStore#forEach(EntryConsumer)}.
+	 */
+	@FunctionalInterface
+	interface EntryConsumer {
+		void accept(int key, int value);
+	}
+
+	void put(int key, int value);
+
+	/**
+	 * Puts a batch of entries. Stores that wait for the disk on every put override this
+	 * to wait once for the whole batch.
+	 */
+	default void putAll(int[] keys, int[] values) {
+		for (int i = 0; i < keys.length; i++) {
+			put(keys[i], values[i]);
+		}
+	}
+
+	/**
+	 * @return the value for the key, or <code>defaultValue</code> if there is none
+	 */
+	int get(int key, int defaultValue);
+
+	boolean containsKey(int key);
+
+	/**
+	 * @return true if there was a value for the key
+	 */
+	boolean remove(int key);
+
+	/**
+	 * Removes a batch of keys, see {@link #putAll(int[], int[])}.
+	 */
+	default void removeAll(int[] keys) {
+		for (int key : keys) {
+			remove(key);
+		}
+	}
+
+	int size();
+
+	/**
+	 * Goes over the entries. Entries put or removed while this runs may or may not be seen.
+	 */
+	void forEach(EntryConsumer consumer);
+
+	/**
+	 * Releases whatever the store holds on to (files, mappings). Does nothing by default.
+	 */
+	default void close() { }
+}
@@ -0,0 +1,345 @@
+package app.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+
+import app.AppConfig;
+
+/**
+ * Keeps DHT values off the heap, in an open addressing table inside a memory mapped file.
+ * The GC never sees the entries, so a node with millions of keys doesn't get long pauses,
+ * and since the table is the file, a restarted servent just maps it again - there is nothing to replay.
+ *
+ * File layout: a {@link #HEADER_SIZE} byte header (magic, version, capacity, size, clean flag),
+ * then <code>capacity</code> slots of {@link #SLOT_SIZE} bytes: used flag, key, value.
+ * Capacity is a power of two, with linear probing and backward shift removal like {@link ConcurrentIntIntMap}.
+ * When the table gets {@link #LOAD_FACTOR} full it is copied into a file twice the size, which is
+ * then renamed over the old one.
+ *
+ * Writes go to the page cache, so a servent that gets killed keeps them. They only reach the disk
+ * for sure on {@link #close()} or when the table grows. A servent that was not closed cleanly
+ * checks the table once on open, since a removal it was doing might be half done.
+ */
+public class MappedKeyValueStore implements KeyValueStore {
+
+	private static final int MAGIC = 0x444B5653; // "DKVS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int SLOT_SIZE = 12;
+	private static final float LOAD_FACTOR = 0.7f;
+	private static final int MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE);
+
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int SIZE_OFFSET = 12;
+	private static final int CLEAN_OFFSET = 16;
+
+	private final File file;
+	private final StampedLock lock = new StampedLock();
+	private MappedByteBuffer table;
+	private int capacity;
+	private int size;
+
+	/**
+	 * Maps the file, creating it with room for <code>initialCapacity</code> slots if it is not there.
+	 */
+	public MappedKeyValueStore(File file, int initialCapacity) throws IOException {
+		this.file = file;
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create storage directory " + directory.getAbsolutePath());
+		}
+
+		if (file.exists() && file.length() > 0) {
+			table = map(file);
+			if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION) {
+				throw new IOException(file.getPath() + " is not a value store");
+			}
+			capacity = table.getInt(CAPACITY_OFFSET);
+			size = table.getInt(SIZE_OFFSET);
+			if (table.getInt(CLEAN_OFFSET) == 0) {
+				repair();
+			}
+			AppConfig.timestampedStandardPrint("Mapped " + size + " keys from " + file.getPath());
+		} else {
+			capacity = Integer.highestOneBit(Math.max(16, Math.min(initialCapacity, MAX_CAPACITY)));
+			table = create(file, capacity);
+		}
+		table.putInt(CLEAN_OFFSET, 0);
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		}
+	}
+
+	private static MappedByteBuffer create(File file, int capacity) throws IOException {
+		long length = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(SIZE_OFFSET, 0);
+		buffer.putInt(CLEAN_OFFSET, 0);
+		return buffer;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static boolean isUsed(MappedByteBuffer table, int slot) {
+		return table.getInt(offset(slot)) != 0;
+	}
+
+	private static int keyAt(MappedByteBuffer table, int slot) {
+		return table.getInt(offset(slot) + 4);
+	}
+
+	private static int valueAt(MappedByteBuffer table, int slot) {
+		return table.getInt(offset(slot) + 8);
+	}
+
+	/**
+	 * @return the slot holding the key, or the free slot where it would go
+	 */
+	private static int slotOf(MappedByteBuffer table, int capacity, int key) {
+		int mask = capacity - 1;
+		int slot = hash(key) & mask;
+		while (isUsed(table, slot) && keyAt(table, slot) != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Writes key and value before the used flag, so a slot never shows up half written.
+	 */
+	private static void writeSlot(MappedByteBuffer table, int slot, int key, int value) {
+		int offset = offset(slot);
+		table.putInt(offset + 4, key);
+		table.putInt(offset + 8, value);
+		table.putInt(offset, 1);
+	}
+
+	@Override
+	public void put(int key, int value) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = slotOf(table, capacity, key);
+			if (isUsed(table, slot)) {
+				table.putInt(offset(slot) + 8, value);
+				return;
+			}
+			if (size + 1 > capacity * LOAD_FACTOR && capacity < MAX_CAPACITY) {
+				grow();
+				slot = slotOf(table, capacity, key);
+			}
+			if (size + 1 >= capacity) {
+				throw new IllegalStateException(file.getPath() + " is full");
+			}
+			writeSlot(table, slot, key, value);
+			size++;
+			table.putInt(SIZE_OFFSET, size);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public int get(int key, int defaultValue) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			MappedByteBuffer t = table;
+			int slot = slotOf(t, capacityOf(t), key);
+			int value = isUsed(t, slot) ? valueAt(t, slot) : defaultValue;
+			if (lock.validate(stamp)) {
+				return value;
+			}
+		}
+
+		stamp = lock.readLock();
+		try {
+			int slot = slotOf(table, capacity, key);
+			return isUsed(table, slot) ? valueAt(table, slot) : defaultValue;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Optimistic readers take the capacity from the table itself, so it always matches the table they look at.
+	 */
+	private static int capacityOf(MappedByteBuffer table) {
+		return table.getInt(CAPACITY_OFFSET);
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		long stamp = lock.readLock();
+		try {
+			return isUsed(table, slotOf(table, capacity, key));
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public boolean remove(int key) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = slotOf(table, capacity, key);
+			if (!isUsed(table, slot)) {
+				return false;
+			}
+			clearSlot(slot);
+			size--;
+			table.putInt(SIZE_OFFSET, size);
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Frees the slot and shifts back the entries after it that would not be found any more otherwise.
+	 */
+	private void clearSlot(int slot) {
+		int mask = capacity - 1;
+		table.putInt(offset(slot), 0);
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (isUsed(table, next)) {
+			int home = hash(keyAt(table, next)) & mask;
+			boolean canMove = hole <= next
+					? (home <= hole || home > next)
+					: (home <= hole && home > next);
+			if (canMove) {
+				writeSlot(table, hole, keyAt(table, next), valueAt(table, next));
+				table.putInt(offset(next), 0);
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	@Override
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void forEach(EntryConsumer consumer) {
+		long stamp = lock.readLock();
+		try {
+			for (int slot = 0; slot < capacity; slot++) {
+				if (isUsed(table, slot)) {
+					consumer.accept(keyAt(table, slot), valueAt(table, slot));
+				}
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies everything into a file twice the size and swaps it in. Called with the write lock held.
+	 */
+	private void grow() {
+		int newCapacity = capacity * 2;
+		File grownFile = new File(file.getPath() + ".grow");
+		try {
+			MappedByteBuffer grown = create(grownFile, newCapacity);
+			for (int slot = 0; slot < capacity; slot++) {
+				if (isUsed(table, slot)) {
+					int key = keyAt(table, slot);
+					writeSlot(grown, slotOf(grown, newCapacity, key), key, valueAt(table, slot));
+				}
+			}
+			grown.putInt(SIZE_OFFSET, size);
+			grown.putInt(CLEAN_OFFSET, 0);
+			grown.force();
+			Files.move(grownFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			table = grown;
+			capacity = newCapacity;
+		} catch (IOException e) {
+			// We can go on with the table we have, it will just get fuller
+			AppConfig.timestampedErrorPrint("Couldn't grow " + file.getPath() + ": " + e.getMessage());
+			grownFile.delete();
+		}
+	}
+
+	/**
+	 * The servent was killed, maybe halfway through a removal. That can leave an entry behind a free
+	 * slot, where lookups stop before reaching it, or a key in two slots, and the size out of date.
+	 * Moves stranded entries back to where a lookup looks, drops second copies, and counts again.
+	 */
+	private void repair() {
+		int duplicates = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (!isUsed(table, slot)) {
+				continue;
+			}
+			int key = keyAt(table, slot);
+			int found = slotOf(table, capacity, key);
+			if (found == slot) {
+				continue;
+			}
+			if (!isUsed(table, found)) {
+				writeSlot(table, found, key, valueAt(table, slot));
+			} else {
+				duplicates++;
+			}
+			clearSlot(slot);
+			slot--; // the shift may have moved another entry into this slot
+		}
+
+		int count = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (isUsed(table, slot)) {
+				count++;
+			}
+		}
+		if (duplicates > 0) {
+			AppConfig.timestampedErrorPrint("Dropped " + duplicates + " half removed entries from " + file.getPath());
+		}
+		size = count;
+		table.putInt(SIZE_OFFSET, size);
+	}
+
+	/**
+	 * Flushes the table to disk and marks it as cleanly closed.
+	 */
+	@Override
+	public void close() {
+		long stamp = lock.writeLock();
+		try {
+			table.force();
+			table.putInt(CLEAN_OFFSET, 1);
+			table.force();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package app.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline measure of how long {@link DurableKeyValueStore} takes to recover. For every record count, it
+ * writes that many puts of distinct keys into a fresh directory and closes the store, then times opening
+ * it again, two ways:
+ * <ul>
+ * <li>log only - no snapshot is taken, everything is replayed from the write-ahead log</li>
+ * <li>snapshot + log - a snapshot is taken after two thirds of the records, the rest is replayed</li>
+ * </ul>
+ *
+ * Usage: <code>java app.storage.RecoveryBenchmark [directory] [record_count...]</code>
+ * <br>
+ * With no counts given, it runs 1M and 10M records. 10M keys take a few hundred MB of heap, twice over
+ * while the store is written and opened again, so give it <code>-Xmx1g</code> or so.
+ */
+public class RecoveryBenchmark {
+
+	private static final int BATCH = 10_000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File parent = args.length > 0 ? new File(args[0]) : new File(System.getProperty("java.io.tmpdir"));
+		List<Integer> counts = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			counts.add(Integer.parseInt(args[i]));
+		}
+		if (counts.isEmpty()) {
+			counts.addAll(Arrays.asList(1_000_000, 10_000_000));
+		}
+
+		List<String> results = new ArrayList<>();
+		for (int count : counts) {
+			results.add(run(parent, count, Long.MAX_VALUE, "log only"));
+			results.add(run(parent, count, count * 2L / 3, "snapshot + log"));
+		}
+
+		// store piše svoje poruke usput, tabela ide na kraj
+		System.out.println();
+		System.out.printf("%12s %-16s %12s %14s %13s %13s%n", "records", "layout", "write ms", "snapshot keys",
+				"log records", "recovery ms");
+		for (String result : results) {
+			System.out.println(result);
+		}
+	}
+
+	private static String run(File parent, int count, long snapshotEvery, String layout)
+			throws IOException, InterruptedException {
+		File directory = Files.createTempDirectory(parent.toPath(), "recovery").toFile();
+		try {
+			long writeStart = System.currentTimeMillis();
+			DurableKeyValueStore store = new DurableKeyValueStore(new ConcurrentIntIntMap(), directory, 0, snapshotEvery);
+			int[] keys = new int[BATCH];
+			int[] values = new int[BATCH];
+			for (int from = 0; from < count; from += BATCH) {
+				int size = Math.min(BATCH, count - from);
+				if (size != keys.length) {
+					keys = new int[size];
+					values = new int[size];
+				}
+				for (int i = 0; i < size; i++) {
+					keys[i] = from + i;
+					values[i] = (from + i) * 31;
+				}
+				store.putAll(keys, values);
+			}
+			awaitSnapshot(directory, snapshotEvery != Long.MAX_VALUE);
+			store.close();
+			long writeMillis = System.currentTimeMillis() - writeStart;
+
+			long snapshotKeys = 0;
+			long logRecords = 0;
+			for (File file : listFiles(directory)) {
+				if (file.getName().endsWith(".snap")) {
+					// 8 bajtova po ključu, pa count, CRC i oznaka kraja
+					snapshotKeys += (file.length() - 20) / 8;
+				} else if (file.getName().endsWith(".log")) {
+					logRecords += file.length() / 13;
+				}
+			}
+			store = null; // da prva mapa ne zauzima heap dok se puni druga
+
+			long recoveryStart = System.currentTimeMillis();
+			DurableKeyValueStore recovered = new DurableKeyValueStore(new ConcurrentIntIntMap(), directory, 0, Long.MAX_VALUE);
+			long recoveryMillis = System.currentTimeMillis() - recoveryStart;
+			int size = recovered.size();
+			int last = recovered.get(count - 1, -1);
+			recovered.close();
+			if (size != count || last != (count - 1) * 31) {
+				throw new IllegalStateException("Recovered " + size + " of " + count + " keys");
+			}
+
+			return String.format("%12d %-16s %12d %14d %13d %13d", count, layout, writeMillis, snapshotKeys, logRecords,
+					recoveryMillis);
+		} finally {
+			for (File file : listFiles(directory)) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * The snapshot is written in the background. Waits until it is in place and the log before it is gone.
+	 */
+	private static void awaitSnapshot(File directory, boolean expected) throws InterruptedException {
+		if (!expected) {
+			return;
+		}
+		while (true) {
+			boolean unfinished = false;
+			long newestSnapshot = -1;
+			long oldestLog = Long.MAX_VALUE;
+			for (File file : listFiles(directory)) {
+				String name = file.getName();
+				if (name.endsWith(".tmp")) {
+					unfinished = true;
+				} else if (name.endsWith(".snap")) {
+					newestSnapshot = Math.max(newestSnapshot, generation(name));
+				} else if (name.endsWith(".log")) {
+					oldestLog = Math.min(oldestLog, generation(name));
+				}
+			}
+			if (!unfinished && newestSnapshot != -1 && oldestLog >= newestSnapshot) {
+				return;
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	private static long generation(String name) {
+		return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+	}
+
+	private static File[] listFiles(File directory) {
+		File[] files = directory.listFiles();
+		return files == null ? new File[0] : files;
+	}
+}
@@ -0,0 +1,166 @@
+package app.storage;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Offline comparison of {@link ConcurrentIntIntMap} with the boxed maps it replaced: heap taken per entry,
+ * and puts per second and gets per second, each measured on its own, with <code>threads</code> threads
+ * working on random keys of a map holding <code>entries</code> keys. HashMap isn't safe for more than one
+ * thread, so it runs on one, as a baseline.
+ *
+ * Usage: <code>java app.storage.StoreBenchmark [entries] [threads] [seconds]</code>
+ * <br>
+ * The heap numbers come from the used heap before and after filling a map, so run it with a heap big
+ * enough for a few maps at once and nothing else going on.
+ */
+public class StoreBenchmark {
+
+	// ono što get vrati ide ovde, da JIT ne izbaci čitanja
+	private static volatile long sink;
+
+	/**
+	 * A boxed map behind the store interface, so both are driven the same way.
+	 */
+	private static final class BoxedStore implements KeyValueStore {
+		private final Map<Integer, Integer> map;
+
+		BoxedStore(Map<Integer, Integer> map) {
+			this.map = map;
+		}
+
+		@Override
+		public void put(int key, int value) {
+			map.put(key, value);
+		}
+
+		@Override
+		public int get(int key, int defaultValue) {
+			Integer value = map.get(key);
+			return value == null ? defaultValue : value;
+		}
+
+		@Override
+		public boolean containsKey(int key) {
+			return map.containsKey(key);
+		}
+
+		@Override
+		public boolean remove(int key) {
+			return map.remove(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public void forEach(EntryConsumer consumer) {
+			map.forEach(consumer::accept);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		Map<String, Supplier<KeyValueStore>> stores = new LinkedHashMap<>();
+		stores.put("ConcurrentIntIntMap", ConcurrentIntIntMap::new);
+		stores.put("ConcurrentHashMap", () -> new BoxedStore(new ConcurrentHashMap<>()));
+		stores.put("HashMap", () -> new BoxedStore(new HashMap<>()));
+
+		System.out.println("entries=" + entries + ", threads=" + threads + ", seconds=" + seconds);
+		System.out.printf("%-20s %8s %12s %12s %12s%n", "store", "threads", "bytes/entry", "put Mops/s", "get Mops/s");
+		for (Map.Entry<String, Supplier<KeyValueStore>> entry : stores.entrySet()) {
+			double bytesPerEntry = bytesPerEntry(entry.getValue(), entries);
+			// HashMap nije za više niti
+			int storeThreads = entry.getKey().equals("HashMap") ? 1 : threads;
+			KeyValueStore store = entry.getValue().get();
+			fill(store, entries);
+			double puts = throughput(store, entries, storeThreads, seconds, true);
+			double gets = throughput(store, entries, storeThreads, seconds, false);
+			System.out.printf("%-20s %8d %12.1f %12.1f %12.1f%n", entry.getKey(), storeThreads, bytesPerEntry,
+					puts / 1e6, gets / 1e6);
+		}
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static double bytesPerEntry(Supplier<KeyValueStore> factory, int entries) throws InterruptedException {
+		long before = usedHeap();
+		KeyValueStore store = factory.get();
+		fill(store, entries);
+		long after = usedHeap();
+		if (store.size() != entries) {
+			throw new IllegalStateException("Store holds " + store.size() + " of " + entries + " entries");
+		}
+		return (double) (after - before) / entries;
+	}
+
+	private static void fill(KeyValueStore store, int entries) {
+		for (int key = 0; key < entries; key++) {
+			store.put(key, key);
+		}
+	}
+
+	/**
+	 * Puts or gets on random keys of the filled store, all threads doing the same.
+	 *
+	 * @return operations per second over all threads
+	 */
+	private static double throughput(KeyValueStore store, int entries, int threads, int seconds, boolean puts)
+			throws InterruptedException {
+		AtomicBoolean running = new AtomicBoolean(true);
+		long[] operations = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			int worker = t;
+			workers[t] = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long done = 0;
+				long read = 0;
+				while (running.get()) {
+					if (puts) {
+						for (int i = 0; i < 1024; i++) {
+							store.put(random.nextInt(entries), i);
+						}
+					} else {
+						for (int i = 0; i < 1024; i++) {
+							read += store.get(random.nextInt(entries), 0);
+						}
+					}
+					done += 1024;
+				}
+				operations[worker] = done;
+				sink += read;
+			});
+			workers[t].start();
+		}
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		running.set(false);
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long nanos = System.nanoTime() - start;
+		long total = 0;
+		for (long done : operations) {
+			total += done;
+		}
+		return total * 1e9 / nanos;
+	}
+}
@@ -7,7 +7,6 @@ import java.util.Scanner;
 import app.AppConfig;
 import app.Cancellable;
 import cli.command.*;
-import servent.SimpleServentListener;
 
 /**
  * A simple CLI parser. Each command has a name and arbitrary arguments.
@@ -21,6 +20,7 @@ import servent.SimpleServentListener;
  * <li><code>broadcast [text]</code> - broadcasts the given text to all nodes</li>
  * <li><code>causal_broadcast [text]</code> - causally broadcasts the given text to all nodes</li>
  * <li><code>print_causal</code> - prints all received causal broadcast messages</li>
+ * <li><code>lane_stats</code> - prints queue depths of the control and data message lanes</li>
  * <li><code>stop</code> - stops the servent and program finishes</li>
  * </ul>
  * 
@@ -33,7 +33,7 @@ public class CLIParser implements Runnable, Cancellable {
 	
 	private final List<CLICommand> commandList;
 	
-	public CLIParser(SimpleServentListener listener) {
+	public CLIParser() {
 		this.commandList = new ArrayList<>();
 		
 		commandList.add(new InfoCommand());
@@ -41,7 +41,7 @@ public class CLIParser implements Runnable, Cancellable {
 		commandList.add(new SuccessorInfo());
 		commandList.add(new DHTGetCommand());
 		commandList.add(new DHTPutCommand());
-		commandList.add(new StopCommand(this, listener));
+		commandList.add(new StopCommand());
 		commandList.add(new UploadCommand());
 		commandList.add(new ListFilesCommand());
 		commandList.add(new RemoveFileCommand());
@@ -49,6 +49,8 @@ public class CLIParser implements Runnable, Cancellable {
 		commandList.add(new FollowCommand());
 		commandList.add(new PendingCommand());
 		commandList.add(new AcceptCommand());
+		commandList.add(new LaneStatsCommand());
+		commandList.add(new MutexStatsCommand());
 	}
 	
 	@Override
@@ -0,0 +1,22 @@
+package cli.command;
+
+import app.AppConfig;
+import app.ServentExecutors;
+
+/**
+ * 'lane_stats' - prints queue depths for the inbound and outbound priority lanes.
+ */
+public class LaneStatsCommand implements CLICommand {
+
+	@Override
+	public String commandName() {
+		return "lane_stats";
+	}
+
+	@Override
+	public void execute(String args) {
+		AppConfig.timestampedStandardPrint(ServentExecutors.inboundLanes().toString());
+		AppConfig.timestampedStandardPrint(ServentExecutors.outboundLanes().toString());
+	}
+
+}
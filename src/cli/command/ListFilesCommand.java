@@ -1,6 +1,8 @@
 package cli.command;
 
 import app.AppConfig;
+import app.lock.FileLocks;
+import app.lock.LockMode;
 import servent.message.ListFilesMessage;
 import servent.message.MessageType;
 import servent.message.util.MessageUtil;
@@ -34,9 +36,13 @@ public class ListFilesCommand implements CLICommand {
         }
 
         try {
-            AppConfig.timestampedStandardPrint("Attempting to acquire SK mutex for list_files...");
-            AppConfig.requestCSEntry(); // Acquire distributed mutex
-            AppConfig.timestampedStandardPrint("SK mutex acquired for list_files.");
+            // Čitanje - više listanja istog profila ide paralelno
+            AppConfig.timestampedStandardPrint("Attempting to lock the file list of " + addrPort + " for reading...");
+            if (!AppConfig.fileLocks.acquire(FileLocks.profile(port), LockMode.READ)) {
+                AppConfig.timestampedErrorPrint("Couldn't lock the file list of " + addrPort + ", list_files not sent.");
+                return;
+            }
+            AppConfig.timestampedStandardPrint("Lock acquired for list_files.");
 
             String myAddrPort = AppConfig.myServentInfo.getIpAddress() + ":"
                     + AppConfig.myServentInfo.getListenerPort();
@@ -48,9 +54,9 @@ public class ListFilesCommand implements CLICommand {
             );
             MessageUtil.sendMessage(listFilesReq);
             AppConfig.timestampedStandardPrint("Sent list_files request to " + addrPort);
-            // Mutex will be released in ListFilesResponseHandler
+            // Lock will be released in ListFilesResponseHandler
         } catch (InterruptedException e) {
-            AppConfig.timestampedErrorPrint("Interrupted while waiting for distributed mutex for list_files.");
+            AppConfig.timestampedErrorPrint("Interrupted while waiting for the lock for list_files.");
             Thread.currentThread().interrupt();
         }
     }
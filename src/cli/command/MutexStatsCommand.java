@@ -0,0 +1,20 @@
+package cli.command;
+
+import app.AppConfig;
+
+/**
+ * 'mutex_stats' - prints how long this servent waited for the mutex token and held it.
+ */
+public class MutexStatsCommand implements CLICommand {
+
+	@Override
+	public String commandName() {
+		return "mutex_stats";
+	}
+
+	@Override
+	public void execute(String args) {
+		AppConfig.timestampedStandardPrint(AppConfig.mutex + ": " + AppConfig.mutex.getStats());
+	}
+
+}
@@ -1,6 +1,7 @@
 package cli.command;
 
 import app.AppConfig;
+import app.lock.LockMode;
 import servent.message.RemoveFileMessage;
 import servent.message.MessageType;
 import servent.message.util.MessageUtil;
@@ -21,9 +22,12 @@ public class RemoveFileCommand implements CLICommand {
         String filePath = args.trim();
 
         try {
-            AppConfig.timestampedStandardPrint("Attempting to acquire SK mutex for remove_file...");
-            AppConfig.requestCSEntry(); // Acquire distributed mutex
-            AppConfig.timestampedStandardPrint("SK mutex acquired for remove_file.");
+            AppConfig.timestampedStandardPrint("Attempting to lock " + filePath + " for remove_file...");
+            if (!AppConfig.fileLocks.acquire(filePath, LockMode.WRITE)) {
+                AppConfig.timestampedErrorPrint("Couldn't lock " + filePath + ", remove_file not sent.");
+                return;
+            }
+            AppConfig.timestampedStandardPrint("Lock acquired for remove_file.");
 
             RemoveFileMessage removeReq = new RemoveFileMessage(
                     AppConfig.myServentInfo.getListenerPort(),
@@ -33,9 +37,9 @@ public class RemoveFileCommand implements CLICommand {
 
             MessageUtil.sendMessage(removeReq);
             AppConfig.timestampedStandardPrint("Sent remove_file request for " + filePath);
-            // Mutex will be released in RemoveFilesResponseHandler
+            // Lock will be released in RemoveFilesResponseHandler
         } catch (InterruptedException e) {
-            AppConfig.timestampedErrorPrint("Interrupted while waiting for distributed mutex for remove_file.");
+            AppConfig.timestampedErrorPrint("Interrupted while waiting for the lock for remove_file.");
             Thread.currentThread().interrupt();
         }
     }
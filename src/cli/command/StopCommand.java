@@ -1,19 +1,16 @@
 package cli.command;
 
 import app.AppConfig;
-import cli.CLIParser;
-import servent.SimpleServentListener;
+import servent.message.StopMessage;
+import servent.message.util.MessageUtil;
 
+/**
+ * Leaves the ring gracefully: we send ourselves a STOP, and the STOP handler hands our values
+ * and files over before the servent shuts down. The CLI keeps running until then, so commands
+ * still work if the handover is given up and we stay in the ring.
+ */
 public class StopCommand implements CLICommand {
 
-	private CLIParser parser;
-	private SimpleServentListener listener;
-	
-	public StopCommand(CLIParser parser, SimpleServentListener listener) {
-		this.parser = parser;
-		this.listener = listener;
-	}
-	
 	@Override
 	public String commandName() {
 		return "stop";
@@ -22,8 +19,8 @@ public class StopCommand implements CLICommand {
 	@Override
 	public void execute(String args) {
 		AppConfig.timestampedStandardPrint("Stopping...");
-		parser.stop();
-		listener.stop();
+		int myPort = AppConfig.myServentInfo.getListenerPort();
+		MessageUtil.sendMessage(new StopMessage(myPort, myPort));
 	}
 
 }
@@ -1,7 +1,7 @@
 package cli.command;
 
 import app.AppConfig;
-import app.ServentInfo;
+import app.FingerEntry;
 
 public class SuccessorInfo implements CLICommand {
 
@@ -12,14 +12,17 @@ public class SuccessorInfo implements CLICommand {
 
 	@Override
 	public void execute(String args) {
-		ServentInfo[] successorTable = AppConfig.chordState.getSuccessorTable();
+		FingerEntry[] fingerTable = AppConfig.chordState.getFingerTable();
 		
 		int num = 0;
-		for (ServentInfo serventInfo : successorTable) {
-			System.out.println(num + ": " + serventInfo);
+		for (FingerEntry fingerEntry : fingerTable) {
+			System.out.println(num + ": " + fingerEntry);
 			num++;
 		}
 
+		System.out.println("successors: " + AppConfig.chordState.getSuccessorList());
+		System.out.println("predecessor: " + AppConfig.chordState.getPredecessor());
+
 	}
 
 }
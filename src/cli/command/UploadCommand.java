@@ -1,9 +1,7 @@
 package cli.command;
 
 import app.AppConfig;
-import servent.message.Message;
-import servent.message.UploadMessage;
-import servent.message.util.MessageUtil;
+import app.lock.LockMode;
 
 import java.io.File;
 
@@ -22,29 +20,23 @@ public class UploadCommand implements CLICommand {
         }
         String filePath = args.trim();
         File localFile = new File(AppConfig.workingDirectory, filePath);
-        if (!localFile.exists() || !localFile.isFile()) {
+        if (!localFile.isFile()) {
             AppConfig.timestampedErrorPrint("File not found in " + AppConfig.workingDirectory + ": " + filePath);
-            // Ensure AppConfig.workingDirectory is initialized, e.g., in AppConfig or create it.
-            // For now, assume it exists or file path is absolute/correctly relative.
-            // return; // Commented out to allow testing without actual files first
+            return;
         }
 
         try {
-            AppConfig.timestampedStandardPrint("Attempting to acquire SK mutex for upload...");
-            AppConfig.requestCSEntry(); // Acquire distributed mutex
-            AppConfig.timestampedStandardPrint("SK mutex acquired for upload.");
-
-            UploadMessage uploadReq = new UploadMessage(
-                    AppConfig.myServentInfo.getListenerPort(),
-                    AppConfig.chordState.getNextNodePort(), // Target for this message
-                    filePath // File path
-            );
-
-            MessageUtil.sendMessage(uploadReq);
-            AppConfig.timestampedStandardPrint("Sent upload request for " + filePath);
-            // Mutex will be released in UploadResponseHandler
+            AppConfig.timestampedStandardPrint("Attempting to lock " + filePath + " for upload...");
+            if (!AppConfig.fileLocks.acquire(filePath, LockMode.WRITE)) {
+                AppConfig.timestampedErrorPrint("Couldn't lock " + filePath + ", upload not sent.");
+                return;
+            }
+            AppConfig.timestampedStandardPrint("Lock acquired for upload.");
+
+            // The content goes to the owner in chunks, the lock is released when it answers
+            AppConfig.fileTransfers.upload(filePath, localFile);
         } catch (InterruptedException e) {
-            AppConfig.timestampedErrorPrint("Interrupted while waiting for distributed mutex for upload.");
+            AppConfig.timestampedErrorPrint("Interrupted while waiting for the lock for upload.");
             Thread.currentThread().interrupt();
         }
     }
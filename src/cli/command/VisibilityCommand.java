@@ -1,6 +1,8 @@
 package cli.command;
 
 import app.AppConfig;
+import app.lock.FileLocks;
+import app.lock.LockMode;
 
 public class VisibilityCommand implements CLICommand {
 
@@ -28,9 +30,24 @@ public class VisibilityCommand implements CLICommand {
             return;
         }
 
-        // 2) Postavljamo novu vidljivost u ChordState
-        synchronized (AppConfig.chordState) {
-            AppConfig.chordState.setPublicMode(newVisibility);
+        // 2) Postavljamo novu vidljivost u ChordState, kada se završe listanja koja su u toku
+        String profile = FileLocks.profile(AppConfig.myServentInfo.getListenerPort());
+        try {
+            if (!AppConfig.fileLocks.acquire(profile, LockMode.WRITE)) {
+                AppConfig.timestampedErrorPrint("Couldn't lock our file list, visibility not changed.");
+                return;
+            }
+        } catch (InterruptedException e) {
+            AppConfig.timestampedErrorPrint("Interrupted while waiting for the lock for visibility.");
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            synchronized (AppConfig.chordState) {
+                AppConfig.chordState.setPublicMode(newVisibility);
+            }
+        } finally {
+            AppConfig.fileLocks.release(profile);
         }
 
         AppConfig.timestampedStandardPrint("Visibility set to " + mode);
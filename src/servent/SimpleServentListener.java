@@ -1,16 +1,24 @@
 package servent;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import app.AppConfig;
 import app.Cancellable;
-import servent.handler.*;
+import app.LaneExecutor;
+import app.ServentExecutors;
+import servent.handler.HandlerRegistry;
 import servent.message.Message;
+import servent.message.MessageLane;
+import servent.message.MessageType;
+import servent.message.util.ByteBufferPool;
 import servent.message.util.MessageUtil;
 
 public class SimpleServentListener implements Runnable, Cancellable {
@@ -18,128 +26,194 @@ public class SimpleServentListener implements Runnable, Cancellable {
 	private volatile boolean working = true;
 	
 	public SimpleServentListener() {
-		
+		LaneExecutor inboundLanes = ServentExecutors.inboundLanes();
+		for (MessageType type : MessageType.values()) {
+			handlerRegistry.setExecutor(type, inboundLanes.forLane(MessageLane.of(type)));
+		}
+	}
+	
+	public HandlerRegistry getHandlerRegistry() {
+		return handlerRegistry;
 	}
 
 	/*
-	 * Thread pool for executing the handlers. Each client will get it's own handler thread.
+	 * Thread pool for decoding received frames. Handlers then run in the inbound lanes,
+	 * control messages first.
+	 */
+	private final ExecutorService threadPool = ServentExecutors.decoderExecutor();
+	
+	/*
+	 * Each message type has it's own handler.
+	 * If we can get away with stateless handlers, we will,
+	 * because that way is much simpler and less error prone.
 	 */
-	private final ExecutorService threadPool = Executors.newWorkStealingPool();
+	private final HandlerRegistry handlerRegistry = HandlerRegistry.createDefault();
+	
+	private final ByteBufferPool bufferPool = new ByteBufferPool();
+	
+	private volatile Selector selector;
+	
+	private static final int MAX_FRAMES_PER_READ = 16;
+	
+	/**
+	 * Read state of one inbound connection. A frame is an int length followed by the body,
+	 * and either part can arrive split across several reads.
+	 */
+	private static class FrameReader {
+		private final ByteBuffer header = ByteBuffer.allocate(4);
+		private ByteBuffer body;
+	}
 	
 	@Override
 	public void run() {
-		ServerSocket listenerSocket = null;
+		ServerSocketChannel listenerChannel = null;
 		try {
-			listenerSocket = new ServerSocket(AppConfig.myServentInfo.getListenerPort(), 100);
-			/*
-			 * If there is no connection after 1s, wake up and see if we should terminate.
-			 */
-			listenerSocket.setSoTimeout(1000);
+			selector = Selector.open();
+			listenerChannel = ServerSocketChannel.open();
+			listenerChannel.bind(new InetSocketAddress(AppConfig.myServentInfo.getListenerPort()), 100);
+			listenerChannel.configureBlocking(false);
+			listenerChannel.register(selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			AppConfig.timestampedErrorPrint("Couldn't open listener socket on: " + AppConfig.myServentInfo.getListenerPort());
 			System.exit(0);
 		}
 		
-		
+		/*
+		 * One thread watches every connection. It only moves bytes around - decoding and
+		 * handling happen on the thread pool, so a slow peer can't hold up anyone else.
+		 */
 		while (working) {
 			try {
-				Message clientMessage;
-				
-				Socket clientSocket = listenerSocket.accept();
-				
-				//GOT A MESSAGE! <3
-				clientMessage = MessageUtil.readMessage(clientSocket);
+				selector.select();
 				
-				MessageHandler messageHandler = new NullHandler(clientMessage);
-				
-				/*
-				 * Each message type has it's own handler.
-				 * If we can get away with stateless handlers, we will,
-				 * because that way is much simpler and less error prone.
-				 */
-				switch (clientMessage.getMessageType()) {
-				case NEW_NODE:
-					messageHandler = new NewNodeHandler(clientMessage);
-					break;
-				case WELCOME:
-					messageHandler = new WelcomeHandler(clientMessage);
-					break;
-				case SORRY:
-					messageHandler = new SorryHandler(clientMessage);
-					break;
-				case UPDATE:
-					messageHandler = new UpdateHandler(clientMessage);
-					break;
-				case PUT:
-					messageHandler = new PutHandler(clientMessage);
-					break;
-				case ASK_GET:
-					messageHandler = new AskGetHandler(clientMessage);
-					break;
-				case TELL_GET:
-					messageHandler = new TellGetHandler(clientMessage);
-					break;
-				case POISON:
-					messageHandler = new NullHandler(clientMessage);
-					break;
-				case FOLLOW:
-					messageHandler = new FollowHandler(clientMessage);
-					break;
-				case PENDING:
-					messageHandler = new PendingHandler(clientMessage);
-					break;
-				case ACCEPT:
-					messageHandler = new AcceptHandler(clientMessage);
-					break;
-				case UPLOAD:
-					messageHandler = new UploadHandler(clientMessage);
-					break;
-				case VISIBILITY:
-					messageHandler = new VisibilityHandler(clientMessage);
-					break;
-				case LIST_FILES:
-					messageHandler = new ListFilesHandler(clientMessage);
-					break;
-				case REMOVE_FILES:
-					messageHandler = new RemoveFilesHandler(clientMessage);
-					break;
-				case LIST_FILES_RESPONSE:
-					messageHandler = new ListFilesResponseHandler(clientMessage);
-					break;
-				case STOP:
-					messageHandler = new StopHandler(clientMessage);
-					break;
-				case UPLOAD_RESPONSE:
-					messageHandler = new UploadResponseHandler(clientMessage);
-					break;
-				case LEAVE:
-					messageHandler = new LeaveHandler(clientMessage);
-					break;
-				case REMOVE_FILE_RESPONSE:
-					messageHandler = new RemoveFilesResponseHandler(clientMessage);
-					break;
-				case SK_TOKEN_REQUEST:
-					messageHandler = new SKTokenRequestHandler(clientMessage);
-					break;
-				case SK_TOKEN:
-					messageHandler = new SKTokenHandler(clientMessage);
-					break;
-				default:
-					break;
-                }
-				threadPool.submit(messageHandler);
-			} catch (SocketTimeoutException timeoutEx) {
-				//Uncomment the next line to see that we are waking up every second.
-//				AppConfig.timedStandardPrint("Waiting...");
+				Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+				while (selectedKeys.hasNext()) {
+					SelectionKey key = selectedKeys.next();
+					selectedKeys.remove();
+					
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept(listenerChannel);
+					} else if (key.isReadable()) {
+						read(key);
+					}
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
+		
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
-
+	
+	private void accept(ServerSocketChannel listenerChannel) throws IOException {
+		SocketChannel clientChannel = listenerChannel.accept();
+		if (clientChannel == null) {
+			return;
+		}
+		clientChannel.configureBlocking(false);
+		clientChannel.register(selector, SelectionKey.OP_READ, new FrameReader());
+	}
+	
+	/**
+	 * Reads whatever is available on the connection. Every completed frame is handed
+	 * off to the thread pool, together with its pooled buffer.
+	 */
+	private void read(SelectionKey key) {
+		SocketChannel clientChannel = (SocketChannel) key.channel();
+		FrameReader reader = (FrameReader) key.attachment();
+		
+		try {
+			/*
+			 * Don't let one chatty peer keep the selector thread to itself. Whatever is left
+			 * will be picked up on the next select.
+			 */
+			for (int frames = 0; frames < MAX_FRAMES_PER_READ; frames++) {
+				if (reader.body == null) {
+					if (clientChannel.read(reader.header) == -1) {
+						close(key, reader);
+						return;
+					}
+					if (reader.header.hasRemaining()) {
+						return;
+					}
+					
+					reader.header.flip();
+					int frameLength = reader.header.getInt();
+					reader.header.clear();
+					if (frameLength <= 0 || frameLength > MessageUtil.MAX_FRAME_LENGTH) {
+						AppConfig.timestampedErrorPrint("Bad frame length " + frameLength + " from "
+								+ clientChannel.getRemoteAddress() + ", dropping connection.");
+						close(key, reader);
+						return;
+					}
+					reader.body = bufferPool.acquire(frameLength);
+				}
+				
+				if (clientChannel.read(reader.body) == -1) {
+					close(key, reader);
+					return;
+				}
+				if (reader.body.hasRemaining()) {
+					return;
+				}
+				
+				ByteBuffer frameBody = reader.body;
+				reader.body = null;
+				frameBody.flip();
+				threadPool.submit(() -> handleFrame(frameBody));
+			}
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Error in reading socket on " + clientChannel.socket().getInetAddress()
+					+ ":" + clientChannel.socket().getPort());
+			close(key, reader);
+		}
+	}
+	
+	private void close(SelectionKey key, FrameReader reader) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException ignored) { }
+		if (reader.body != null) {
+			bufferPool.release(reader.body);
+			reader.body = null;
+		}
+	}
+	
+	private void handleFrame(ByteBuffer frameBody) {
+		Message clientMessage;
+		try {
+			clientMessage = MessageUtil.readMessage(frameBody);
+		} catch (IOException e) {
+			AppConfig.timestampedErrorPrint("Couldn't decode message: " + e.getMessage());
+			return;
+		} finally {
+			bufferPool.release(frameBody);
+		}
+		
+		//GOT A MESSAGE! <3
+		AppConfig.chordState.getFailureDetector().heardFrom(clientMessage.getSenderPort());
+		handlerRegistry.dispatch(clientMessage);
+	}
+	
 	@Override
 	public void stop() {
 		this.working = false;
+		
+		Selector currentSelector = selector;
+		if (currentSelector != null) {
+			currentSelector.wakeup();
+		}
 	}
 
 }
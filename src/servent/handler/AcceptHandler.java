@@ -16,14 +16,8 @@ import java.util.List;
  */
 public class AcceptHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public AcceptHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() == MessageType.ACCEPT) {
             // ReceiverPort u AcceptMessage je port serventa čiji FOLLOW zahtev prihvatamo
             int requesterPort = clientMessage.getReceiverPort();
@@ -1,7 +1,5 @@
 package servent.handler;
 
-import java.util.Map;
-
 import app.AppConfig;
 import app.ServentInfo;
 import servent.message.AskGetMessage;
@@ -12,24 +10,13 @@ import servent.message.util.MessageUtil;
 
 public class AskGetHandler implements MessageHandler {
 
-	private Message clientMessage;
-	
-	public AskGetHandler(Message clientMessage) {
-		this.clientMessage = clientMessage;
-	}
-	
 	@Override
-	public void run() {
+	public void handle(Message clientMessage) {
 		if (clientMessage.getMessageType() == MessageType.ASK_GET) {
 			try {
 				int key = Integer.parseInt(clientMessage.getMessageText());
 				if (AppConfig.chordState.isKeyMine(key)) {
-					Map<Integer, Integer> valueMap = AppConfig.chordState.getValueMap(); 
-					int value = -1;
-					
-					if (valueMap.containsKey(key)) {
-						value = valueMap.get(key);
-					}
+					int value = AppConfig.chordState.getValueStore().get(key, -1);
 					
 					TellGetMessage tgm = new TellGetMessage(AppConfig.myServentInfo.getListenerPort(), clientMessage.getSenderPort(),
 															key, value);
@@ -0,0 +1,19 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.FileChunkAckMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class FileChunkAckHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.FILE_CHUNK_ACK) {
+			AppConfig.fileTransfers.onAck((FileChunkAckMessage) clientMessage);
+		} else {
+			AppConfig.timestampedErrorPrint("File chunk ack handler got a message that is not FILE_CHUNK_ACK");
+		}
+	}
+
+}
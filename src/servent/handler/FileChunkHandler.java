@@ -0,0 +1,19 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.FileChunkMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class FileChunkHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.FILE_CHUNK) {
+			AppConfig.fileTransfers.onChunk((FileChunkMessage) clientMessage);
+		} else {
+			AppConfig.timestampedErrorPrint("File chunk handler got a message that is not FILE_CHUNK");
+		}
+	}
+
+}
@@ -7,15 +7,9 @@ import servent.message.MessageType;
 
 public class FollowHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public FollowHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     // Dobijam poruku i procesuiram follow req (treba cvor da me prati)
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.FOLLOW) {
             AppConfig.timestampedErrorPrint(
                     "FOLLOW handler got unexpected message type: " + clientMessage.getMessageType()
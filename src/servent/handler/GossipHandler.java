@@ -0,0 +1,20 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.GossipMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class GossipHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.GOSSIP) {
+			GossipMessage gossip = (GossipMessage) clientMessage;
+			AppConfig.chordState.onGossip(gossip.getPorts(), gossip.getStates(), gossip.getIncarnations());
+		} else {
+			AppConfig.timestampedErrorPrint("Gossip handler got a message that is not GOSSIP");
+		}
+	}
+
+}
@@ -0,0 +1,11 @@
+package servent.handler;
+
+/**
+ * Creates the handler for a message type. The {@link HandlerRegistry} calls this once,
+ * when the type is registered, and reuses the handler for every message after that.
+ */
+@FunctionalInterface
+public interface HandlerFactory {
+
+	MessageHandler create();
+}
@@ -0,0 +1,116 @@
+package servent.handler;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import servent.message.Message;
+import servent.message.MessageType;
+
+/**
+ * Maps each message type to its handler, and optionally to an executor of its own.
+ *
+ * By default a handler runs on the thread that dispatches the message (the listener's handler pool).
+ * Types that have an executor set are handed over to it instead, which lets us keep e.g. token
+ * traffic away from slow file traffic.
+ *
+ * New message types only need a {@link #register(MessageType, HandlerFactory)} call, the listener
+ * doesn't have to know about them.
+ */
+public class HandlerRegistry {
+
+	private final Map<MessageType, MessageHandler> handlers = new EnumMap<>(MessageType.class);
+	private final Map<MessageType, Executor> executors = new EnumMap<>(MessageType.class);
+
+	/**
+	 * Used for any message type that has no handler registered.
+	 */
+	private final MessageHandler nullHandler = new NullHandler();
+
+	/**
+	 * @return a registry with the handlers for every message type this servent understands
+	 */
+	public static HandlerRegistry createDefault() {
+		HandlerRegistry registry = new HandlerRegistry();
+
+		registry.register(MessageType.NEW_NODE, NewNodeHandler::new);
+		registry.register(MessageType.WELCOME, WelcomeHandler::new);
+		registry.register(MessageType.SORRY, SorryHandler::new);
+		registry.register(MessageType.PUT, PutHandler::new);
+		registry.register(MessageType.ASK_GET, AskGetHandler::new);
+		registry.register(MessageType.TELL_GET, TellGetHandler::new);
+		registry.register(MessageType.POISON, NullHandler::new);
+		registry.register(MessageType.FOLLOW, FollowHandler::new);
+		registry.register(MessageType.PENDING, PendingHandler::new);
+		registry.register(MessageType.ACCEPT, AcceptHandler::new);
+		registry.register(MessageType.UPLOAD, UploadHandler::new);
+		registry.register(MessageType.VISIBILITY, VisibilityHandler::new);
+		registry.register(MessageType.LIST_FILES, ListFilesHandler::new);
+		registry.register(MessageType.REMOVE_FILES, RemoveFilesHandler::new);
+		registry.register(MessageType.LIST_FILES_RESPONSE, ListFilesResponseHandler::new);
+		registry.register(MessageType.STOP, StopHandler::new);
+		registry.register(MessageType.UPLOAD_RESPONSE, UploadResponseHandler::new);
+		registry.register(MessageType.LEAVE, LeaveHandler::new);
+		registry.register(MessageType.REMOVE_FILE_RESPONSE, RemoveFilesResponseHandler::new);
+		registry.register(MessageType.SK_TOKEN_REQUEST, MutexHandler::new);
+		registry.register(MessageType.SK_TOKEN, MutexHandler::new);
+		registry.register(MessageType.SK_TOKEN_PROBE, MutexHandler::new);
+		registry.register(MessageType.SK_TOKEN_PROBE_REPLY, MutexHandler::new);
+		registry.register(MessageType.KEY_CHUNK, KeyChunkHandler::new);
+		registry.register(MessageType.KEY_CHUNK_ACK, KeyChunkAckHandler::new);
+		registry.register(MessageType.STABILIZE, StabilizeHandler::new);
+		registry.register(MessageType.STABILIZE_REPLY, StabilizeReplyHandler::new);
+		registry.register(MessageType.NOTIFY, NotifyHandler::new);
+		registry.register(MessageType.GOSSIP, GossipHandler::new);
+		registry.register(MessageType.HEARTBEAT, HeartbeatHandler::new);
+		registry.register(MessageType.LOCK_REQUEST, LockRequestHandler::new);
+		registry.register(MessageType.LOCK_GRANT, LockGrantHandler::new);
+		registry.register(MessageType.LOCK_RELEASE, LockReleaseHandler::new);
+		registry.register(MessageType.LOCK_RENEW, LockRenewHandler::new);
+		registry.register(MessageType.LOCK_HANDOFF, LockHandoffHandler::new);
+		registry.register(MessageType.RAYMOND_REQUEST, MutexHandler::new);
+		registry.register(MessageType.RAYMOND_PRIVILEGE, MutexHandler::new);
+		registry.register(MessageType.FILE_CHUNK, FileChunkHandler::new);
+		registry.register(MessageType.FILE_CHUNK_ACK, FileChunkAckHandler::new);
+
+		return registry;
+	}
+
+	public synchronized void register(MessageType type, HandlerFactory factory) {
+		handlers.put(type, factory.create());
+	}
+
+	/**
+	 * Runs handlers for this type on the given executor, instead of on the dispatching thread.
+	 * Pass null to go back to the default.
+	 */
+	public synchronized void setExecutor(MessageType type, Executor executor) {
+		if (executor == null) {
+			executors.remove(type);
+		} else {
+			executors.put(type, executor);
+		}
+	}
+
+	public synchronized MessageHandler getHandler(MessageType type) {
+		return handlers.getOrDefault(type, nullHandler);
+	}
+
+	/**
+	 * Hands the message to its handler, either right here or on the executor set for its type.
+	 */
+	public void dispatch(Message clientMessage) {
+		MessageHandler handler;
+		Executor executor;
+		synchronized (this) {
+			handler = handlers.getOrDefault(clientMessage.getMessageType(), nullHandler);
+			executor = executors.get(clientMessage.getMessageType());
+		}
+
+		if (executor == null) {
+			handler.handle(clientMessage);
+		} else {
+			executor.execute(() -> handler.handle(clientMessage));
+		}
+	}
+}
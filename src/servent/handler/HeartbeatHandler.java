@@ -0,0 +1,26 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.HeartbeatMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+import servent.message.util.MessageUtil;
+
+/**
+ * The failure detector already counted the message when it came in, so all that is left is to answer a ping.
+ */
+public class HeartbeatHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.HEARTBEAT) {
+			if (!((HeartbeatMessage) clientMessage).isReply()) {
+				MessageUtil.sendMessage(new HeartbeatMessage(AppConfig.myServentInfo.getListenerPort(),
+						clientMessage.getSenderPort(), true));
+			}
+		} else {
+			AppConfig.timestampedErrorPrint("Heartbeat handler got a message that is not HEARTBEAT");
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.KeyChunkAckMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class KeyChunkAckHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.KEY_CHUNK_ACK) {
+			KeyChunkAckMessage ack = (KeyChunkAckMessage) clientMessage;
+			AppConfig.chordState.onKeyChunkAck(ack.getTransferId(), ack.getSequence(), ack.isStored());
+		} else {
+			AppConfig.timestampedErrorPrint("Key chunk ack handler got a message that is not KEY_CHUNK_ACK");
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.KeyChunkAckMessage;
+import servent.message.KeyChunkMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+import servent.message.util.MessageUtil;
+
+/**
+ * Stores a chunk of the values handed over to us, by the node we join through or by a node that
+ * is leaving, and acks it so the sender can go on. Files come as uploads, see {@link app.FileTransfers}. A chunk that fails its checksum,
+ * or that we couldn't store, is acked as not stored and comes again.
+ */
+public class KeyChunkHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.KEY_CHUNK) {
+			KeyChunkMessage chunk = (KeyChunkMessage) clientMessage;
+
+			boolean stored = false;
+			if (chunk.isIntact()) {
+				stored = AppConfig.chordState.storeValues(chunk.getKeys(), chunk.getValues());
+			} else {
+				AppConfig.timestampedErrorPrint("Chunk " + chunk.getSequence() + " of transfer "
+						+ chunk.getTransferId() + " failed its checksum, asking for it again");
+			}
+
+			if (chunk.getSequence() != KeyChunkMessage.UNSEQUENCED) {
+				MessageUtil.sendMessage(new KeyChunkAckMessage(AppConfig.myServentInfo.getListenerPort(),
+						chunk.getSenderPort(), chunk.getTransferId(), chunk.getSequence(), stored));
+			}
+		} else {
+			AppConfig.timestampedErrorPrint("Key chunk handler got a message that is not KEY_CHUNK");
+		}
+	}
+
+}
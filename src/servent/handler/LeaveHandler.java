@@ -15,14 +15,8 @@ import servent.message.MessageType;
  */
 public class LeaveHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public LeaveHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         // 1) Provera tipa poruke
         if (clientMessage.getMessageType() != MessageType.LEAVE) {
             AppConfig.timestampedErrorPrint("LEAVE handler got something that is not LEAVE.");
@@ -80,31 +74,27 @@ public class LeaveHandler implements MessageHandler {
             );
         }
 
+        // Sender više nije u prstenu - izbacimo ga iz indeksa i preračunamo tabelu preskoka
+        AppConfig.chordState.nodeLeft(senderInfo);
+
         // 6) Ako je sender bio moj successor, postavimo novog successor-a:
         if (wasSuccessor) {
             if (newNeighbor != null) {
-                // Menjamo successorTable[0] i, po potrebi, osvežimo celu tabelu preskoka
-                ServentInfo[] table = AppConfig.chordState.getSuccessorTable();
-                table[0] = newNeighbor;
+                AppConfig.chordState.setSuccessor(newNeighbor);
                 AppConfig.timestampedStandardPrint(
                         "Updated successor to " +
                                 newNeighbor.getIpAddress() + ":" + newNeighbor.getListenerPort()
                 );
-                // (Opcionalno: nakon promene successorTable[0], možete pozvati metodu
-                // za ponovno izračunavanje svih skokova ako želite tačan finger table.)
             } else {
                 // Ako payload == "null", znači odlazi poslednji čvor u mreži.
                 // Tada mi nemamo successor-a više.
-                ServentInfo[] table = AppConfig.chordState.getSuccessorTable();
-                table[0] = null;
+                AppConfig.chordState.setSuccessor(null);
                 AppConfig.timestampedStandardPrint("Successor is now null (network is empty).");
             }
         }
 
-        // 7) (Opcionalno) Možete distribuirati pridržavanje DHT vrednosti:
-        //    ako je odlazeći čvor čuvao neke ključeve koji su sada u opsegu vaše odgovornosti,
-        //    treba da ih preuzmete. Međutim, u ovoj jednostavnoj implementaciji
-        //    to nije obavezno.
+        // 7) Vrednosti i fajlove odlazećeg čvora već imamo: on ih je predao (KEY_CHUNK)
+        //    pre nego što je poslao LEAVE, pa nam sada, kada ga više nema u indeksu, i pripadaju.
 
         // 8) Kod LEAVE ne šaljemo direktan ACK. Svaki čvor menja svoje pokazivače
         //    i nastavlja normalno.
@@ -12,14 +12,8 @@ import java.io.File;
 
 public class ListFilesHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public ListFilesHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.LIST_FILES) {
             AppConfig.timestampedErrorPrint("LIST_FILES handler got something that is not LIST_FILES.");
             return;
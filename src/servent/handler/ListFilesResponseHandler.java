@@ -1,18 +1,13 @@
 package servent.handler;
 
 import app.AppConfig;
+import app.lock.FileLocks;
 import servent.message.Message;
 import servent.message.MessageType;
 
 public class ListFilesResponseHandler implements MessageHandler{
-    private Message clientMessage;
-
-    public ListFilesResponseHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.LIST_FILES_RESPONSE) {
             AppConfig.timestampedErrorPrint("LIST_FILES_RESPONSE handler got wrong message type.");
             return;
@@ -28,8 +23,7 @@ public class ListFilesResponseHandler implements MessageHandler{
                 AppConfig.timestampedStandardPrint("  - " + fname);
             }
         }
-        // Release distributed mutex
-        AppConfig.timestampedStandardPrint("Releasing SK mutex after list_files response.");
-        AppConfig.releaseCSEntry();
+        AppConfig.timestampedStandardPrint("Releasing lock after list_files response.");
+        AppConfig.fileLocks.release(FileLocks.profile(clientMessage.getSenderPort()));
     }
 }
\ No newline at end of file
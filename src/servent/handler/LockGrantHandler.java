@@ -0,0 +1,20 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.LockGrantMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class LockGrantHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.LOCK_GRANT) {
+			LockGrantMessage grant = (LockGrantMessage) clientMessage;
+			AppConfig.keyedLocks.onGrant(grant.getName(), grant.getRequestId(), grant.getSenderPort());
+		} else {
+			AppConfig.timestampedErrorPrint("Lock grant handler got a message that is not LOCK_GRANT");
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.LockHandoffMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class LockHandoffHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.LOCK_HANDOFF) {
+			AppConfig.keyedLocks.onHandoff((LockHandoffMessage) clientMessage);
+		} else {
+			AppConfig.timestampedErrorPrint("Lock handoff handler got a message that is not LOCK_HANDOFF");
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.LockReleaseMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class LockReleaseHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.LOCK_RELEASE) {
+			LockReleaseMessage release = (LockReleaseMessage) clientMessage;
+			AppConfig.keyedLocks.onRelease(release.getName(), release.getSenderPort(), release.getRequestId());
+		} else {
+			AppConfig.timestampedErrorPrint("Lock release handler got a message that is not LOCK_RELEASE");
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.LockRenewMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class LockRenewHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.LOCK_RENEW) {
+			LockRenewMessage renew = (LockRenewMessage) clientMessage;
+			AppConfig.keyedLocks.onRenew(renew.getName(), renew.getSenderPort(), renew.getRequestId());
+		} else {
+			AppConfig.timestampedErrorPrint("Lock renew handler got a message that is not LOCK_RENEW");
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.LockRequestMessage;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class LockRequestHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.LOCK_REQUEST) {
+			AppConfig.keyedLocks.onRequest((LockRequestMessage) clientMessage);
+		} else {
+			AppConfig.timestampedErrorPrint("Lock request handler got a message that is not LOCK_REQUEST");
+		}
+	}
+
+}
@@ -1,12 +1,15 @@
 package servent.handler;
 
+import servent.message.Message;
+
 /**
- * Currently merely a decorative interface. Might get more
- * substantial in the future.
+ * Handles one type of message. Handlers are stateless - a single instance is
+ * registered in the {@link HandlerRegistry} and gets every message of its type,
+ * possibly from several threads at once.
  * @author bmilojkovic
  *
  */
-public interface MessageHandler extends Runnable {
+public interface MessageHandler {
 
-	
+	void handle(Message clientMessage);
 }
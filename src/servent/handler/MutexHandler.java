@@ -0,0 +1,16 @@
+package servent.handler;
+
+import app.AppConfig;
+import servent.message.Message;
+
+/**
+ * Hands the messages of the distributed mutex to whichever algorithm this deployment runs.
+ */
+public class MutexHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		AppConfig.mutex.handle(clientMessage);
+	}
+
+}
@@ -0,0 +1,19 @@
+package servent.handler;
+
+import app.AppConfig;
+import app.ServentInfo;
+import servent.message.Message;
+import servent.message.MessageType;
+
+public class NotifyHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.NOTIFY) {
+			AppConfig.chordState.notifyPredecessor(new ServentInfo("localhost", clientMessage.getSenderPort()));
+		} else {
+			AppConfig.timestampedErrorPrint("Notify handler got a message that is not NOTIFY");
+		}
+	}
+
+}
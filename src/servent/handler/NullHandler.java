@@ -10,14 +10,8 @@ import servent.message.Message;
  */
 public class NullHandler implements MessageHandler {
 
-	private final Message clientMessage;
-	
-	public NullHandler(Message clientMessage) {
-		this.clientMessage = clientMessage;
-	}
-	
 	@Override
-	public void run() {
+	public void handle(Message clientMessage) {
 		AppConfig.timestampedErrorPrint("Couldn't handle message: " + clientMessage);
 	}
 
@@ -14,14 +14,8 @@ import java.util.Map;
  */
 public class PendingHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public PendingHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() == MessageType.PENDING) {
             List<ServentInfo> pending = AppConfig.chordState.getPendingFollowers();
             if (pending.isEmpty()) {
@@ -6,14 +6,8 @@ import servent.message.MessageType;
 
 public class PutHandler implements MessageHandler {
 
-	private Message clientMessage;
-	
-	public PutHandler(Message clientMessage) {
-		this.clientMessage = clientMessage;
-	}
-	
 	@Override
-	public void run() {
+	public void handle(Message clientMessage) {
 		if (clientMessage.getMessageType() == MessageType.PUT) {
 			String[] splitText = clientMessage.getMessageText().split(":");
 			if (splitText.length == 2) {
@@ -13,14 +13,8 @@ import java.io.File;
 
 public class RemoveFilesHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public RemoveFilesHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.REMOVE_FILES) {
             AppConfig.timestampedErrorPrint("REMOVE_FILES handler got something that is not REMOVE_FILES.");
             return;
@@ -35,7 +29,7 @@ public class RemoveFilesHandler implements MessageHandler {
 
         try {
             // Calculate Chord key based on the relative file path
-            int key = ChordState.chordHash(relativeFilePath.hashCode());
+            int key = ChordState.keyOf(relativeFilePath);
             boolean iStoreIt = AppConfig.chordState.isKeyMine(key);
 
             if (iStoreIt) {
@@ -118,7 +112,7 @@ public class RemoveFilesHandler implements MessageHandler {
                     MessageType.REMOVE_FILE_RESPONSE,
                     AppConfig.myServentInfo.getListenerPort(),
                     originalRequesterActualPort,
-                    "FAIL:Unexpected error during removal of " + relativeFilePath
+                    "FAIL:" + relativeFilePath
             );
             MessageUtil.sendMessage(response);
         }
@@ -12,14 +12,8 @@ import servent.message.MessageType;
  */
 public class RemoveFilesResponseHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public RemoveFilesResponseHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.REMOVE_FILE_RESPONSE) {
             AppConfig.timestampedErrorPrint("REMOVE_FILE_RESPONSE handler got something that is not REMOVE_FILE_RESPONSE.");
             return;
@@ -28,8 +22,9 @@ public class RemoveFilesResponseHandler implements MessageHandler {
         String responseText = clientMessage.getMessageText().trim();
         AppConfig.timestampedStandardPrint("Stigao REMOVE_FILE_RESPONSE: " + responseText);
 
-        // Release distributed mutex
-        AppConfig.timestampedStandardPrint("Releasing SK mutex after remove_file response.");
-        AppConfig.releaseCSEntry();
+        // Odgovor je "OK:putanja" ili "FAIL:putanja"
+        String filePath = responseText.substring(responseText.indexOf(':') + 1);
+        AppConfig.timestampedStandardPrint("Releasing lock on " + filePath + " after remove_file response.");
+        AppConfig.fileLocks.release(filePath);
     }
 }
\ No newline at end of file
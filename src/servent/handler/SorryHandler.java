@@ -6,14 +6,8 @@ import servent.message.MessageType;
 
 public class SorryHandler implements MessageHandler {
 
-	private Message clientMessage;
-	
-	public SorryHandler(Message clientMessage) {
-		this.clientMessage = clientMessage;
-	}
-	
 	@Override
-	public void run() {
+	public void handle(Message clientMessage) {
 		if (clientMessage.getMessageType() == MessageType.SORRY) {
 			AppConfig.timestampedStandardPrint("Couldn't enter Chord system because of collision. Change my listener port, please.");
 			System.exit(0);
@@ -0,0 +1,31 @@
+package servent.handler;
+
+import java.util.List;
+
+import app.AppConfig;
+import app.ServentInfo;
+import servent.message.Message;
+import servent.message.MessageType;
+import servent.message.StabilizeReplyMessage;
+import servent.message.util.MessageUtil;
+
+public class StabilizeHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.STABILIZE) {
+			ServentInfo predecessor = AppConfig.chordState.getPredecessor();
+			List<ServentInfo> successors = AppConfig.chordState.getSuccessorList();
+			int[] successorPorts = new int[successors.size()];
+			for (int i = 0; i < successorPorts.length; i++) {
+				successorPorts[i] = successors.get(i).getListenerPort();
+			}
+
+			MessageUtil.sendMessage(new StabilizeReplyMessage(AppConfig.myServentInfo.getListenerPort(),
+					clientMessage.getSenderPort(), predecessor == null ? -1 : predecessor.getListenerPort(), successorPorts));
+		} else {
+			AppConfig.timestampedErrorPrint("Stabilize handler got a message that is not STABILIZE");
+		}
+	}
+
+}
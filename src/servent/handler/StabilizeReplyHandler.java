@@ -0,0 +1,22 @@
+package servent.handler;
+
+import app.AppConfig;
+import app.ServentInfo;
+import servent.message.Message;
+import servent.message.MessageType;
+import servent.message.StabilizeReplyMessage;
+
+public class StabilizeReplyHandler implements MessageHandler {
+
+	@Override
+	public void handle(Message clientMessage) {
+		if (clientMessage.getMessageType() == MessageType.STABILIZE_REPLY) {
+			StabilizeReplyMessage reply = (StabilizeReplyMessage) clientMessage;
+			AppConfig.chordState.onStabilizeReply(new ServentInfo("localhost", reply.getSenderPort()),
+					reply.getPredecessorPort(), reply.getSuccessorPorts());
+		} else {
+			AppConfig.timestampedErrorPrint("Stabilize reply handler got a message that is not STABILIZE_REPLY");
+		}
+	}
+
+}
@@ -8,17 +8,15 @@ import servent.message.MessageType;
 import app.ServentInfo;
 import servent.message.util.MessageUtil;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
 
-public class StopHandler implements MessageHandler {
-
-    private Message clientMessage;
 
-    public StopHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
+public class StopHandler implements MessageHandler {
 
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.STOP) {
             AppConfig.timestampedErrorPrint("STOP handler got something that is not STOP.");
             return;
@@ -26,6 +24,34 @@ public class StopHandler implements MessageHandler {
 
         AppConfig.timestampedStandardPrint("Received STOP. Initiating graceful leave...");
 
+        // Prvo predajemo vrednosti i fajlove čvorovima koji preuzimaju naše opsege,
+        // a tek kada oni potvrde, javljamo prstenu da odlazimo i gasimo se.
+        AppConfig.chordState.leave(() -> {
+            tellBootstrap();
+            announceLeave();
+            AppConfig.chordState.passOnWaitingJoins();
+            AppConfig.chordState.dropHandedOverValues();
+            if (AppConfig.cliParser != null) {
+                AppConfig.cliParser.stop();
+            }
+            AppConfig.shutdown();
+        });
+    }
+
+    /**
+     * Javljamo bootstrap-u da nas više nema, da ne bi slao nove čvorove nama.
+     */
+    private void tellBootstrap() {
+        try (Socket bsSocket = new Socket("localhost", AppConfig.BOOTSTRAP_PORT)) {
+            PrintWriter bsWriter = new PrintWriter(bsSocket.getOutputStream());
+            bsWriter.write("Left\n" + AppConfig.myServentInfo.getListenerPort() + "\n");
+            bsWriter.flush();
+        } catch (IOException e) {
+            AppConfig.timestampedErrorPrint("Couldn't tell the bootstrap server we left: " + e.getMessage());
+        }
+    }
+
+    private void announceLeave() {
         ServentInfo myInfo = AppConfig.myServentInfo;
         ServentInfo predecessor = AppConfig.chordState.getPredecessor();
 
@@ -81,6 +107,7 @@ public class StopHandler implements MessageHandler {
             );
         }
 
-        AppConfig.shutdown();
+        // Ostali čvorovi saznaju gossip-om
+        AppConfig.chordState.announceLeave();
     }
 }
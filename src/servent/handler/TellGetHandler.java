@@ -6,14 +6,8 @@ import servent.message.MessageType;
 
 public class TellGetHandler implements MessageHandler {
 
-	private Message clientMessage;
-	
-	public TellGetHandler(Message clientMessage) {
-		this.clientMessage = clientMessage;
-	}
-	
 	@Override
-	public void run() {
+	public void handle(Message clientMessage) {
 		if (clientMessage.getMessageType() == MessageType.TELL_GET) {
 			String parts[] = clientMessage.getMessageText().split(":");
 			
@@ -3,27 +3,22 @@ package servent.handler;
 import app.AppConfig;
 import servent.message.Message;
 import servent.message.MessageType;
+import servent.message.UploadResponseMessage;
 
 public class UploadResponseHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public UploadResponseHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         if (clientMessage.getMessageType() != MessageType.UPLOAD_RESPONSE) {
             AppConfig.timestampedErrorPrint("UPLOAD_RESPONSE handler got something that is not UPLOAD_RESPONSE.");
             return;
         }
 
-        String responseText = clientMessage.getMessageText();
-        AppConfig.timestampedStandardPrint("Stigao UPLOAD_RESPONSE: " + responseText);
+        UploadResponseMessage response = (UploadResponseMessage) clientMessage;
+        AppConfig.timestampedStandardPrint("Stigao UPLOAD_RESPONSE: " + response.getMessageText()
+                + " (transfer " + response.getTransferId() + ")");
 
-        // Release distributed mutex
-        AppConfig.timestampedStandardPrint("Releasing SK mutex after upload response.");
-        AppConfig.releaseCSEntry();
+        // završava upload i otpušta lock
+        AppConfig.fileTransfers.onUploadResponse(response.getTransferId(), response.getFilePath(), response.isStored());
     }
-}
\ No newline at end of file
+}
@@ -6,14 +6,8 @@ import servent.message.MessageType;
 
 public class VisibilityHandler implements MessageHandler {
 
-    private Message clientMessage;
-
-    public VisibilityHandler(Message clientMessage) {
-        this.clientMessage = clientMessage;
-    }
-
     @Override
-    public void run() {
+    public void handle(Message clientMessage) {
         // 1) Proverimo da li je tip poruke VISIBILITY
         if (clientMessage.getMessageType() != MessageType.VISIBILITY) {
             AppConfig.timestampedErrorPrint("VISIBILITY handler got something that is not VISIBILITY.");
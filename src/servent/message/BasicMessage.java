@@ -22,7 +22,7 @@ public class BasicMessage implements Message {
 	
 	//This gives us a unique id - incremented in every natural constructor.
 	private static AtomicInteger messageCounter = new AtomicInteger(0);
-	private final int messageId;
+	private int messageId;
 	
 	public BasicMessage(MessageType type, int senderPort, int receiverPort) {
 		this.type = type;
@@ -72,6 +72,14 @@ public class BasicMessage implements Message {
 		return messageId;
 	}
 	
+	/**
+	 * Codecs that rebuild a message through its normal constructor get a fresh local id.
+	 * This puts back the id the message had on the sending servent, so equality still works.
+	 */
+	public void restoreMessageId(int messageId) {
+		this.messageId = messageId;
+	}
+	
 	/**
 	 * Comparing messages is based on their unique id and the original sender port.
 	 */
@@ -103,9 +111,9 @@ public class BasicMessage implements Message {
 	 */
 	@Override
 	public String toString() {
-		return "[" + ChordState.chordHash(getSenderPort()) + "|" + getSenderPort() + "|" + getMessageId() + "|" +
+		return "[" + ChordState.nodeId("localhost", getSenderPort()) + "|" + getSenderPort() + "|" + getMessageId() + "|" +
 					getMessageText() + "|" + getMessageType() + "|" +
-					getReceiverPort() + "|" + ChordState.chordHash(getReceiverPort()) + "]";
+					getReceiverPort() + "|" + ChordState.nodeId(getReceiverIpAddress(), getReceiverPort()) + "]";
 	}
 
 }
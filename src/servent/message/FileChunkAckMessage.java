@@ -0,0 +1,40 @@
+package servent.message;
+
+/**
+ * Tells the uploader that a {@link FileChunkMessage} is written, or that it came in damaged and
+ * has to be sent again. With sequence {@link #READY} it comes first, from the node that will store
+ * the file, and says where the chunks go.
+ */
+public class FileChunkAckMessage extends BasicMessage {
+
+	private static final long serialVersionUID = -6410385533970182247L;
+
+	/**
+	 * Sequence of the ack that starts the transfer, before any chunk is sent.
+	 */
+	public static final int READY = -1;
+
+	private final int transferId;
+	private final int sequence;
+	private final boolean stored;
+
+	public FileChunkAckMessage(int senderPort, int receiverPort, int transferId, int sequence, boolean stored) {
+		super(MessageType.FILE_CHUNK_ACK, senderPort, receiverPort,
+				"transfer=" + transferId + (sequence == READY ? ", ready" : ", chunk=" + sequence + (stored ? ", stored" : ", resend")));
+		this.transferId = transferId;
+		this.sequence = sequence;
+		this.stored = stored;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public boolean isStored() {
+		return stored;
+	}
+}
@@ -0,0 +1,57 @@
+package servent.message;
+
+import java.util.zip.CRC32;
+
+/**
+ * One piece of a file being uploaded, sent straight to the node that stores the file. Chunk
+ * <code>sequence</code> starts at byte <code>sequence * FileTransfers.CHUNK_SIZE</code> of the file.
+ * The checksum lets the receiver tell a damaged chunk from a good one and ask for it again.
+ */
+public class FileChunkMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 5140627319861930442L;
+
+	private final int transferId;
+	private final int sequence;
+	private final byte[] data;
+	private final long checksum;
+
+	public FileChunkMessage(int senderPort, int receiverPort, int transferId, int sequence, byte[] data) {
+		this(senderPort, receiverPort, transferId, sequence, data, checksum(data));
+	}
+
+	public FileChunkMessage(int senderPort, int receiverPort, int transferId, int sequence, byte[] data, long checksum) {
+		super(MessageType.FILE_CHUNK, senderPort, receiverPort,
+				"transfer=" + transferId + ", chunk=" + sequence + ", bytes=" + data.length);
+		this.transferId = transferId;
+		this.sequence = sequence;
+		this.data = data;
+		this.checksum = checksum;
+	}
+
+	public static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	public boolean isIntact() {
+		return checksum(data) == checksum;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+}
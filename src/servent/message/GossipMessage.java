@@ -0,0 +1,38 @@
+package servent.message;
+
+/**
+ * Membership records passed on by gossip: for each servent its port, state
+ * (0 alive, 1 failed, 2 left) and incarnation.
+ */
+public class GossipMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 7851330962470281940L;
+
+	/**
+	 * States are 0 to <code>STATE_COUNT - 1</code>, anything else is refused.
+	 */
+	public static final int STATE_COUNT = 3;
+
+	private final int[] ports;
+	private final byte[] states;
+	private final long[] incarnations;
+
+	public GossipMessage(int senderPort, int receiverPort, int[] ports, byte[] states, long[] incarnations) {
+		super(MessageType.GOSSIP, senderPort, receiverPort, ports.length + " records");
+		this.ports = ports;
+		this.states = states;
+		this.incarnations = incarnations;
+	}
+
+	public int[] getPorts() {
+		return ports;
+	}
+
+	public byte[] getStates() {
+		return states;
+	}
+
+	public long[] getIncarnations() {
+		return incarnations;
+	}
+}
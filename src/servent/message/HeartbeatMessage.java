@@ -0,0 +1,21 @@
+package servent.message;
+
+/**
+ * Liveness ping from the {@link app.FailureDetector}, sent only to a servent we haven't heard from lately.
+ * The receiver answers with a reply, and replies are not answered.
+ */
+public class HeartbeatMessage extends BasicMessage {
+
+	private static final long serialVersionUID = -6330712869043781952L;
+
+	private final boolean reply;
+
+	public HeartbeatMessage(int senderPort, int receiverPort, boolean reply) {
+		super(MessageType.HEARTBEAT, senderPort, receiverPort, reply ? "reply" : "ping");
+		this.reply = reply;
+	}
+
+	public boolean isReply() {
+		return reply;
+	}
+}
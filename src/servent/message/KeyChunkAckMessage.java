@@ -0,0 +1,34 @@
+package servent.message;
+
+/**
+ * Tells the sender of a {@link KeyChunkMessage} that the chunk is stored, or that it came
+ * in damaged and has to be sent again.
+ */
+public class KeyChunkAckMessage extends BasicMessage {
+
+	private static final long serialVersionUID = -3174466911524508870L;
+
+	private final int transferId;
+	private final int sequence;
+	private final boolean stored;
+
+	public KeyChunkAckMessage(int senderPort, int receiverPort, int transferId, int sequence, boolean stored) {
+		super(MessageType.KEY_CHUNK_ACK, senderPort, receiverPort,
+				"transfer=" + transferId + ", chunk=" + sequence + (stored ? ", stored" : ", resend"));
+		this.transferId = transferId;
+		this.sequence = sequence;
+		this.stored = stored;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public boolean isStored() {
+		return stored;
+	}
+}
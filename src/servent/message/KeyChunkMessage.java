@@ -0,0 +1,76 @@
+package servent.message;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * One batch of DHT values handed over to the node that takes over part of the ring. The checksum
+ * covers all of it, so the receiver can tell a damaged chunk from a good one and ask for it again.
+ * Stored files go separately, as {@link FileChunkMessage}s.
+ */
+public class KeyChunkMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 4862190725513090342L;
+
+	/**
+	 * Sequence number of a value passed on after the handover. Those are not acked.
+	 */
+	public static final int UNSEQUENCED = -1;
+
+	private final int transferId;
+	private final int sequence;
+	private final int[] keys;
+	private final int[] values;
+	private final long checksum;
+
+	public KeyChunkMessage(int senderPort, int receiverPort, int transferId, int sequence,
+						   int[] keys, int[] values) {
+		this(senderPort, receiverPort, transferId, sequence, keys, values, checksum(keys, values));
+	}
+
+	public KeyChunkMessage(int senderPort, int receiverPort, int transferId, int sequence,
+						   int[] keys, int[] values, long checksum) {
+		super(MessageType.KEY_CHUNK, senderPort, receiverPort,
+				"transfer=" + transferId + ", chunk=" + sequence + ", keys=" + keys.length);
+		this.transferId = transferId;
+		this.sequence = sequence;
+		this.keys = keys;
+		this.values = values;
+		this.checksum = checksum;
+	}
+
+	public static long checksum(int[] keys, int[] values) {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(8 * Math.min(keys.length, values.length));
+		for (int i = 0; i < keys.length && i < values.length; i++) {
+			buffer.putInt(keys[i]).putInt(values[i]);
+		}
+		buffer.flip();
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	public boolean isIntact() {
+		return keys.length == values.length && checksum(keys, values) == checksum;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public int[] getKeys() {
+		return keys;
+	}
+
+	public int[] getValues() {
+		return values;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+}
@@ -0,0 +1,27 @@
+package servent.message;
+
+/**
+ * The sender now holds the lock for the receiver's request. It is released with a {@link LockReleaseMessage}
+ * back to the sender.
+ */
+public class LockGrantMessage extends BasicMessage {
+
+	private static final long serialVersionUID = -1870529313650412794L;
+
+	private final int requestId;
+	private final String name;
+
+	public LockGrantMessage(int senderPort, int receiverPort, int requestId, String name) {
+		super(MessageType.LOCK_GRANT, senderPort, receiverPort, name);
+		this.requestId = requestId;
+		this.name = name;
+	}
+
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,49 @@
+package servent.message;
+
+import app.lock.LockMode;
+
+/**
+ * The locks the sender arbitrated on names whose key the receiver now owns: for each request its name,
+ * requester port, request id, mode, and whether it holds the lock or is still waiting for it. The receiver
+ * arbitrates them from then on, see {@link app.lock.KeyedLocks}.
+ */
+public class LockHandoffMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 4412086935217730158L;
+
+	private final String[] names;
+	private final int[] ports;
+	private final int[] requestIds;
+	private final LockMode[] modes;
+	private final boolean[] held;
+
+	public LockHandoffMessage(int senderPort, int receiverPort, String[] names, int[] ports, int[] requestIds,
+							  LockMode[] modes, boolean[] held) {
+		super(MessageType.LOCK_HANDOFF, senderPort, receiverPort, names.length + " locks");
+		this.names = names;
+		this.ports = ports;
+		this.requestIds = requestIds;
+		this.modes = modes;
+		this.held = held;
+	}
+
+	public String[] getNames() {
+		return names;
+	}
+
+	public int[] getPorts() {
+		return ports;
+	}
+
+	public int[] getRequestIds() {
+		return requestIds;
+	}
+
+	public LockMode[] getModes() {
+		return modes;
+	}
+
+	public boolean[] getHeld() {
+		return held;
+	}
+}
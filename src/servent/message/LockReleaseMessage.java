@@ -0,0 +1,26 @@
+package servent.message;
+
+/**
+ * The sender is done with the lock it got for this request.
+ */
+public class LockReleaseMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 6097362254113690523L;
+
+	private final int requestId;
+	private final String name;
+
+	public LockReleaseMessage(int senderPort, int receiverPort, int requestId, String name) {
+		super(MessageType.LOCK_RELEASE, senderPort, receiverPort, name);
+		this.requestId = requestId;
+		this.name = name;
+	}
+
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,26 @@
+package servent.message;
+
+/**
+ * The sender still uses the lock it got for this request, and wants its lease started over.
+ */
+public class LockRenewMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 2981734410562039871L;
+
+	private final int requestId;
+	private final String name;
+
+	public LockRenewMessage(int senderPort, int receiverPort, int requestId, String name) {
+		super(MessageType.LOCK_RENEW, senderPort, receiverPort, name);
+		this.requestId = requestId;
+		this.name = name;
+	}
+
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,41 @@
+package servent.message;
+
+import app.lock.LockMode;
+
+/**
+ * Asks for a lock on a name. Travels around the ring to the owner of the name's key, which answers the
+ * requester directly with a {@link LockGrantMessage}.
+ */
+public class LockRequestMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 3518803642797165377L;
+
+	private final int requesterPort;
+	private final int requestId;
+	private final String name;
+	private final LockMode mode;
+
+	public LockRequestMessage(int senderPort, int receiverPort, int requesterPort, int requestId, String name, LockMode mode) {
+		super(MessageType.LOCK_REQUEST, senderPort, receiverPort, mode + " " + name + " for " + requesterPort);
+		this.requesterPort = requesterPort;
+		this.requestId = requestId;
+		this.name = name;
+		this.mode = mode;
+	}
+
+	public int getRequesterPort() {
+		return requesterPort;
+	}
+
+	public int getRequestId() {
+		return requestId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public LockMode getMode() {
+		return mode;
+	}
+}
@@ -0,0 +1,27 @@
+package servent.message;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Priority lanes for message processing. Control traffic (the Suzuki-Kasami token, file locks, ring
+ * maintenance, liveness) always goes before data traffic (DHT values, files, follows), both when we send
+ * and when we handle received messages. Every file operation waits on a lock, so a lock must never be stuck
+ * behind a burst of file traffic.
+ */
+public enum MessageLane {
+	CONTROL, DATA;
+
+	private static final Set<MessageType> CONTROL_TYPES = EnumSet.of(
+			MessageType.SK_TOKEN, MessageType.SK_TOKEN_REQUEST, MessageType.SK_TOKEN_PROBE, MessageType.SK_TOKEN_PROBE_REPLY,
+			MessageType.NEW_NODE, MessageType.WELCOME, MessageType.SORRY,
+			MessageType.LEAVE, MessageType.STOP, MessageType.POISON, MessageType.KEY_CHUNK_ACK,
+			MessageType.STABILIZE, MessageType.STABILIZE_REPLY, MessageType.NOTIFY, MessageType.GOSSIP,
+			MessageType.HEARTBEAT, MessageType.LOCK_REQUEST, MessageType.LOCK_GRANT, MessageType.LOCK_RELEASE,
+			MessageType.RAYMOND_REQUEST, MessageType.RAYMOND_PRIVILEGE, MessageType.FILE_CHUNK_ACK, MessageType.LOCK_RENEW,
+			MessageType.LOCK_HANDOFF);
+
+	public static MessageLane of(MessageType type) {
+		return CONTROL_TYPES.contains(type) ? CONTROL : DATA;
+	}
+}
@@ -1,5 +1,9 @@
 package servent.message;
 
+/**
+ * The binary codec sends the ordinal, so types are only ever appended. UPDATE is no longer sent -
+ * membership goes by {@link #GOSSIP} now - but keeps its place.
+ */
 public enum MessageType {
-	NEW_NODE, WELCOME, SORRY, UPDATE, PUT, ASK_GET, TELL_GET, POISON, FOLLOW, PENDING, ACCEPT, UPLOAD, VISIBILITY, LIST_FILES, REMOVE_FILES, LIST_FILES_RESPONSE, STOP, UPLOAD_RESPONSE, LEAVE, REMOVE_FILE_RESPONSE, SK_TOKEN, SK_TOKEN_REQUEST
+	NEW_NODE, WELCOME, SORRY, UPDATE, PUT, ASK_GET, TELL_GET, POISON, FOLLOW, PENDING, ACCEPT, UPLOAD, VISIBILITY, LIST_FILES, REMOVE_FILES, LIST_FILES_RESPONSE, STOP, UPLOAD_RESPONSE, LEAVE, REMOVE_FILE_RESPONSE, SK_TOKEN, SK_TOKEN_REQUEST, KEY_CHUNK, KEY_CHUNK_ACK, STABILIZE, STABILIZE_REPLY, NOTIFY, GOSSIP, HEARTBEAT, LOCK_REQUEST, LOCK_GRANT, LOCK_RELEASE, SK_TOKEN_PROBE, SK_TOKEN_PROBE_REPLY, RAYMOND_REQUEST, RAYMOND_PRIVILEGE, FILE_CHUNK, FILE_CHUNK_ACK, LOCK_RENEW, LOCK_HANDOFF
 }
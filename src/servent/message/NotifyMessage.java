@@ -0,0 +1,13 @@
+package servent.message;
+
+/**
+ * Chord's notify: the sender thinks it is the receiver's predecessor.
+ */
+public class NotifyMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 4409182759031236611L;
+
+	public NotifyMessage(int senderPort, int receiverPort) {
+		super(MessageType.NOTIFY, senderPort, receiverPort);
+	}
+}
@@ -0,0 +1,18 @@
+package servent.message;
+
+/**
+ * The token of Raymond's tree, passed to a neighbour that asked for it.
+ */
+public class RaymondPrivilegeMessage extends BasicMessage {
+    private static final long serialVersionUID = -2806153934272149508L;
+    private final int senderId;
+
+    public RaymondPrivilegeMessage(int senderPort, int receiverPort, int senderId) {
+        super(MessageType.RAYMOND_PRIVILEGE, senderPort, receiverPort, "RAYMOND_TOKEN: from=" + senderId);
+        this.senderId = senderId;
+    }
+
+    public int getSenderId() {
+        return senderId;
+    }
+}
@@ -0,0 +1,18 @@
+package servent.message;
+
+/**
+ * Asks a neighbour in Raymond's tree for the token, on behalf of everyone in the sender's queue.
+ */
+public class RaymondRequestMessage extends BasicMessage {
+    private static final long serialVersionUID = 5214880370529216013L;
+    private final int requesterId;
+
+    public RaymondRequestMessage(int senderPort, int receiverPort, int requesterId) {
+        super(MessageType.RAYMOND_REQUEST, senderPort, receiverPort, "RAYMOND_REQ: id=" + requesterId);
+        this.requesterId = requesterId;
+    }
+
+    public int getRequesterId() {
+        return requesterId;
+    }
+}
@@ -1,27 +1,95 @@
 package servent.message;
 
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.LinkedList;
 
+import servent.message.util.MessageUtil;
+
+/**
+ * The Suzuki-Kasami token. Servents are named by their listener port, and LN only has the servents that
+ * have been granted the token at least once - anyone missing was granted it 0 times.
+ *
+ * The token goes around a lot, so it doesn't carry all of LN. Each time it is sent its version goes up,
+ * and a servent asking for it says which version it last had. The token then carries only the grants
+ * that changed since that version, and the receiver puts them over its own old copy. A grant of 0 means
+ * the servent was dropped from LN. With <code>baseVersion</code> 0 the token carries LN whole.
+ *
+ * A servent started again on the same port counts its requests from 1 again, so each grant also says
+ * which run of the servent it was for - the time that run started. A grant for an earlier run than the
+ * requests we heard doesn't count.
+ */
 public class SKTokenMessage extends BasicMessage {
-    private static final long serialVersionUID = 2L; // Example version UID
-    private final int[] lnArray;
-    private final Queue<Integer> queue;
+    private static final long serialVersionUID = 5L;
+    private final int epoch;
+    private final int version;
+    private final int baseVersion;
+    // promenjeni LN unosi, portovi u rastućem redu
+    private final int[] ports;
+    private final int[] grants;
+    private final long[] incarnations;
+    private final int[] queue;
+
+    public SKTokenMessage(int senderPort, int receiverPort, int epoch, int version, int baseVersion,
+                          int[] ports, int[] grants, long[] incarnations, int[] queue) {
+        super(MessageType.SK_TOKEN, senderPort, receiverPort);
+        this.epoch = epoch;
+        this.version = version;
+        this.baseVersion = baseVersion;
+        this.ports = ports;
+        this.grants = grants;
+        this.incarnations = incarnations;
+        this.queue = queue;
+    }
+
+    /**
+     * Goes up each time the token is made anew, see {@link app.mutex.SKTokenRecovery}.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getVersion() {
+        return version;
+    }
 
-    public SKTokenMessage(int senderPort, int receiverPort, int[] lnArray, Queue<Integer> queue) {
-        super(MessageType.SK_TOKEN, senderPort, receiverPort,
-                "SK_TOKEN: LN=" + Arrays.toString(lnArray) + ", Q=" + queue.toString());
-        this.lnArray = lnArray;
-        // Ensure a serializable queue implementation is used, LinkedList is fine.
-        this.queue = new LinkedList<>(queue); // Make a copy to ensure serializability and immutability of message
+    /**
+     * The version of LN the grants here go over, 0 if they are all of it.
+     */
+    public int getBaseVersion() {
+        return baseVersion;
     }
 
-    public int[] getLN() {
-        return lnArray;
+    public int[] getPorts() {
+        return ports;
     }
 
-    public Queue<Integer> getQ() {
+    public int[] getGrants() {
+        return grants;
+    }
+
+    /**
+     * The run of the servent each grant is for, see {@link app.mutex.SuzukiKasamiMutex}. 0 with a grant of 0.
+     */
+    public long[] getIncarnations() {
+        return incarnations;
+    }
+
+    public int[] getQueue() {
         return queue;
     }
-}
\ No newline at end of file
+
+    /**
+     * Built only when the message is printed, the token is sent far more often than it is looked at.
+     */
+    @Override
+    public String getMessageText() {
+        if (!MessageUtil.MESSAGE_UTIL_PRINTING) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder("SK_TOKEN: epoch=").append(epoch).append(", v").append(version);
+        text.append(baseVersion == 0 ? ", LN=" : ", LN since v" + baseVersion + "=").append('{');
+        for (int i = 0; i < ports.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(ports[i]).append('=').append(grants[i]);
+        }
+        return text.append("}, Q=").append(Arrays.toString(queue)).toString();
+    }
+}
@@ -0,0 +1,42 @@
+package servent.message;
+
+/**
+ * "Do you have the token?" - sent to everyone by a servent that has waited too long for it.
+ * Carries the sender's request again, in case the first one was lost.
+ */
+public class SKTokenProbeMessage extends BasicMessage {
+    private static final long serialVersionUID = -4118937710585361042L;
+    private final int requesterId;
+    private final long incarnation;
+    private final int sequenceNumber;
+    private final int epoch;
+
+    public SKTokenProbeMessage(int senderPort, int receiverPort, int requesterId, long incarnation, int sequenceNumber,
+                               int epoch) {
+        super(MessageType.SK_TOKEN_PROBE, senderPort, receiverPort,
+                "SK_PROBE: id=" + requesterId + "@" + incarnation + ", sn=" + sequenceNumber + ", epoch=" + epoch);
+        this.requesterId = requesterId;
+        this.incarnation = incarnation;
+        this.sequenceNumber = sequenceNumber;
+        this.epoch = epoch;
+    }
+
+    public int getRequesterId() {
+        return requesterId;
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * The epoch a new token would get.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,57 @@
+package servent.message;
+
+/**
+ * Answer to a {@link SKTokenProbeMessage}: whether the sender has the token, and whether it waits for it.
+ */
+public class SKTokenProbeReplyMessage extends BasicMessage {
+    private static final long serialVersionUID = 7723310428315146597L;
+    private final int serventId;
+    private final int epoch;
+    private final boolean hasToken;
+    private final boolean waiting;
+    private final long incarnation;
+    private final int sequenceNumber;
+
+    public SKTokenProbeReplyMessage(int senderPort, int receiverPort, int serventId, int epoch,
+                                    boolean hasToken, boolean waiting, long incarnation, int sequenceNumber) {
+        super(MessageType.SK_TOKEN_PROBE_REPLY, senderPort, receiverPort,
+                "SK_PROBE_REPLY: id=" + serventId + ", epoch=" + epoch + ", hasToken=" + hasToken
+                        + ", waiting=" + waiting + ", run=" + incarnation + ", sn=" + sequenceNumber);
+        this.serventId = serventId;
+        this.epoch = epoch;
+        this.hasToken = hasToken;
+        this.waiting = waiting;
+        this.incarnation = incarnation;
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    public int getServentId() {
+        return serventId;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public boolean hasToken() {
+        return hasToken;
+    }
+
+    public boolean isWaiting() {
+        return waiting;
+    }
+
+    /**
+     * When the sender was started, its request number is from that run.
+     */
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    /**
+     * The sender's own request number.
+     */
+    public int getSequenceNumber() {
+        return sequenceNumber;
+    }
+}
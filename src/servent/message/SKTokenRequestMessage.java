@@ -1,22 +1,46 @@
 package servent.message;
 
 public class SKTokenRequestMessage extends BasicMessage {
-    private static final long serialVersionUID = 1L; // Example version UID
+    private static final long serialVersionUID = 3L;
     private final int senderId;
+    private final long incarnation;
     private final int sequenceNumber;
+    private final int seenEpoch;
+    private final int seenVersion;
 
-    public SKTokenRequestMessage(int senderPort, int receiverPort, int senderId, int sequenceNumber) {
+    /**
+     * @param incarnation when the requester was started, its request numbers count from 1 in each run
+     * @param seenEpoch   epoch of the last token the requester had
+     * @param seenVersion version of that token, 0 if it never had one - the token is then sent to it whole
+     */
+    public SKTokenRequestMessage(int senderPort, int receiverPort, int senderId, long incarnation, int sequenceNumber,
+                                 int seenEpoch, int seenVersion) {
         super(MessageType.SK_TOKEN_REQUEST, senderPort, receiverPort,
-                "SK_REQ: id=" + senderId + ", sn=" + sequenceNumber);
+                "SK_REQ: id=" + senderId + "@" + incarnation + ", sn=" + sequenceNumber + ", seen=" + seenEpoch + "/" + seenVersion);
         this.senderId = senderId;
+        this.incarnation = incarnation;
         this.sequenceNumber = sequenceNumber;
+        this.seenEpoch = seenEpoch;
+        this.seenVersion = seenVersion;
     }
 
     public int getRequesterId() {
         return senderId;
     }
 
+    public long getIncarnation() {
+        return incarnation;
+    }
+
     public int getSequenceNumber() {
         return sequenceNumber;
     }
-}
\ No newline at end of file
+
+    public int getSeenEpoch() {
+        return seenEpoch;
+    }
+
+    public int getSeenVersion() {
+        return seenVersion;
+    }
+}
@@ -0,0 +1,15 @@
+package servent.message;
+
+/**
+ * Asks a node for its predecessor and successor list. Sent to our successor every stabilization
+ * round, and to our predecessor and finger nodes just to see that they are still there.
+ * Always answered with a {@link StabilizeReplyMessage}.
+ */
+public class StabilizeMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 6120735564298617304L;
+
+	public StabilizeMessage(int senderPort, int receiverPort) {
+		super(MessageType.STABILIZE, senderPort, receiverPort);
+	}
+}
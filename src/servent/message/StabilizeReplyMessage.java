@@ -0,0 +1,30 @@
+package servent.message;
+
+import java.util.Arrays;
+
+/**
+ * Answer to a {@link StabilizeMessage}: the sender's predecessor (-1 if it has none)
+ * and the ports of the nodes in its successor list, nearest first.
+ */
+public class StabilizeReplyMessage extends BasicMessage {
+
+	private static final long serialVersionUID = -2751946820463329185L;
+
+	private final int predecessorPort;
+	private final int[] successorPorts;
+
+	public StabilizeReplyMessage(int senderPort, int receiverPort, int predecessorPort, int[] successorPorts) {
+		super(MessageType.STABILIZE_REPLY, senderPort, receiverPort,
+				"predecessor=" + predecessorPort + ", successors=" + Arrays.toString(successorPorts));
+		this.predecessorPort = predecessorPort;
+		this.successorPorts = successorPorts;
+	}
+
+	public int getPredecessorPort() {
+		return predecessorPort;
+	}
+
+	public int[] getSuccessorPorts() {
+		return successorPorts;
+	}
+}
@@ -0,0 +1,13 @@
+package servent.message;
+
+/**
+ * Asks a servent to leave the ring gracefully, handing its values and files over first.
+ */
+public class StopMessage extends BasicMessage {
+
+	private static final long serialVersionUID = 2367740167409855436L;
+
+	public StopMessage(int senderPort, int receiverPort) {
+		super(MessageType.STOP, senderPort, receiverPort);
+	}
+}
@@ -1,30 +1,46 @@
 package servent.message;
 
+/**
+ * Goes along the ring to the node that stores the file. That node then tells the original requester,
+ * with a {@link FileChunkAckMessage}, to send it the <code>size</code> bytes of the file in chunks.
+ *
+ * A handoff goes straight to the node taking over the file's key when its range moves, and is stored
+ * there even though that node doesn't own the key yet.
+ */
 public class UploadMessage extends BasicMessage {
-    private static final long serialVersionUID = 3L;
+    private static final long serialVersionUID = 5L;
     private final int originalRequesterPort;
+    private final int transferId;
     private final String filePath;
+    private final long size;
+    private final boolean handoff;
 
-    // Used by CLI command
-    public UploadMessage(int senderPort, int receiverPort, String filePath) {
-        super(MessageType.UPLOAD, senderPort, receiverPort, ""); // Message text not used for path now
-        this.originalRequesterPort = senderPort; // Initial sender is the original requester
-        this.filePath = filePath;
+    // Used by CLI command, and for handoffs
+    public UploadMessage(int senderPort, int receiverPort, int transferId, String filePath, long size, boolean handoff) {
+        this(senderPort, receiverPort, senderPort, transferId, filePath, size, handoff); // Initial sender is the original requester
     }
 
     // Used by handler when forwarding
-    public UploadMessage(int senderPort, int receiverPort, int originalRequesterPort, String filePath) {
+    public UploadMessage(int senderPort, int receiverPort, int originalRequesterPort, int transferId, String filePath, long size,
+                         boolean handoff) {
         super(MessageType.UPLOAD, senderPort, receiverPort, "");
         this.originalRequesterPort = originalRequesterPort;
+        this.transferId = transferId;
         this.filePath = filePath;
+        this.size = size;
+        this.handoff = handoff;
     }
 
     public int getOriginalRequesterPort() { return originalRequesterPort; }
+    public int getTransferId() { return transferId; }
     public String getFilePath() { return filePath; }
+    public long getSize() { return size; }
+    public boolean isHandoff() { return handoff; }
 
     @Override
     public String getMessageText() {
         // For consistent logging, or if BasicMessage's text is still used somewhere
-        return "UPLOAD_REQ: origPort=" + originalRequesterPort + ", path=" + filePath;
+        return "UPLOAD_REQ: origPort=" + originalRequesterPort + ", transfer=" + transferId + ", path=" + filePath
+                + ", size=" + size + (handoff ? ", handoff" : "");
     }
 }
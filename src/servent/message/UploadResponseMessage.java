@@ -1,14 +1,31 @@
 package servent.message;
 
+/**
+ * The storing node's answer to an upload, "OK:path" or "FAIL:path". It names the upload by the
+ * transfer id the uploader gave it, so two uploads of the same path can't take each other's answer.
+ */
 public class UploadResponseMessage extends BasicMessage {
+    private static final long serialVersionUID = 2L;
+    private final int transferId;
+    private final boolean stored;
+    private final String filePath;
 
-    // Convenience constructor: defaults the message type to UPLOAD_RESPONSE
-    public UploadResponseMessage(int senderPort, int receiverPort, String messageText) {
-        super(MessageType.UPLOAD_RESPONSE, senderPort, receiverPort, messageText);
+    public UploadResponseMessage(int senderPort, int receiverPort, int transferId, boolean stored, String filePath) {
+        super(MessageType.UPLOAD_RESPONSE, senderPort, receiverPort, (stored ? "OK:" : "FAIL:") + filePath);
+        this.transferId = transferId;
+        this.stored = stored;
+        this.filePath = filePath;
     }
 
-    // Full‐arg constructor (if you ever need to specify a different MessageType)
-    public UploadResponseMessage(MessageType type, int senderPort, int receiverPort, String messageText) {
-        super(type, senderPort, receiverPort, messageText);
+    public int getTransferId() {
+        return transferId;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
+    public String getFilePath() {
+        return filePath;
     }
 }
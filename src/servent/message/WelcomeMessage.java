@@ -1,20 +1,14 @@
 package servent.message;
 
-import java.util.Map;
-
+/**
+ * Lets a joining node into the ring. The values it takes over are streamed to it
+ * in {@link KeyChunkMessage}s before this is sent.
+ */
 public class WelcomeMessage extends BasicMessage {
 
 	private static final long serialVersionUID = -8981406250652693908L;
 
-	private Map<Integer, Integer> values;
-	
-	public WelcomeMessage(int senderPort, int receiverPort, Map<Integer, Integer> values) {
+	public WelcomeMessage(int senderPort, int receiverPort) {
 		super(MessageType.WELCOME, senderPort, receiverPort);
-		
-		this.values = values;
-	}
-	
-	public Map<Integer, Integer> getValues() {
-		return values;
 	}
 }
@@ -0,0 +1,480 @@
+package servent.message.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import app.lock.LockMode;
+import servent.message.*;
+
+/**
+ * A compact, versioned binary codec. The body of a frame looks like this:
+ * <pre>
+ * [format version][type tag][sender port][receiver port][message id][type-specific payload]
+ * </pre>
+ * The type tag is the ordinal of the {@link MessageType} (so new types must only ever be appended
+ * to the enum), and the ports, id and most payload numbers are varints.
+ *
+ * Each message class registers its own payload encoder, and each message type its own decoder.
+ * Message classes without an encoder are not handled here, and {@link MessageUtil} sends them
+ * with Java serialization instead.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+
+	public static final byte ID = 1;
+
+	/**
+	 * Bump this when the frame header changes. Decoders refuse anything newer than they know.
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	public interface PayloadEncoder<T extends Message> {
+		void encode(T message, DataOutputStream out) throws IOException;
+	}
+
+	public interface PayloadDecoder {
+		Message decode(MessageType type, int senderPort, int receiverPort, DataInputStream in) throws IOException;
+	}
+
+	/**
+	 * For the many messages that are just a type and a text.
+	 */
+	private interface TextMessageFactory {
+		Message create(MessageType type, int senderPort, int receiverPort, String text);
+	}
+
+	private static final MessageType[] TYPES = MessageType.values();
+
+	private final Map<Class<?>, PayloadEncoder<Message>> encoders = new ConcurrentHashMap<>();
+	private final Map<MessageType, PayloadDecoder> decoders = new EnumMap<>(MessageType.class);
+
+	public BinaryMessageCodec() {
+		registerTextMessage(AcceptMessage.class, MessageType.ACCEPT, AcceptMessage::new);
+		registerTextMessage(FollowMessage.class, MessageType.FOLLOW, FollowMessage::new);
+		registerTextMessage(PendingMessage.class, MessageType.PENDING, PendingMessage::new);
+		registerTextMessage(VisibilityMessage.class, MessageType.VISIBILITY, VisibilityMessage::new);
+		registerTextMessage(LeaveMessage.class, MessageType.LEAVE, LeaveMessage::new);
+		registerTextMessage(ListFilesMessage.class, MessageType.LIST_FILES, ListFilesMessage::new);
+		registerTextMessage(ListFilesResponseMessage.class, MessageType.LIST_FILES_RESPONSE, ListFilesResponseMessage::new);
+		registerTextMessage(RemoveFilesResponseMessage.class, MessageType.REMOVE_FILE_RESPONSE, RemoveFilesResponseMessage::new);
+		registerTextMessage(AskGetMessage.class, MessageType.ASK_GET,
+				(type, senderPort, receiverPort, text) -> new AskGetMessage(senderPort, receiverPort, text));
+
+		register(NewNodeMessage.class, MessageType.NEW_NODE,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new NewNodeMessage(senderPort, receiverPort));
+		register(SorryMessage.class, MessageType.SORRY,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new SorryMessage(senderPort, receiverPort));
+		register(PoisonMessage.class, MessageType.POISON,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new PoisonMessage());
+		register(StopMessage.class, MessageType.STOP,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new StopMessage(senderPort, receiverPort));
+		register(StabilizeMessage.class, MessageType.STABILIZE,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new StabilizeMessage(senderPort, receiverPort));
+		register(NotifyMessage.class, MessageType.NOTIFY,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new NotifyMessage(senderPort, receiverPort));
+		register(HeartbeatMessage.class, MessageType.HEARTBEAT,
+				(message, out) -> out.writeBoolean(message.isReply()),
+				(type, senderPort, receiverPort, in) -> new HeartbeatMessage(senderPort, receiverPort, in.readBoolean()));
+
+		register(PutMessage.class, MessageType.PUT,
+				BinaryMessageCodec::encodeKeyValueText,
+				(type, senderPort, receiverPort, in) -> new PutMessage(senderPort, receiverPort,
+						WireFormat.readSignedVarInt(in), WireFormat.readSignedVarInt(in)));
+		register(TellGetMessage.class, MessageType.TELL_GET,
+				BinaryMessageCodec::encodeKeyValueText,
+				(type, senderPort, receiverPort, in) -> new TellGetMessage(senderPort, receiverPort,
+						WireFormat.readSignedVarInt(in), WireFormat.readSignedVarInt(in)));
+
+		register(UploadResponseMessage.class, MessageType.UPLOAD_RESPONSE,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getTransferId());
+					out.writeBoolean(message.isStored());
+					WireFormat.writeString(out, message.getFilePath());
+				},
+				(type, senderPort, receiverPort, in) -> new UploadResponseMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), in.readBoolean(), WireFormat.readString(in)));
+		register(UploadMessage.class, MessageType.UPLOAD,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getOriginalRequesterPort());
+					WireFormat.writeVarInt(out, message.getTransferId());
+					WireFormat.writeString(out, message.getFilePath());
+					WireFormat.writeVarLong(out, message.getSize());
+					out.writeBoolean(message.isHandoff());
+				},
+				(type, senderPort, receiverPort, in) -> new UploadMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readVarInt(in), WireFormat.readString(in), WireFormat.readVarLong(in),
+						in.readBoolean()));
+		register(RemoveFileMessage.class, MessageType.REMOVE_FILES,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getOriginalRequesterPort());
+					WireFormat.writeString(out, message.getFilePath());
+				},
+				(type, senderPort, receiverPort, in) -> new RemoveFileMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readString(in)));
+
+		register(WelcomeMessage.class, MessageType.WELCOME,
+				(message, out) -> { },
+				(type, senderPort, receiverPort, in) -> new WelcomeMessage(senderPort, receiverPort));
+		register(KeyChunkMessage.class, MessageType.KEY_CHUNK,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getTransferId());
+					WireFormat.writeSignedVarInt(out, message.getSequence());
+					WireFormat.writeVarInt(out, message.getKeys().length);
+					WireFormat.writeSignedVarInts(out, message.getKeys());
+					WireFormat.writeSignedVarInts(out, message.getValues());
+					out.writeInt((int) message.getChecksum());
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int transferId = WireFormat.readVarInt(in);
+					int sequence = WireFormat.readSignedVarInt(in);
+					int count = WireFormat.readLength(in);
+					int[] keys = WireFormat.readSignedVarInts(in, count);
+					int[] values = WireFormat.readSignedVarInts(in, count);
+					long checksum = in.readInt() & 0xFFFFFFFFL;
+					return new KeyChunkMessage(senderPort, receiverPort, transferId, sequence, keys, values, checksum);
+				});
+		register(KeyChunkAckMessage.class, MessageType.KEY_CHUNK_ACK,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getTransferId());
+					WireFormat.writeVarInt(out, message.getSequence());
+					out.writeBoolean(message.isStored());
+				},
+				(type, senderPort, receiverPort, in) -> new KeyChunkAckMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readVarInt(in), in.readBoolean()));
+
+		register(FileChunkMessage.class, MessageType.FILE_CHUNK,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getTransferId());
+					WireFormat.writeVarInt(out, message.getSequence());
+					WireFormat.writeVarInt(out, message.getData().length);
+					out.write(message.getData());
+					out.writeInt((int) message.getChecksum());
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int transferId = WireFormat.readVarInt(in);
+					int sequence = WireFormat.readVarInt(in);
+					byte[] data = new byte[WireFormat.readLength(in)];
+					in.readFully(data);
+					long checksum = in.readInt() & 0xFFFFFFFFL;
+					return new FileChunkMessage(senderPort, receiverPort, transferId, sequence, data, checksum);
+				});
+		register(FileChunkAckMessage.class, MessageType.FILE_CHUNK_ACK,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getTransferId());
+					WireFormat.writeSignedVarInt(out, message.getSequence());
+					out.writeBoolean(message.isStored());
+				},
+				(type, senderPort, receiverPort, in) -> new FileChunkAckMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readSignedVarInt(in), in.readBoolean()));
+
+		register(StabilizeReplyMessage.class, MessageType.STABILIZE_REPLY,
+				(message, out) -> {
+					WireFormat.writeSignedVarInt(out, message.getPredecessorPort());
+					int[] successorPorts = message.getSuccessorPorts();
+					WireFormat.writeVarInt(out, successorPorts.length);
+					for (int port : successorPorts) {
+						WireFormat.writeVarInt(out, port);
+					}
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int predecessorPort = WireFormat.readSignedVarInt(in);
+					int[] successorPorts = new int[WireFormat.readLength(in)];
+					for (int i = 0; i < successorPorts.length; i++) {
+						successorPorts[i] = WireFormat.readVarInt(in);
+					}
+					return new StabilizeReplyMessage(senderPort, receiverPort, predecessorPort, successorPorts);
+				});
+
+		register(GossipMessage.class, MessageType.GOSSIP,
+				(message, out) -> {
+					int[] ports = message.getPorts();
+					WireFormat.writeVarInt(out, ports.length);
+					for (int i = 0; i < ports.length; i++) {
+						WireFormat.writeVarInt(out, ports[i]);
+						out.writeByte(message.getStates()[i]);
+						WireFormat.writeVarLong(out, message.getIncarnations()[i]);
+					}
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int count = WireFormat.readLength(in);
+					int[] ports = new int[count];
+					byte[] states = new byte[count];
+					long[] incarnations = new long[count];
+					for (int i = 0; i < count; i++) {
+						ports[i] = WireFormat.readVarInt(in);
+						states[i] = in.readByte();
+						if (states[i] < 0 || states[i] >= GossipMessage.STATE_COUNT) {
+							throw new IOException("Unknown membership state " + states[i]);
+						}
+						incarnations[i] = WireFormat.readVarLong(in);
+					}
+					return new GossipMessage(senderPort, receiverPort, ports, states, incarnations);
+				});
+
+		register(LockRequestMessage.class, MessageType.LOCK_REQUEST,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequesterPort());
+					WireFormat.writeVarInt(out, message.getRequestId());
+					out.writeByte(message.getMode().ordinal());
+					WireFormat.writeString(out, message.getName());
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int requesterPort = WireFormat.readVarInt(in);
+					int requestId = WireFormat.readVarInt(in);
+					int modeOrdinal = in.readUnsignedByte();
+					if (modeOrdinal >= LockMode.values().length) {
+						throw new IOException("Unknown lock mode " + modeOrdinal);
+					}
+					LockMode mode = LockMode.of(modeOrdinal);
+					return new LockRequestMessage(senderPort, receiverPort, requesterPort, requestId, WireFormat.readString(in), mode);
+				});
+		register(LockGrantMessage.class, MessageType.LOCK_GRANT,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequestId());
+					WireFormat.writeString(out, message.getName());
+				},
+				(type, senderPort, receiverPort, in) -> new LockGrantMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readString(in)));
+		register(LockReleaseMessage.class, MessageType.LOCK_RELEASE,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequestId());
+					WireFormat.writeString(out, message.getName());
+				},
+				(type, senderPort, receiverPort, in) -> new LockReleaseMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readString(in)));
+		register(LockRenewMessage.class, MessageType.LOCK_RENEW,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequestId());
+					WireFormat.writeString(out, message.getName());
+				},
+				(type, senderPort, receiverPort, in) -> new LockRenewMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readString(in)));
+		register(LockHandoffMessage.class, MessageType.LOCK_HANDOFF,
+				(message, out) -> {
+					String[] names = message.getNames();
+					WireFormat.writeVarInt(out, names.length);
+					for (int i = 0; i < names.length; i++) {
+						WireFormat.writeString(out, names[i]);
+						WireFormat.writeVarInt(out, message.getPorts()[i]);
+						WireFormat.writeVarInt(out, message.getRequestIds()[i]);
+						out.writeByte(message.getModes()[i].ordinal());
+						out.writeBoolean(message.getHeld()[i]);
+					}
+				},
+				(type, senderPort, receiverPort, in) -> {
+					int count = WireFormat.readLength(in);
+					String[] names = new String[count];
+					int[] ports = new int[count];
+					int[] requestIds = new int[count];
+					LockMode[] modes = new LockMode[count];
+					boolean[] held = new boolean[count];
+					for (int i = 0; i < count; i++) {
+						names[i] = WireFormat.readString(in);
+						ports[i] = WireFormat.readVarInt(in);
+						requestIds[i] = WireFormat.readVarInt(in);
+						int modeOrdinal = in.readUnsignedByte();
+						if (modeOrdinal >= LockMode.values().length) {
+							throw new IOException("Unknown lock mode " + modeOrdinal);
+						}
+						modes[i] = LockMode.of(modeOrdinal);
+						held[i] = in.readBoolean();
+					}
+					return new LockHandoffMessage(senderPort, receiverPort, names, ports, requestIds, modes, held);
+				});
+
+		register(SKTokenRequestMessage.class, MessageType.SK_TOKEN_REQUEST,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequesterId());
+					WireFormat.writeVarLong(out, message.getIncarnation());
+					WireFormat.writeVarInt(out, message.getSequenceNumber());
+					WireFormat.writeVarInt(out, message.getSeenEpoch());
+					WireFormat.writeVarInt(out, message.getSeenVersion());
+				},
+				(type, senderPort, receiverPort, in) -> new SKTokenRequestMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readVarLong(in), WireFormat.readVarInt(in), WireFormat.readVarInt(in),
+						WireFormat.readVarInt(in)));
+		register(SKTokenMessage.class, MessageType.SK_TOKEN, BinaryMessageCodec::encodeToken, BinaryMessageCodec::decodeToken);
+		register(SKTokenProbeMessage.class, MessageType.SK_TOKEN_PROBE,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getRequesterId());
+					WireFormat.writeVarLong(out, message.getIncarnation());
+					WireFormat.writeVarInt(out, message.getSequenceNumber());
+					WireFormat.writeVarInt(out, message.getEpoch());
+				},
+				(type, senderPort, receiverPort, in) -> new SKTokenProbeMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readVarLong(in), WireFormat.readVarInt(in), WireFormat.readVarInt(in)));
+		register(SKTokenProbeReplyMessage.class, MessageType.SK_TOKEN_PROBE_REPLY,
+				(message, out) -> {
+					WireFormat.writeVarInt(out, message.getServentId());
+					WireFormat.writeVarInt(out, message.getEpoch());
+					out.writeBoolean(message.hasToken());
+					out.writeBoolean(message.isWaiting());
+					WireFormat.writeVarLong(out, message.getIncarnation());
+					WireFormat.writeVarInt(out, message.getSequenceNumber());
+				},
+				(type, senderPort, receiverPort, in) -> new SKTokenProbeReplyMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in), WireFormat.readVarInt(in), in.readBoolean(), in.readBoolean(),
+						WireFormat.readVarLong(in), WireFormat.readVarInt(in)));
+		register(RaymondRequestMessage.class, MessageType.RAYMOND_REQUEST,
+				(message, out) -> WireFormat.writeVarInt(out, message.getRequesterId()),
+				(type, senderPort, receiverPort, in) -> new RaymondRequestMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in)));
+		register(RaymondPrivilegeMessage.class, MessageType.RAYMOND_PRIVILEGE,
+				(message, out) -> WireFormat.writeVarInt(out, message.getSenderId()),
+				(type, senderPort, receiverPort, in) -> new RaymondPrivilegeMessage(senderPort, receiverPort,
+						WireFormat.readVarInt(in)));
+	}
+
+	/**
+	 * Registers the payload encoder for a message class and the decoder for the message type it carries.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Message> void register(Class<T> messageClass, MessageType type,
+											 PayloadEncoder<T> encoder, PayloadDecoder decoder) {
+		encoders.put(messageClass, (PayloadEncoder<Message>) encoder);
+		synchronized (decoders) {
+			decoders.put(type, decoder);
+		}
+	}
+
+	private <T extends Message> void registerTextMessage(Class<T> messageClass, MessageType type, TextMessageFactory factory) {
+		register(messageClass, type,
+				(message, out) -> WireFormat.writeString(out, message.getMessageText()),
+				(messageType, senderPort, receiverPort, in) ->
+						factory.create(messageType, senderPort, receiverPort, WireFormat.readString(in)));
+	}
+
+	/**
+	 * PUT and TELL_GET carry "key:value" as text. On the wire we send the two numbers instead.
+	 */
+	private static void encodeKeyValueText(Message message, DataOutputStream out) throws IOException {
+		String[] parts = message.getMessageText().split(":");
+		WireFormat.writeSignedVarInt(out, Integer.parseInt(parts[0]));
+		WireFormat.writeSignedVarInt(out, Integer.parseInt(parts[1]));
+	}
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public boolean canEncode(Message message) {
+		return message instanceof BasicMessage && encoders.containsKey(message.getClass())
+				&& decoderFor(message.getMessageType()) != null;
+	}
+
+	@Override
+	public void encode(Message message, DataOutputStream out) throws IOException {
+		PayloadEncoder<Message> encoder = encoders.get(message.getClass());
+		if (encoder == null) {
+			throw new IOException("No binary encoder for " + message.getClass().getSimpleName());
+		}
+
+		WireFormat.writeVarInt(out, FORMAT_VERSION);
+		WireFormat.writeVarInt(out, message.getMessageType().ordinal());
+		WireFormat.writeVarInt(out, message.getSenderPort());
+		WireFormat.writeVarInt(out, message.getReceiverPort());
+		WireFormat.writeVarInt(out, message.getMessageId());
+		encoder.encode(message, out);
+	}
+
+	@Override
+	public Message decode(DataInputStream in) throws IOException {
+		int version = WireFormat.readVarInt(in);
+		if (version > FORMAT_VERSION) {
+			throw new IOException("Unsupported binary message format version " + version);
+		}
+
+		int typeTag = WireFormat.readVarInt(in);
+		if (typeTag < 0 || typeTag >= TYPES.length) {
+			throw new IOException("Unknown message type tag " + typeTag);
+		}
+		MessageType type = TYPES[typeTag];
+		int senderPort = WireFormat.readVarInt(in);
+		int receiverPort = WireFormat.readVarInt(in);
+		int messageId = WireFormat.readVarInt(in);
+
+		PayloadDecoder decoder = decoderFor(type);
+		if (decoder == null) {
+			throw new IOException("No binary decoder for " + type);
+		}
+
+		Message message = decoder.decode(type, senderPort, receiverPort, in);
+		if (message instanceof BasicMessage) {
+			((BasicMessage) message).restoreMessageId(messageId);
+		}
+		return message;
+	}
+
+	private PayloadDecoder decoderFor(MessageType type) {
+		synchronized (decoders) {
+			return decoders.get(type);
+		}
+	}
+
+	/**
+	 * The token's LN goes as the ports in rising order, each as the gap from the one before, with its grant,
+	 * and the queue as a count and the ports. A port is then a byte or two, not the four of an int.
+	 * A grant's incarnation goes as the difference from the one before - servents started around the same
+	 * time differ by a few bytes - and not at all for a grant of 0.
+	 */
+	private static void encodeToken(SKTokenMessage message, DataOutputStream out) throws IOException {
+		WireFormat.writeVarInt(out, message.getEpoch());
+		WireFormat.writeVarInt(out, message.getVersion());
+		WireFormat.writeVarInt(out, message.getBaseVersion());
+		int[] ports = message.getPorts();
+		int[] grants = message.getGrants();
+		long[] incarnations = message.getIncarnations();
+		WireFormat.writeVarInt(out, ports.length);
+		int previous = 0;
+		long previousIncarnation = 0;
+		for (int i = 0; i < ports.length; i++) {
+			WireFormat.writeVarInt(out, ports[i] - previous);
+			WireFormat.writeVarInt(out, grants[i]);
+			if (grants[i] > 0) {
+				WireFormat.writeSignedVarLong(out, incarnations[i] - previousIncarnation);
+				previousIncarnation = incarnations[i];
+			}
+			previous = ports[i];
+		}
+		WireFormat.writeVarInt(out, message.getQueue().length);
+		for (int port : message.getQueue()) {
+			WireFormat.writeVarInt(out, port);
+		}
+	}
+
+	private static Message decodeToken(MessageType type, int senderPort, int receiverPort, DataInputStream in) throws IOException {
+		int epoch = WireFormat.readVarInt(in);
+		int version = WireFormat.readVarInt(in);
+		int baseVersion = WireFormat.readVarInt(in);
+		int[] ports = new int[WireFormat.readLength(in)];
+		int[] grants = new int[ports.length];
+		long[] incarnations = new long[ports.length];
+		int previous = 0;
+		long previousIncarnation = 0;
+		for (int i = 0; i < ports.length; i++) {
+			ports[i] = previous + WireFormat.readVarInt(in);
+			grants[i] = WireFormat.readVarInt(in);
+			if (grants[i] > 0) {
+				incarnations[i] = previousIncarnation + WireFormat.readSignedVarLong(in);
+				previousIncarnation = incarnations[i];
+			}
+			previous = ports[i];
+		}
+		int[] queue = new int[WireFormat.readLength(in)];
+		for (int i = 0; i < queue.length; i++) {
+			queue[i] = WireFormat.readVarInt(in);
+		}
+		return new SKTokenMessage(senderPort, receiverPort, epoch, version, baseVersion, ports, grants, incarnations, queue);
+	}
+}
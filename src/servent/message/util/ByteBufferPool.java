@@ -0,0 +1,84 @@
+package servent.message.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of heap byte buffers in power of two size classes, from {@link #MIN_SIZE} to {@link #MAX_SIZE}.
+ * The listener reads every frame into one of these, so the steady stream of small messages doesn't
+ * allocate a new buffer each time. Bigger frames (key chunks, file uploads) get a one-off buffer.
+ */
+public class ByteBufferPool {
+
+	public static final int MIN_SIZE = 256;
+	public static final int MAX_SIZE = 64 * 1024;
+
+	/**
+	 * How many free buffers we keep per size class. Anything returned above this is left to the GC.
+	 */
+	private static final int MAX_FREE_PER_CLASS = 64;
+
+	private final List<Queue<ByteBuffer>> freeBuffers;
+	private final AtomicInteger[] freeCounts;
+
+	public ByteBufferPool() {
+		int classCount = sizeClass(MAX_SIZE) + 1;
+		freeBuffers = new ArrayList<>(classCount);
+		freeCounts = new AtomicInteger[classCount];
+		for (int i = 0; i < classCount; i++) {
+			freeBuffers.add(new ConcurrentLinkedQueue<>());
+			freeCounts[i] = new AtomicInteger();
+		}
+	}
+
+	private static int sizeClass(int capacity) {
+		int size = MIN_SIZE;
+		int sizeClass = 0;
+		while (size < capacity) {
+			size <<= 1;
+			sizeClass++;
+		}
+		return sizeClass;
+	}
+
+	/**
+	 * @return a cleared buffer with at least the given capacity, and its limit set to exactly that capacity
+	 */
+	public ByteBuffer acquire(int capacity) {
+		if (capacity > MAX_SIZE) {
+			return ByteBuffer.allocate(capacity);
+		}
+
+		int sizeClass = sizeClass(capacity);
+		ByteBuffer buffer = freeBuffers.get(sizeClass).poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(MIN_SIZE << sizeClass);
+		} else {
+			freeCounts[sizeClass].decrementAndGet();
+		}
+		buffer.clear();
+		buffer.limit(capacity);
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back. It must not be used by the caller after this.
+	 */
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		if (capacity > MAX_SIZE || Integer.bitCount(capacity) != 1 || capacity < MIN_SIZE) {
+			return;
+		}
+
+		int sizeClass = sizeClass(capacity);
+		if (freeCounts[sizeClass].incrementAndGet() <= MAX_FREE_PER_CLASS) {
+			freeBuffers.get(sizeClass).offer(buffer);
+		} else {
+			freeCounts[sizeClass].decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package servent.message.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import app.lock.LockMode;
+import servent.message.FileChunkMessage;
+import servent.message.GossipMessage;
+import servent.message.HeartbeatMessage;
+import servent.message.KeyChunkMessage;
+import servent.message.LockRequestMessage;
+import servent.message.Message;
+import servent.message.PutMessage;
+import servent.message.SKTokenMessage;
+import servent.message.SKTokenRequestMessage;
+import servent.message.StabilizeReplyMessage;
+import servent.message.UploadMessage;
+
+/**
+ * Offline comparison of {@link JavaSerializationCodec} and {@link BinaryMessageCodec}: for a message of each
+ * kind that servents send a lot, the encoded size and how many times a second it is encoded and decoded again.
+ *
+ * Usage: <code>java servent.message.util.CodecBenchmark [iterations]</code>
+ * <br>
+ * Token and gossip are for a ring of 10 servents, the key and file chunks are as big as a handoff and an
+ * upload make them.
+ */
+public class CodecBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		MessageCodec java = new JavaSerializationCodec();
+		MessageCodec binary = new BinaryMessageCodec();
+
+		System.out.println("iterations=" + iterations);
+		System.out.printf("%-18s %11s %13s %7s %15s %17s%n", "message", "java bytes", "binary bytes", "ratio",
+				"java ops/s", "binary ops/s");
+		for (Map.Entry<String, Message> entry : messages().entrySet()) {
+			Message message = entry.getValue();
+			if (!binary.canEncode(message)) {
+				System.out.printf("%-18s has no binary encoder%n", entry.getKey());
+				continue;
+			}
+			int javaSize = encode(java, message).length;
+			int binarySize = encode(binary, message).length;
+			// kraći prolaz da JIT zagreje oba kodeka
+			roundTrips(java, message, iterations / 10);
+			roundTrips(binary, message, iterations / 10);
+			double javaRate = roundTrips(java, message, iterations);
+			double binaryRate = roundTrips(binary, message, iterations);
+			System.out.printf("%-18s %11d %13d %6.2fx %15.0f %17.0f%n", entry.getKey(), javaSize, binarySize,
+					(double) javaSize / binarySize, javaRate, binaryRate);
+		}
+	}
+
+	private static Map<String, Message> messages() {
+		Random random = new Random(1);
+		int servents = 10;
+		int[] ports = new int[servents];
+		int[] grants = new int[servents];
+		long[] incarnations = new long[servents];
+		byte[] states = new byte[servents];
+		long startedAt = System.currentTimeMillis();
+		for (int i = 0; i < servents; i++) {
+			ports[i] = 1100 + 100 * i;
+			grants[i] = 1 + random.nextInt(50);
+			incarnations[i] = startedAt + random.nextInt(5000);
+		}
+
+		int[] keys = new int[4096];
+		int[] values = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextInt(1 << 16);
+			values[i] = random.nextInt();
+		}
+		byte[] data = new byte[32 * 1024];
+		random.nextBytes(data);
+
+		Map<String, Message> messages = new LinkedHashMap<>();
+		messages.put("PUT", new PutMessage(1100, 1200, 4242, 123456));
+		messages.put("HEARTBEAT", new HeartbeatMessage(1100, 1200, false));
+		messages.put("STABILIZE_REPLY", new StabilizeReplyMessage(1100, 1200, 1000, new int[] {1300, 1400, 1500}));
+		messages.put("GOSSIP", new GossipMessage(1100, 1200, ports, states, incarnations));
+		messages.put("SK_TOKEN_REQUEST", new SKTokenRequestMessage(1100, 1200, 1100, startedAt, 17, 2, 40));
+		messages.put("SK_TOKEN", new SKTokenMessage(1100, 1200, 2, 40, 35, ports, grants, incarnations,
+				new int[] {1300, 1700, 2000}));
+		messages.put("LOCK_REQUEST", new LockRequestMessage(1100, 1200, 1100, 7, "docs/report.txt", LockMode.WRITE));
+		messages.put("UPLOAD", new UploadMessage(1100, 1200, 3, "docs/report.txt", 1_500_000, false));
+		messages.put("KEY_CHUNK", new KeyChunkMessage(1100, 1200, 1, 0, keys, values));
+		messages.put("FILE_CHUNK", new FileChunkMessage(1100, 1200, 3, 0, data));
+		return messages;
+	}
+
+	private static byte[] encode(MessageCodec codec, Message message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		codec.encode(message, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return round trips per second
+	 */
+	private static double roundTrips(MessageCodec codec, Message message, int iterations) throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			byte[] encoded = encode(codec, message);
+			codec.decode(new DataInputStream(new ByteArrayInputStream(encoded)));
+		}
+		return iterations * 1e9 / (System.nanoTime() - start);
+	}
+}
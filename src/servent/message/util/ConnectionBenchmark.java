@@ -0,0 +1,146 @@
+package servent.message.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import servent.message.PutMessage;
+
+/**
+ * Offline comparison of sending every message over a socket of its own, like servents used to, with
+ * the pooled connections of {@link ConnectionManager}. A listener in this process reads the frames and
+ * counts them, <code>senders</code> threads send <code>messages</code> PUTs between them, and we measure
+ * how long it takes until all of them were read.
+ *
+ * Usage: <code>java servent.message.util.ConnectionBenchmark [messages] [senders] [codec]</code>
+ * <br>
+ * Each way runs once to warm up and once measured. Every socket of its own leaves a port in TIME_WAIT,
+ * so keep <code>messages</code> well under the number of ephemeral ports.
+ */
+public class ConnectionBenchmark {
+
+	private interface Sender {
+		void send(PutMessage message) throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int senders = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		String codec = args.length > 2 ? args[2] : "binary";
+		if (!MessageUtil.setOutgoingCodec(codec)) {
+			System.err.println("Unknown codec " + codec);
+			return;
+		}
+
+		try (ServerSocket listener = new ServerSocket(0)) {
+			AtomicLong received = new AtomicLong();
+			ExecutorService readers = Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+			readers.execute(() -> accept(listener, readers, received));
+			int port = listener.getLocalPort();
+
+			Sender perMessage = message -> {
+				try (Socket socket = new Socket("localhost", port)) {
+					socket.setTcpNoDelay(true);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+					MessageUtil.writeMessage(out, message);
+				}
+			};
+			Sender pooled = message -> ConnectionManager.getInstance().send(message);
+
+			System.out.println("messages=" + messages + ", senders=" + senders + ", codec=" + codec);
+			System.out.printf("%-12s %12s %14s %10s%n", "connection", "msgs/s", "us/message", "total ms");
+			for (boolean measured : new boolean[] {false, true}) {
+				run("per message", perMessage, port, messages, senders, received, measured);
+				run("pooled", pooled, port, messages, senders, received, measured);
+			}
+			ConnectionManager.getInstance().closeAll();
+			readers.shutdownNow();
+		}
+	}
+
+	private static void accept(ServerSocket listener, ExecutorService readers, AtomicLong received) {
+		while (!listener.isClosed()) {
+			Socket socket;
+			try {
+				socket = listener.accept();
+			} catch (IOException e) {
+				return;
+			}
+			readers.execute(() -> read(socket, received));
+		}
+	}
+
+	/**
+	 * Reads frames the way the listener does, without decoding them - both ways decode the same.
+	 */
+	private static void read(Socket socket, AtomicLong received) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			byte[] body = new byte[256];
+			while (true) {
+				int length = in.readInt();
+				if (length > body.length) {
+					body = new byte[length];
+				}
+				in.readFully(body, 0, length);
+				received.incrementAndGet();
+			}
+		} catch (EOFException e) {
+			// sender closed the connection
+		} catch (IOException e) {
+			System.err.println("Reader failed: " + e);
+		}
+	}
+
+	private static void run(String name, Sender sender, int port, int messages, int senders, AtomicLong received,
+							boolean measured) throws InterruptedException {
+		long expected = received.get() + messages;
+		Thread[] threads = new Thread[senders];
+		long start = System.nanoTime();
+		for (int t = 0; t < senders; t++) {
+			int from = messages * t / senders;
+			int to = messages * (t + 1) / senders;
+			threads[t] = new Thread(() -> {
+				for (int i = from; i < to; i++) {
+					try {
+						sender.send(new PutMessage(1100, port, i, i));
+					} catch (IOException e) {
+						System.err.println(name + " send failed: " + e);
+						return;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (received.get() < expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		long nanos = System.nanoTime() - start;
+
+		if (received.get() < expected) {
+			System.out.printf("%-12s only %d of %d messages arrived%n", name, messages - (expected - received.get()), messages);
+			received.set(expected);
+			return;
+		}
+		if (measured) {
+			System.out.printf("%-12s %12.0f %14.1f %10d%n", name, messages * 1e9 / nanos, nanos / 1e3 / messages,
+					TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+	}
+}
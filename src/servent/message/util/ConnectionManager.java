@@ -0,0 +1,189 @@
+package servent.message.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import app.AppConfig;
+import servent.message.Message;
+import servent.message.MessageLane;
+
+/**
+ * Keeps long-lived outbound connections to each peer, keyed by the receiver's <code>ip:port</code>.
+ * Every message to the same peer is written as a frame onto the same socket, so we don't pay
+ * for a TCP handshake (and an ephemeral port) per message any more. Data lane messages - file
+ * chunks of up to {@link app.FileTransfers#CHUNK_SIZE} bytes among them - get a second connection
+ * of their own, keyed <code>ip:port/data</code>, so a control frame never waits behind one on the wire.
+ *
+ * Connections that were not used for {@link #IDLE_TIMEOUT_MS} are closed by a background evictor.
+ * The other side notices the close as an end of stream and stops reading.
+ * A connection the other side closes (usually because that servent stopped) is dropped as soon
+ * as we see the close, so a servent that restarts on the same port gets a fresh connection.
+ */
+public class ConnectionManager {
+
+	/**
+	 * How long a connection can sit unused before we close it.
+	 */
+	public static final long IDLE_TIMEOUT_MS = 30000;
+
+	private static final int CONNECT_TIMEOUT_MS = 2000;
+
+	private static final ConnectionManager INSTANCE = new ConnectionManager();
+
+	public static ConnectionManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A single pooled connection. Writes are synchronized, so frames from
+	 * different sender threads never interleave on the wire.
+	 */
+	private static class PeerConnection {
+
+		private final Socket socket;
+		private final DataOutputStream out;
+		private volatile long lastUsed;
+
+		PeerConnection(String ipAddress, int port) throws IOException {
+			this.socket = new Socket();
+			this.socket.connect(new InetSocketAddress(ipAddress, port), CONNECT_TIMEOUT_MS);
+			this.socket.setTcpNoDelay(true);
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		synchronized void write(Message message) throws IOException {
+			MessageUtil.writeMessage(out, message);
+			lastUsed = System.currentTimeMillis();
+		}
+
+		boolean isIdle(long now) {
+			return now - lastUsed > IDLE_TIMEOUT_MS;
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException ignored) { }
+		}
+	}
+
+	private final Map<String, PeerConnection> connections = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictor;
+
+	private ConnectionManager() {
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-evictor");
+			t.setDaemon(true);
+			return t;
+		});
+		evictor.scheduleWithFixedDelay(this::evictIdle, IDLE_TIMEOUT_MS, IDLE_TIMEOUT_MS / 2, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends the message over the pooled connection to its receiver, opening one if needed.
+	 * If the pooled connection turns out to be broken (peer restarted, evicted on the other side...)
+	 * it is dropped and the send is retried once on a fresh connection.
+	 */
+	public void send(Message message) throws IOException {
+		String key = message.getReceiverIpAddress() + ":" + message.getReceiverPort();
+		if (MessageLane.of(message.getMessageType()) == MessageLane.DATA) {
+			key += "/data";
+		}
+
+		PeerConnection connection = getOrOpen(key, message);
+		try {
+			connection.write(message);
+		} catch (IOException e) {
+			discard(key, connection);
+
+			connection = getOrOpen(key, message);
+			try {
+				connection.write(message);
+			} catch (IOException retryEx) {
+				discard(key, connection);
+				throw retryEx;
+			}
+		}
+	}
+
+	private PeerConnection getOrOpen(String key, Message message) throws IOException {
+		PeerConnection connection = connections.get(key);
+		if (connection != null) {
+			return connection;
+		}
+
+		/*
+		 * Connect outside of any lock, so a slow or dead peer doesn't hold up sends to everyone else.
+		 * If two threads race to open the same connection, the loser just closes its own.
+		 */
+		PeerConnection opened = new PeerConnection(message.getReceiverIpAddress(), message.getReceiverPort());
+		PeerConnection existing = connections.putIfAbsent(key, opened);
+		if (existing != null) {
+			opened.close();
+			return existing;
+		}
+		watchForClose(key, opened);
+		return opened;
+	}
+
+	/**
+	 * Peers never write back on our connection, so a read on it only returns once the peer has
+	 * closed it. Without this we would notice only on a later send, and a write onto a socket the
+	 * peer has closed often still succeeds locally - the message is just lost.
+	 */
+	private void watchForClose(String key, PeerConnection connection) {
+		Thread watcher = new Thread(() -> {
+			try {
+				while (connection.socket.getInputStream().read() != -1) {
+					// nothing is ever sent back, skip it
+				}
+			} catch (IOException ignored) {
+				// we closed it ourselves, or the peer reset it
+			}
+			discard(key, connection);
+		}, "connection-watch-" + key);
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private void discard(String key, PeerConnection connection) {
+		connections.remove(key, connection);
+		connection.close();
+	}
+
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, PeerConnection> entry : connections.entrySet()) {
+			PeerConnection connection = entry.getValue();
+			if (connection.isIdle(now)) {
+				synchronized (connection) {
+					if (connection.isIdle(now)) {
+						discard(entry.getKey(), connection);
+						if (MessageUtil.MESSAGE_UTIL_PRINTING) {
+							AppConfig.timestampedStandardPrint("Closed idle connection to " + entry.getKey());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes every pooled connection. Used on shutdown.
+	 */
+	public void closeAll() {
+		evictor.shutdownNow();
+		for (Map.Entry<String, PeerConnection> entry : connections.entrySet()) {
+			discard(entry.getKey(), entry.getValue());
+		}
+	}
+}
@@ -1,8 +1,6 @@
 package servent.message.util;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 
 import app.AppConfig;
 import servent.message.Message;
@@ -10,6 +8,8 @@ import servent.message.Message;
 /**
  * This worker sends a message asynchronously. Doing this in a separate thread
  * has the added benefit of being able to delay without blocking main or somesuch.
+ * The delay itself comes from the {@link SendDelayPolicy}, and {@link MessageUtil} waits it
+ * out before this worker is queued, so a delayed message doesn't hold a sender thread.
  * 
  * @author bmilojkovic
  *
@@ -23,30 +23,15 @@ public class DelayedMessageSender implements Runnable {
 	}
 	
 	public void run() {
-		/*
-		 * A random sleep before sending.
-		 * It is important to take regular naps for health reasons.
-		 */
-		try {
-			Thread.sleep((long)(Math.random() * 1000) + 500);
-		} catch (InterruptedException e1) {
-			e1.printStackTrace();
-		}
-		
-		if (MessageUtil.MESSAGE_UTIL_PRINTING) {
+		if (MessageUtil.isPrinted(messageToSend)) {
 			AppConfig.timestampedStandardPrint("Sending message " + messageToSend);
 		}
 		
 		try {
-			Socket sendSocket = new Socket(messageToSend.getReceiverIpAddress(), messageToSend.getReceiverPort());
-			
-			ObjectOutputStream oos = new ObjectOutputStream(sendSocket.getOutputStream());
-			oos.writeObject(messageToSend);
-			oos.flush();
-			
-			sendSocket.close();
+			ConnectionManager.getInstance().send(messageToSend);
 		} catch (IOException e) {
 			AppConfig.timestampedErrorPrint("Couldn't send message: " + messageToSend.toString());
+			AppConfig.chordState.getFailureDetector().sendFailed(messageToSend.getReceiverPort());
 		}
 	}
 	
@@ -0,0 +1,28 @@
+package servent.message.util;
+
+import servent.message.Message;
+
+/**
+ * Always wait the same amount of time.
+ */
+public class FixedDelay implements SendDelayPolicy {
+
+	private final long delay;
+
+	public FixedDelay(long delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Delay can't be negative: " + delay);
+		}
+		this.delay = delay;
+	}
+
+	@Override
+	public long delayMillis(Message message) {
+		return delay;
+	}
+
+	@Override
+	public String toString() {
+		return "fixed:" + delay;
+	}
+}
@@ -0,0 +1,44 @@
+package servent.message.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import servent.message.Message;
+
+/**
+ * The original codec - plain Java object serialization. Handles every message.
+ */
+public class JavaSerializationCodec implements MessageCodec {
+
+	public static final byte ID = 0;
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public boolean canEncode(Message message) {
+		return true;
+	}
+
+	@Override
+	public void encode(Message message, DataOutputStream out) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(message);
+		oos.flush();
+	}
+
+	@Override
+	public Message decode(DataInputStream in) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(in);
+		try {
+			return (Message) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown message class", e);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package servent.message.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import servent.message.Message;
+
+/**
+ * Imitates a real network link: a base latency with gaussian jitter around it,
+ * plus an occasional spike (a retransmit, a GC pause on the other side...).
+ */
+public class LatencyProfileDelay implements SendDelayPolicy {
+
+	private final long base;
+	private final long jitter;
+	private final double spikeProbability;
+	private final long spike;
+
+	public LatencyProfileDelay(long base, long jitter, double spikeProbability, long spike) {
+		if (base < 0 || jitter < 0 || spike < 0 || spikeProbability < 0 || spikeProbability > 1) {
+			throw new IllegalArgumentException("Invalid latency profile " + base + "," + jitter + ","
+					+ spikeProbability + "," + spike);
+		}
+		this.base = base;
+		this.jitter = jitter;
+		this.spikeProbability = spikeProbability;
+		this.spike = spike;
+	}
+
+	@Override
+	public long delayMillis(Message message) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long delay = base + Math.round(random.nextGaussian() * jitter);
+		if (random.nextDouble() < spikeProbability) {
+			delay += spike;
+		}
+		return Math.max(0, delay);
+	}
+
+	@Override
+	public String toString() {
+		return "profile:" + base + "," + jitter + "," + spikeProbability + "," + spike;
+	}
+}
@@ -0,0 +1,30 @@
+package servent.message.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import servent.message.Message;
+
+/**
+ * Turns messages into frame bodies and back. Every frame carries the id of the codec
+ * that wrote it, so servents using different codecs can still talk to each other while
+ * a new codec is being rolled out.
+ */
+public interface MessageCodec {
+
+	/**
+	 * Written as the first byte of every frame body.
+	 */
+	byte getId();
+
+	/**
+	 * Some codecs only know about a subset of message classes.
+	 * For the rest, {@link MessageUtil} falls back to Java serialization.
+	 */
+	boolean canEncode(Message message);
+
+	void encode(Message message, DataOutputStream out) throws IOException;
+
+	Message decode(DataInputStream in) throws IOException;
+}
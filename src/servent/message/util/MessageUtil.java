@@ -1,21 +1,33 @@
 package servent.message.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import app.AppConfig;
+import app.ServentExecutors;
 import servent.message.Message;
+import servent.message.MessageLane;
+import servent.message.MessageType;
 
 /**
- * For now, just the read and send implementation, based on Java serializing.
+ * For now, just the read and send implementation, on top of the codecs below.
  * Not too smart. Doesn't even check the neighbor list, so it actually allows cheating.
  * 
- * Depending on the configuration it delegates sending either to a {@link DelayedMessageSender}
- * in a new thread (non-FIFO) or stores the message in a queue for the {@link FifoSendWorker} (FIFO).
+ * Sending is delegated to a {@link DelayedMessageSender} in the outbound lane of the message (non-FIFO),
+ * which writes the message onto a pooled connection from the {@link ConnectionManager}.
+ * Control messages always leave before data messages - see {@link MessageLane}.
  * 
- * When reading, if we are FIFO, we send an ACK message on the same socket, so the other side
- * knows they can send the next message.
+ * Since one connection carries many messages, each message goes on the wire as a frame:
+ * an int with the length of the body, then one byte with the id of the {@link MessageCodec}
+ * that wrote it, then the encoded message. The reader picks the codec by that byte, so a
+ * servent can switch its outgoing codec without breaking peers still using the old one.
  * @author bmilojkovic
  *
  */
@@ -27,33 +39,132 @@ public class MessageUtil {
 	 */
 	public static final boolean MESSAGE_UTIL_PRINTING = true;
 	
-	public static Message readMessage(Socket socket) {
-		
-		Message clientMessage = null;
-			
-		try {
-			ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
-	
-			clientMessage = (Message) ois.readObject();
-			
-			socket.close();
-		} catch (IOException e) {
-			AppConfig.timestampedErrorPrint("Error in reading socket on " +
-					socket.getInetAddress() + ":" + socket.getPort());
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+	/**
+	 * Stabilization and gossip go on every few seconds at every servent, so they are not printed,
+	 * they would drown out everything else.
+	 */
+	private static final Set<MessageType> UNPRINTED_TYPES = EnumSet.of(MessageType.STABILIZE, MessageType.STABILIZE_REPLY,
+			MessageType.GOSSIP, MessageType.HEARTBEAT);
+	
+	public static boolean isPrinted(Message message) {
+		return MESSAGE_UTIL_PRINTING && !UNPRINTED_TYPES.contains(message.getMessageType());
+	}
+	
+	/**
+	 * Frames longer than this are treated as garbage and the connection is dropped. The largest ones we
+	 * send are file and key chunks of a few tens of KB, so this leaves plenty of room for LIST_FILES
+	 * answers while a bad length prefix can't make the listener allocate much.
+	 */
+	public static final int MAX_FRAME_LENGTH = 4 * 1024 * 1024;
+	
+	private static final MessageCodec JAVA_CODEC = new JavaSerializationCodec();
+	private static final MessageCodec BINARY_CODEC = new BinaryMessageCodec();
+	
+	/**
+	 * Codec used for outgoing messages. Set from the <code>message_codec</code> property.
+	 */
+	private static volatile MessageCodec outgoingCodec = JAVA_CODEC;
+	
+	/**
+	 * Selects the codec for outgoing messages by name - <code>java</code> or <code>binary</code>.
+	 * 
+	 * @return false if the name is not known, in which case nothing changes
+	 */
+	public static boolean setOutgoingCodec(String codecName) {
+		switch (codecName.trim().toLowerCase()) {
+		case "java":
+			outgoingCodec = JAVA_CODEC;
+			return true;
+		case "binary":
+			outgoingCodec = BINARY_CODEC;
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * How long to wait before each send. Set from the <code>send_delay</code> properties.
+	 */
+	private static volatile SendDelayPolicy delayPolicy = new NoDelay();
+	
+	public static SendDelayPolicy getDelayPolicy() {
+		return delayPolicy;
+	}
+	
+	public static void setDelayPolicy(SendDelayPolicy policy) {
+		delayPolicy = policy;
+	}
+	
+	private static MessageCodec codecForId(byte codecId) throws IOException {
+		if (codecId == JAVA_CODEC.getId()) {
+			return JAVA_CODEC;
+		}
+		if (codecId == BINARY_CODEC.getId()) {
+			return BINARY_CODEC;
 		}
+		throw new IOException("Unknown codec id " + codecId);
+	}
+	
+	/**
+	 * Decodes one frame body that the listener has read off the wire.
+	 * The buffer should be flipped, i.e. hold exactly the body between its position and limit.
+	 */
+	public static Message readMessage(ByteBuffer frameBody) throws IOException {
+		DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(
+				frameBody.array(), frameBody.arrayOffset() + frameBody.position(), frameBody.remaining()));
+		MessageCodec codec = codecForId(bodyIn.readByte());
+		Message clientMessage = codec.decode(bodyIn);
 		
-		if (MESSAGE_UTIL_PRINTING) {
+		if (isPrinted(clientMessage)) {
 			AppConfig.timestampedStandardPrint("Got message " + clientMessage);
 		}
 				
 		return clientMessage;
 	}
 	
+	/**
+	 * Writes one framed message to the stream and flushes it.
+	 */
+	public static void writeMessage(DataOutputStream out, Message message) throws IOException {
+		byte[] body = encode(message);
+		
+		out.writeInt(body.length);
+		out.write(body);
+		out.flush();
+	}
+	
+	/**
+	 * Encodes a message into a frame body (codec id + encoded message), without the length prefix.
+	 */
+	public static byte[] encode(Message message) throws IOException {
+		MessageCodec codec = outgoingCodec;
+		if (!codec.canEncode(message)) {
+			codec = JAVA_CODEC;
+		}
+		
+		ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+		DataOutputStream bodyOut = new DataOutputStream(body);
+		bodyOut.writeByte(codec.getId());
+		codec.encode(message, bodyOut);
+		bodyOut.flush();
+		return body.toByteArray();
+	}
+	
 	public static void sendMessage(Message message) {
-		Thread delayedSender = new Thread(new DelayedMessageSender(message));
+		DelayedMessageSender sender = new DelayedMessageSender(message);
+		MessageLane lane = MessageLane.of(message.getMessageType());
 		
-		delayedSender.start();
+		/*
+		 * A delayed message waits on the scheduler, not in a sender thread,
+		 * and joins its lane only once the delay is over.
+		 */
+		long delay = delayPolicy.delayMillis(message);
+		if (delay > 0) {
+			ServentExecutors.delayScheduler().schedule(
+					() -> ServentExecutors.outboundLanes().execute(lane, sender), delay, TimeUnit.MILLISECONDS);
+		} else {
+			ServentExecutors.outboundLanes().execute(lane, sender);
+		}
 	}
 }
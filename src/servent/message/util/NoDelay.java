@@ -0,0 +1,19 @@
+package servent.message.util;
+
+import servent.message.Message;
+
+/**
+ * Send right away. This is the default.
+ */
+public class NoDelay implements SendDelayPolicy {
+
+	@Override
+	public long delayMillis(Message message) {
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "none";
+	}
+}
@@ -0,0 +1,32 @@
+package servent.message.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import servent.message.Message;
+import servent.message.MessageType;
+
+/**
+ * Uses a default policy for most messages, and a different one for the message types that have an override.
+ * Handy for chaos testing a single protocol, e.g. slowing down only SK_TOKEN.
+ */
+public class PerTypeDelayPolicy implements SendDelayPolicy {
+
+	private final SendDelayPolicy defaultPolicy;
+	private final Map<MessageType, SendDelayPolicy> overrides;
+
+	public PerTypeDelayPolicy(SendDelayPolicy defaultPolicy, Map<MessageType, SendDelayPolicy> overrides) {
+		this.defaultPolicy = defaultPolicy;
+		this.overrides = overrides.isEmpty() ? new EnumMap<>(MessageType.class) : new EnumMap<>(overrides);
+	}
+
+	@Override
+	public long delayMillis(Message message) {
+		return overrides.getOrDefault(message.getMessageType(), defaultPolicy).delayMillis(message);
+	}
+
+	@Override
+	public String toString() {
+		return defaultPolicy + (overrides.isEmpty() ? "" : " " + overrides);
+	}
+}
@@ -0,0 +1,60 @@
+package servent.message.util;
+
+import servent.message.Message;
+
+/**
+ * Decides how long {@link DelayedMessageSender} waits before putting a message on the wire.
+ * Production servents run with {@link NoDelay}. The other policies are there to make the
+ * system misbehave on purpose when testing.
+ *
+ * Policies are written in the config as:
+ * <ul>
+ * <li><code>none</code></li>
+ * <li><code>fixed:[ms]</code></li>
+ * <li><code>uniform:[min ms]-[max ms]</code></li>
+ * <li><code>profile:[base ms],[jitter ms],[spike probability],[spike ms]</code> - see {@link LatencyProfileDelay}</li>
+ * </ul>
+ */
+public interface SendDelayPolicy {
+
+	/**
+	 * @return how many ms to wait before sending this message, 0 for no wait
+	 */
+	long delayMillis(Message message);
+
+	/**
+	 * Builds a policy from its config form.
+	 *
+	 * @throws IllegalArgumentException if the spec is not one of the known forms
+	 */
+	static SendDelayPolicy parse(String spec) {
+		String trimmed = spec.trim().toLowerCase();
+		int colonPos = trimmed.indexOf(':');
+		String kind = colonPos == -1 ? trimmed : trimmed.substring(0, colonPos);
+		String args = colonPos == -1 ? "" : trimmed.substring(colonPos + 1);
+
+		switch (kind) {
+		case "none":
+			return new NoDelay();
+		case "fixed":
+			return new FixedDelay(Long.parseLong(args));
+		case "uniform": {
+			String[] bounds = args.split("-");
+			if (bounds.length != 2) {
+				throw new IllegalArgumentException("Expected uniform:[min]-[max], got " + spec);
+			}
+			return new UniformRandomDelay(Long.parseLong(bounds[0].trim()), Long.parseLong(bounds[1].trim()));
+		}
+		case "profile": {
+			String[] parts = args.split(",");
+			if (parts.length != 4) {
+				throw new IllegalArgumentException("Expected profile:[base],[jitter],[spike probability],[spike], got " + spec);
+			}
+			return new LatencyProfileDelay(Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim()),
+					Double.parseDouble(parts[2].trim()), Long.parseLong(parts[3].trim()));
+		}
+		default:
+			throw new IllegalArgumentException("Unknown send delay policy " + spec);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package servent.message.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import servent.message.Message;
+
+/**
+ * Wait a random time between min and max ms. With 500-1500 this is how every servent used to behave,
+ * and it is a good way of shuffling the order in which messages arrive.
+ */
+public class UniformRandomDelay implements SendDelayPolicy {
+
+	private final long min;
+	private final long max;
+
+	public UniformRandomDelay(long min, long max) {
+		if (min < 0 || max < min) {
+			throw new IllegalArgumentException("Invalid uniform delay range " + min + "-" + max);
+		}
+		this.min = min;
+		this.max = max;
+	}
+
+	@Override
+	public long delayMillis(Message message) {
+		return min + (long) (ThreadLocalRandom.current().nextDouble() * (max - min));
+	}
+
+	@Override
+	public String toString() {
+		return "uniform:" + min + "-" + max;
+	}
+}
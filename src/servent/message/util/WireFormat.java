@@ -0,0 +1,151 @@
+package servent.message.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small helpers for writing compact binary payloads: unsigned varints (LEB128),
+ * zigzag varints for values that may be negative and length-prefixed UTF-8 strings.
+ *
+ * Lengths and counts are read with {@link #readLength}, so a damaged or hostile frame
+ * can't make the decoder allocate more than the frame itself holds.
+ */
+public class WireFormat {
+
+	public static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Writes the values as zigzag varints in one block, its length in bytes first. The block is put together
+	 * in an array and written at once - a stream call per byte costs more than the encoding itself when
+	 * there are thousands of values, like in a key chunk.
+	 */
+	public static void writeSignedVarInts(DataOutputStream out, int[] values) throws IOException {
+		byte[] block = new byte[values.length * 5];
+		int position = 0;
+		for (int value : values) {
+			int raw = (value << 1) ^ (value >> 31);
+			while ((raw & ~0x7F) != 0) {
+				block[position++] = (byte) ((raw & 0x7F) | 0x80);
+				raw >>>= 7;
+			}
+			block[position++] = (byte) raw;
+		}
+		writeVarInt(out, position);
+		out.write(block, 0, position);
+	}
+
+	/**
+	 * Reads a block written by {@link #writeSignedVarInts}, which must hold exactly <code>count</code> values.
+	 */
+	public static int[] readSignedVarInts(DataInputStream in, int count) throws IOException {
+		byte[] block = new byte[readLength(in)];
+		in.readFully(block);
+		int[] values = new int[count];
+		int position = 0;
+		for (int i = 0; i < count; i++) {
+			int raw = 0;
+			for (int shift = 0; ; shift += 7) {
+				if (position == block.length || shift == 35) {
+					throw new IOException("Malformed varint block");
+				}
+				int b = block[position++];
+				raw |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			values[i] = (raw >>> 1) ^ -(raw & 1);
+		}
+		if (position != block.length) {
+			throw new IOException("Varint block holds more than " + count + " values");
+		}
+		return values;
+	}
+
+	public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	public static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varlong");
+	}
+
+	/**
+	 * Zigzag encoding keeps small negative numbers (like the -1 "no value" marker) short.
+	 */
+	public static void writeSignedVarInt(DataOutputStream out, int value) throws IOException {
+		writeVarInt(out, (value << 1) ^ (value >> 31));
+	}
+
+	public static int readSignedVarInt(DataInputStream in) throws IOException {
+		int raw = readVarInt(in);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	public static void writeSignedVarLong(DataOutputStream out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63));
+	}
+
+	public static long readSignedVarLong(DataInputStream in) throws IOException {
+		long raw = readVarLong(in);
+		return (raw >>> 1) ^ -(raw & 1);
+	}
+
+	/**
+	 * Reads a byte length or an element count. Every element takes at least a byte, so it can't be
+	 * more than what is left of the frame.
+	 *
+	 * @throws IOException if it is
+	 */
+	public static int readLength(DataInputStream in) throws IOException {
+		int length = readVarInt(in);
+		if (length < 0 || length > in.available()) {
+			throw new IOException("Length " + length + " is more than the " + in.available() + " bytes left in the frame");
+		}
+		return length;
+	}
+
+	public static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}